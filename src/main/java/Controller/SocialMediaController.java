@@ -1,13 +1,60 @@
 package Controller;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import DAO.MessageCursor;
 import Model.*;
 import Service.*;
+import Util.BoundedExecutor;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import Util.MigrationRunner;
+import Util.ModelJsonMapper;
+import Util.OffHeapJsonCache;
+import Util.OversizeFieldException;
+import Util.SlowestTraces;
+import Util.Trace;
+import Util.VirtualThreadMode;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.UnauthorizedResponse;
 
 public class SocialMediaController {
     AccountService accountService;
     MessageService messageService;
+    FollowService followService;
+    // signs the tokens issued at login, which later requests send as Authorization: Bearer
+    SessionTokens sessionTokens;
+    // bulkheads: reads, writes and logins/registrations each get their own workers and queue, so a storm of one
+    // kind of request can not hold up the others. Their default 8 + 4 + 4 workers match the 16 pooled connections,
+    // but the group-commit writer, when enabled, takes one more, so under full load a worker may wait for one. In
+    // virtual thread mode the same bounds are kept with semaphores and every request runs on its own virtual thread.
+    BoundedExecutor reads;
+    BoundedExecutor writes;
+    BoundedExecutor auth;
+    // the slowest sampled requests since startup, reported by GET /admin/traces
+    SlowestTraces slowestTraces;
+    // whether a client may force tracing with X-Trace: true; off unless started with -Dtrace.allowHeader=true,
+    // since any caller could otherwise make every one of its requests pay for a trace
+    boolean traceHeaderAllowed;
+    // the endpoint handler path Javalin reports for a request no route matched
+    private static final String UNMATCHED_PATH = "No handler matched request path/method (404/405)";
+    // reads request bodies and writes responses, including streamed ones one element at a time; a batch longer
+    // than MAX_BATCH_SIZE is rejected while it is parsed
+    private final ModelJsonMapper jsonMapper = new ModelJsonMapper(MessageService.MAX_BATCH_SIZE);
 
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
@@ -15,51 +62,195 @@ public class SocialMediaController {
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        MigrationRunner.migrate();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(jsonMapper);
+            // opt-in: run each request on a virtual thread when started with -Dserver.virtualThreads=true on Java 21
+            if (VirtualThreadMode.ENABLED) config.jetty.server(VirtualThreadMode::newServer);
+            // called once each request has finished, including those completed on a handler pool
+            config.requestLogger.http(this::recordRequest);
+        });
         accountService = new AccountService();
-        messageService = new MessageService();
-        
+        followService = new FollowService();
+        messageService = new MessageService(followService);
+        sessionTokens = new SessionTokens();
+        reads = BoundedExecutor.fromProperties("read", 8, 256);
+        writes = BoundedExecutor.fromProperties("write", 4, 128);
+        auth = BoundedExecutor.fromProperties("auth", 4, 128);
+        slowestTraces = new SlowestTraces(Integer.getInteger("trace.slowest", 20));
+        traceHeaderAllowed = Boolean.getBoolean("trace.allowHeader");
+        app.events(event -> event.serverStopped(() -> {
+            reads.shutdown();
+            writes.shutdown();
+            auth.shutdown();
+            messageService.close();
+        }));
+        registerMetrics();
+        // a saturated pool turns the request away instead of queueing it without bound
+        app.exception(RejectedExecutionException.class, (e, context) -> context.status(503));
+        // an oversize message_text or batch stops the body from being parsed any further
+        app.exception(OversizeFieldException.class, (e, context) -> context.status(400));
+        // a sampled request, or one sent with X-Trace: true when trace.allowHeader is set, is traced and answered with a Server-Timing header
+        app.before(this::beginTrace);
+        app.after(this::serverTimingHeader);
+
         // GET:
-        app.get("messages", this::getAllMessagesHandler);
-        app.get("messages/{message_id}", this::getMessageByIdHandler);
-        app.get("accounts/{account_id}/messages", this::getAllMessagesByAccountIdHandler);
+        // polled reads carry an ETag; a matching If-None-Match is answered with 304 before any query is queued
+        app.get("messages", context -> {
+            if (!notModified(context, messageService.getMessageVersions().tableEtag())) runOn(reads, context, this::getAllMessagesHandler);
+        });
+        // registered before messages/{message_id} so "search" is not read as an id
+        app.get("messages/search", context -> {
+            if (!notModified(context, messageService.getMessageVersions().tableEtag())) runOn(reads, context, this::searchMessagesHandler);
+        });
+        app.get("messages/{message_id}", context -> {
+            int message_id = context.pathParamAsClass("message_id", int.class).get();
+            if (!notModified(context, messageService.getMessageVersions().messageEtag(message_id))) runOn(reads, context, this::getMessageByIdHandler);
+        });
+        app.get("accounts/{account_id}/messages", context -> {
+            int account_id = context.pathParamAsClass("account_id", int.class).get();
+            if (!notModified(context, messageService.getMessageVersions().accountEtag(account_id))) runOn(reads, context, this::getAllMessagesByAccountIdHandler);
+        });
+        app.get("accounts/{account_id}/timeline", context -> runOn(reads, context, this::getHomeTimelineHandler));
+        app.get("admin/executors", this::getExecutorStatsHandler);
+        app.get("admin/json-cache", this::getJsonCacheStatsHandler);
+        app.get("admin/search-index", this::getSearchIndexStatsHandler);
+        app.get("admin/traces", this::getSlowestTracesHandler);
+        app.get("metrics", this::getMetricsHandler);
         // POST:
-        app.post("login", this::loginHandler);
-        app.post("register", this::registrationHandler);
-        app.post("messages", this::postNewMessageHandler);
+        app.post("login", context -> runOn(auth, context, this::loginHandler));
+        app.post("register", context -> runOn(auth, context, this::registrationHandler));
+        app.post("logout", context -> runOn(auth, context, this::logoutHandler));
+        app.post("messages", context -> runOn(writes, context, this::postNewMessageHandler));
+        app.post("messages/batch", context -> runOn(writes, context, this::postNewMessagesBatchHandler));
+        app.post("accounts/{account_id}/follow", context -> runOn(writes, context, this::followAccountHandler));
         // PATCH
-        app.patch("messages/{message_id}", this::patchMessageByIdHandler);
+        app.patch("messages/{message_id}", context -> runOn(writes, context, this::patchMessageByIdHandler));
         // DELETE
-        app.delete("messages/{message_id}", this::deleteMessageByIdHandler);
+        app.delete("messages/{message_id}", context -> runOn(writes, context, this::deleteMessageByIdHandler));
+        app.delete("accounts/{account_id}/follow", context -> runOn(writes, context, this::unfollowAccountHandler));
 
         return app;
     }
 
     /**
-     * GET Handler to get all messages for logged in user from API. path: /messages
+     * GET Handler to get a page of messages from API. path: /messages?limit=&after=
+     * The cursor for the following page is returned in the X-Next-Cursor header. The whole table is only
+     * returned when explicitly asked for with ?all=true. With ?since=&until= the messages posted in that range
+     * are streamed in time order instead.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getAllMessagesHandler(Context context) {
-        context.json(messageService.getAllMessages());      
+    private void getAllMessagesHandler(Context context) throws IOException {
+        if (hasTimeRange(context)) {
+            MessageCursor cursor = null;
+            // if a bound is not a number or the range is backwards, return 400, otherwise stream the range
+            try {
+                cursor = messageService.streamMessagesBetween(timeParam(context, "since", Long.MIN_VALUE), timeParam(context, "until", Long.MAX_VALUE));
+            }
+            catch (IllegalArgumentException e) {
+                context.status(400);
+                return;
+            }
+            streamJsonArray(context, cursor);
+            return;
+        }
+        if (context.queryParamAsClass("all", Boolean.class).getOrDefault(false)) {
+            streamJsonArray(context, messageService.streamAllMessages());
+            return;
+        }
+
+        MessagePage page = null;
+        int limit = context.queryParamAsClass("limit", Integer.class).getOrDefault(MessageService.DEFAULT_PAGE_SIZE);
+        // if the cursor is malformed, return 400, otherwise return the page
+        try {
+            page = messageService.getMessagesPage(context.queryParam("after"), limit);
+        }
+        catch (IllegalArgumentException e) {
+            context.status(400);
+            return;
+        }
+        if (page.getNext_cursor() != null) context.header("X-Next-Cursor", page.getNext_cursor());
+        writeJsonArray(context, page.getMessages().iterator());
     }
     
     /**
-     * GET Handler to update a message by message id from API. path: /accounts/{account_id}/messages
+     * GET Handler to search message text from API. path: /messages/search?q=&limit=
+     * Every word of q must appear, the last one as a prefix unless q ends in a space; q in double quotes must
+     * appear as a phrase. Results are newest first.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void searchMessagesHandler(Context context) throws IOException {
+        List<Message> results = null;
+        int limit = context.queryParamAsClass("limit", Integer.class).getOrDefault(MessageService.DEFAULT_PAGE_SIZE);
+        // if q has no words, return 400, otherwise return the matches
+        try {
+            results = messageService.searchMessages(context.queryParam("q"), limit);
+        }
+        catch (IllegalArgumentException e) {
+            context.status(400);
+            return;
+        }
+        catch (IllegalStateException e) {
+            context.status(500);
+            return;
+        }
+        writeJsonArray(context, results.iterator());
+    }
+
+    /**
+     * GET Handler to get all messages posted by an account from API. path: /accounts/{account_id}/messages?since=&until=
+     * With ?since=&until= only the account's messages posted in that range are returned, in time order.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getAllMessagesByAccountIdHandler(Context context) throws IOException {
+        int account_id = context.pathParamAsClass("account_id", int.class).get();
+        if (hasTimeRange(context)) {
+            MessageCursor cursor = null;
+            // if a bound is not a number or the range is backwards, return 400, otherwise stream the range
+            try {
+                cursor = messageService.streamMessagesByAccountIdBetween(account_id,
+                    timeParam(context, "since", Long.MIN_VALUE), timeParam(context, "until", Long.MAX_VALUE));
+            }
+            catch (IllegalArgumentException e) {
+                context.status(400);
+                return;
+            }
+            streamJsonArray(context, cursor);
+            return;
+        }
+        streamJsonArray(context, messageService.streamMessagesByAccountId(account_id));
+    }
+
+    /**
+     * GET Handler to get the home timeline of an account from API. path: /accounts/{account_id}/timeline?limit=
+     * The timeline holds the newest messages of the accounts it follows, newest first.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getAllMessagesByAccountIdHandler(Context context) {
-        context.json(messageService.getAllMessagesByAccountId(context.pathParamAsClass("account_id", int.class).get())); 
+    private void getHomeTimelineHandler(Context context) throws IOException {
+        List<Message> messages = null;
+        int limit = context.queryParamAsClass("limit", Integer.class).getOrDefault(MessageService.DEFAULT_PAGE_SIZE);
+        // if the timeline can not be loaded, return 500, otherwise return the timeline
+        try {
+            messages = messageService.getHomeTimeline(context.pathParamAsClass("account_id", int.class).get(), limit);
+        }
+        catch (IllegalStateException e) {
+            context.status(500);
+            return;
+        }
+        writeJsonArray(context, messages.iterator());
     }
 
     /**
      * GET Handler to get message by Id from API. path: /message/{message_id}
      * @param context The Javalin Context object manages information about both the HTTP request and response.
      */
-    private void getMessageByIdHandler(Context context) {
-        Message message = null;
-        // if message is not found, return 200, otherwise return message
-        if ((message = messageService.getMessageById(context.pathParamAsClass("message_id", int.class).get())) == null) context.result();
-        else context.json(message);
+    private void getMessageByIdHandler(Context context) throws IOException {
+        context.contentType(ContentType.APPLICATION_JSON);
+        serverTimingHeader(context);
+        // if message is not found, return 200 with an empty body, otherwise write the message's cached JSON
+        if (!messageService.writeMessageJson(context.pathParamAsClass("message_id", int.class).get(), context.outputStream())) {
+            context.contentType(ContentType.TEXT_PLAIN);
+        }
     }
 
     /**
@@ -70,7 +261,7 @@ public class SocialMediaController {
     private void registrationHandler(Context context) {
         Account newAccount = null;
         // if account registration fails, return 400, otherwise 200
-        if ((newAccount = accountService.registerNewAccount(context.bodyAsClass(Account.class))) == null) context.status(400);
+        if ((newAccount = accountService.registerNewAccount(context.bodyStreamAsClass(Account.class))) == null) context.status(400);
         else context.json(newAccount);
     }
     
@@ -81,9 +272,22 @@ public class SocialMediaController {
      */
     private void loginHandler(Context context) {
         Account account = null; 
-        // if login fails, return 401, otherwise return account
-        if ((account = accountService.login(context.bodyAsClass(Account.class))) == null) context.status(401);
-        else context.json(account);
+        // if login fails, return 401, otherwise return account and a session token in the X-Session-Token header
+        if ((account = accountService.login(context.bodyStreamAsClass(Account.class))) == null) context.status(401);
+        else {
+            context.header("X-Session-Token", sessionTokens.issue(account.getAccount_id()));
+            context.json(account);
+        }
+    }
+
+    /**
+     * POST Handler to log out of SocialMedia API. path: /logout
+     * The session token sent as Authorization: Bearer is revoked for the rest of its lifetime.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void logoutHandler(Context context) {
+        // if no valid token was sent, return 401, otherwise 200 with an empty body
+        if (sessionTokens.revoke(bearerToken(context)) == 0) context.status(401);
     }
 
     /**
@@ -92,24 +296,97 @@ public class SocialMediaController {
      * of new message.
      */
     private void postNewMessageHandler(Context context) {
-        Message message = context.bodyAsClass(Message.class);
+        int account_id = sessionAccount(context);
+        Message message = context.bodyStreamAsClass(Message.class);
+        // a session token decides who posts, and was only issued to an existing account
+        if (account_id != 0) message.setPosted_by(account_id);
 
         // if the account doesn't exist or message fails to be created, return 400, otherwise return the new messgae
-        if (!accountService.accountExists(message.getPosted_by()) ||
+        if ((account_id == 0 && !accountService.accountExists(message.getPosted_by())) ||
             (message = messageService.createNewMessage(message)) == null) context.status(400);
         else context.json(message);
     }
     
+    /**
+     * POST Handler to post many new messages in one request. path: /messages/batch
+     * Each message is validated like POST /messages; the valid ones are created together and the response lists,
+     * per message, either the created message or why it was rejected.
+     * @param context The Javalin Context object manages information about both the HTTP request and response and body
+     * holding a JSON array of new messages.
+     */
+    private void postNewMessagesBatchHandler(Context context) {
+        int account_id = sessionAccount(context);
+        Message[] messages = context.bodyStreamAsClass(Message[].class);
+        if (account_id != 0) for (Message message : messages) if (message != null) message.setPosted_by(account_id);
+
+        // if the batch is empty, return 400, otherwise return the per-message results; one larger than allowed was
+        // already answered with 400 while it was parsed
+        if (messages.length == 0) context.status(400);
+        else context.json(messageService.createNewMessages(Arrays.asList(messages),
+            account_id != 0 ? id -> true : accountService::accountExists));
+    }
+
+    /**
+     * POST Handler to follow an account. path: /accounts/{account_id}/follow
+     * @param context The Javalin Context object manages information about both the HTTP request and response and
+     * body of a Follow JSON holding the follower_id, which is not read when a session token is sent.
+     */
+    private void followAccountHandler(Context context) {
+        int account_id = sessionAccount(context);
+        Follow follow = sessionFollow(context, account_id);
+
+        // if either account doesn't exist or an account follows itself, return 400, otherwise return the follow; the
+        // session's own account is known to exist, but without a token account_id is 0 and proves nothing
+        if ((follow = followService.follow(follow, id -> account_id != 0 && id == account_id || accountService.accountExists(id))) == null) context.status(400);
+        else {
+            messageService.followChanged(follow, true);
+            context.json(follow);
+        }
+    }
+
+    /**
+     * DELETE Handler to unfollow an account. path: /accounts/{account_id}/follow
+     * @param context The Javalin Context object manages information about both the HTTP request and response and
+     * body of a Follow JSON holding the follower_id, which is not read when a session token is sent.
+     */
+    private void unfollowAccountHandler(Context context) {
+        Follow follow = sessionFollow(context, sessionAccount(context));
+
+        // if there was no such follow, return 200 with empty body, otherwise return the removed follow
+        if ((follow = followService.unfollow(follow)) == null) context.result();
+        else {
+            messageService.followChanged(follow, false);
+            context.json(follow);
+        }
+    }
+
     /**
      * PATCH Handler to update message by Id from API. path: /message/{message_id}
      * @param context The Javalin Context object manages information about both the HTTP request and response and
      * body containing at MOST new message_text values.
      */
     private void patchMessageByIdHandler(Context context) {
+        Message message = null;
         int message_id = context.pathParamAsClass("message_id", int.class).get();
-        // if update is not successful return 400, otherwise get the newly updated message
-        if (!messageService.canUpdateMessage(message_id, context.bodyAsClass(Message.class))) context.status(400);
-        else context.json(messageService.getMessageById(message_id));
+        Message update;
+        Trace.Span parse = Trace.span("parse");
+        try {
+            update = context.bodyStreamAsClass(Message.class);
+        }
+        finally {
+            parse.close();
+        }
+        // if update is not successful return 400, otherwise return the newly updated message
+        if ((message = messageService.updateMessage(message_id, update)) == null) context.status(400);
+        else {
+            Trace.Span json = Trace.span("json");
+            try {
+                context.json(message);
+            }
+            finally {
+                json.close();
+            }
+        }
     }
     
     /**
@@ -120,8 +397,293 @@ public class SocialMediaController {
         Message message = null; 
         int message_id = context.pathParamAsClass("message_id", int.class).get();
         // if message doesn't exist or deletion fails, return 200 with empty body otherwise, return the deleted message.
-        if ((message = messageService.getMessageById(message_id)) == null ||
-            !messageService.canDeleteMessageById(message_id)) context.result();
+        if ((message = messageService.deleteMessageById(message_id)) == null) context.result();
         else context.json(message);
     }
-}
\ No newline at end of file
+
+    /**
+     * GET Handler to report the queue depth and rejection count of each handler pool. path: /admin/executors
+     * Runs on the Jetty thread so it still answers while the pools are saturated.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getExecutorStatsHandler(Context context) {
+        context.json(List.of(executorStats(reads), executorStats(writes), executorStats(auth)));
+    }
+
+    /**
+     * GET Handler to report the off-heap memory use and hit counts of the message JSON cache. path: /admin/json-cache
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getJsonCacheStatsHandler(Context context) {
+        OffHeapJsonCache cache = messageService.getMessageJsonCache();
+        context.json(new JsonCacheStats(cache.getCapacityBytes(), cache.getUsedBytes(), cache.getEntryCount(),
+            cache.getHitCount(), cache.getMissCount(), cache.getEvictionCount(), cache.getDroppedCount(),
+            OffHeapJsonCache.jvmDirectMemoryUsed()));
+    }
+
+    /**
+     * GET Handler to report the size and build time of the message search index. path: /admin/search-index
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getSearchIndexStatsHandler(Context context) {
+        MessageSearchIndex index = messageService.getMessageSearchIndex();
+        context.json(new SearchIndexStats(index.isLoaded(), index.getLoadMillis(), index.getTermCount(),
+            index.getPostingCount(), index.getPostingBytes()));
+    }
+
+    /**
+     * GET Handler to report the slowest sampled requests since startup, slowest first, each with the tree of
+     * phases it spent its time in. path: /admin/traces
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getSlowestTracesHandler(Context context) {
+        List<RequestTrace> traces = new ArrayList<>();
+        for (Trace trace : slowestTraces.snapshot()) {
+            traces.add(new RequestTrace(trace.getMethod(), trace.getPath(), trace.getRoute(), trace.getStatus(),
+                trace.getStartEpochMillis(), trace.getDurationNanos() / 1e3, trace.getDroppedSpans(), traceSpans(trace.getRoot())));
+        }
+        context.json(traces);
+    }
+
+    private static List<TraceSpan> traceSpans(Trace.Span parent) {
+        List<TraceSpan> spans = new ArrayList<>();
+        for (Trace.Span span : parent.getChildren()) {
+            spans.add(new TraceSpan(span.getName(), span.getOffsetNanos() / 1e3, span.getDurationNanos() / 1e3, traceSpans(span)));
+        }
+        return spans;
+    }
+
+    /**
+     * Before every request: decides whether to trace it, and if so makes its trace current on this thread and
+     * keeps it on the context. An untraced request only clears the thread's current trace.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void beginTrace(Context context) {
+        if (!Trace.sample(traceHeaderAllowed && "true".equals(context.header("X-Trace")))) {
+            Trace.attach(null);
+            return;
+        }
+        context.attribute("trace", Trace.begin(context.method().name(), context.path()));
+    }
+
+    /**
+     * Reports the phases of a traced request so far in the Server-Timing header, while the response can still take
+     * headers. Runs after every request, for the responses Javalin writes once the handler is done, and is called by
+     * handlers that write the body themselves just before they start, since a streamed body may be committed
+     * before the after handlers run.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void serverTimingHeader(Context context) {
+        Trace trace = context.attribute("trace");
+        if (trace != null && !context.res().isCommitted()) context.header("Server-Timing", trace.serverTiming());
+    }
+
+    /**
+     * GET Handler to report query and route latencies, error counts, and the handler pool, connection pool,
+     * statement cache, message cache and JSON cache gauges in the Prometheus text format. path: /metrics
+     * Runs on the Jetty thread so it still answers while the pools are saturated.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMetricsHandler(Context context) {
+        context.contentType("text/plain; version=0.0.4; charset=utf-8");
+        context.result(Metrics.render());
+    }
+
+    /**
+     * Records a finished request into the http_request timer of its route, labelled with the route's path pattern
+     * rather than the path requested so ids do not each get their own series, and counts it by status. Responses
+     * with a 5xx status count as errors.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param millis how long the request took.
+     */
+    private void recordRequest(Context context, Float millis) {
+        // a request no route matched, e.g. a 404, has no path pattern to be labelled with: Javalin either never
+        // left the before handlers or, once after handlers have run, reports its own message as the path
+        String route = context.handlerType() == HandlerType.BEFORE ? UNMATCHED_PATH : context.endpointHandlerPath();
+        if (UNMATCHED_PATH.equals(route)) route = "unmatched";
+        String method = context.method().name();
+        int status = context.statusCode();
+        Metrics.timer("http_request", "method", method, "route", route).record((long) (millis * 1_000_000), status >= 500);
+        Metrics.counter("http_requests_total", "method", method, "route", route, "status", Integer.toString(status)).increment();
+        Trace trace = context.attribute("trace");
+        if (trace != null) {
+            trace.finish(route, status);
+            slowestTraces.offer(trace);
+        }
+    }
+
+    /**
+     * Registers the gauges read when GET /metrics is scraped, replacing those of an earlier startAPI.
+     */
+    private void registerMetrics() {
+        Metrics.describe("dao_query_duration_seconds", "Time spent in each DAO method.");
+        Metrics.describe("dao_query_duration_quantile_seconds", "Estimated latency quantiles of each DAO method.");
+        Metrics.describe("dao_query_errors_total", "DAO calls during which a query failed.");
+        Metrics.describe("http_request_duration_seconds", "Time from receiving a request to finishing its response, by route.");
+        Metrics.describe("http_request_duration_quantile_seconds", "Estimated latency quantiles of each route.");
+        Metrics.describe("http_request_errors_total", "Requests answered with a 5xx status, by route.");
+        Metrics.describe("http_requests_total", "Requests by route and status.");
+        for (BoundedExecutor pool : List.of(reads, writes, auth)) {
+            Metrics.gauge("executor_queue_depth", pool::getQueueDepth, "pool", pool.getName());
+            Metrics.gauge("executor_queue_capacity", pool::getQueueCapacity, "pool", pool.getName());
+            Metrics.gauge("executor_active_threads", pool::getActiveCount, "pool", pool.getName());
+            Metrics.gauge("executor_rejected_total", pool::getRejectedCount, "pool", pool.getName());
+            Metrics.gauge("executor_completed_total", pool::getCompletedCount, "pool", pool.getName());
+        }
+        OffHeapJsonCache cache = messageService.getMessageJsonCache();
+        Metrics.gauge("json_cache_capacity_bytes", cache::getCapacityBytes);
+        Metrics.gauge("json_cache_used_bytes", cache::getUsedBytes);
+        Metrics.gauge("json_cache_entries", cache::getEntryCount);
+        Metrics.gauge("json_cache_hits_total", cache::getHitCount);
+        Metrics.gauge("json_cache_misses_total", cache::getMissCount);
+        Metrics.gauge("json_cache_evictions_total", cache::getEvictionCount);
+        Metrics.gauge("json_cache_dropped_total", cache::getDroppedCount);
+        ConnectionPool connections = ConnectionUtil.getPool();
+        Metrics.gauge("db_pool_active_connections", connections::getActiveCount);
+        Metrics.gauge("db_pool_idle_connections", connections::getIdleCount);
+        Metrics.gauge("db_pool_waiting_threads", connections::getWaitingCount);
+        Metrics.gauge("db_pool_connections", connections::getTotalCount);
+        Metrics.gauge("db_pool_max_connections", connections::getMaxSize);
+        Metrics.gauge("db_statement_cache_hits_total", connections::getStatementCacheHits);
+        Metrics.gauge("db_statement_cache_misses_total", connections::getStatementCacheMisses);
+        MessageCache messages = messageService.getMessageCache();
+        Metrics.gauge("message_cache_entries", messages::size);
+        Metrics.gauge("message_cache_hits_total", () -> messages.stats().hitCount());
+        Metrics.gauge("message_cache_misses_total", () -> messages.stats().missCount());
+        Metrics.gauge("message_cache_evictions_total", () -> messages.stats().evictionCount());
+        Metrics.gauge("message_cache_loads_total", () -> messages.stats().loadCount());
+        Metrics.gauge("message_cache_load_failures_total", () -> messages.stats().loadFailureCount());
+        Metrics.decimalGauge("message_cache_hit_ratio", () -> messages.stats().hitRate());
+        Metrics.decimalGauge("message_cache_load_seconds_total", () -> messages.stats().totalLoadTime() / 1e9);
+        Metrics.decimalGauge("message_cache_average_load_seconds", () -> messages.stats().averageLoadPenalty() / 1e9);
+    }
+
+    private static ExecutorStats executorStats(BoundedExecutor pool) {
+        return new ExecutorStats(pool.getName(), pool.getQueueDepth(), pool.getQueueCapacity(),
+            pool.getActiveCount(), pool.getRejectedCount(), pool.getCompletedCount());
+    }
+
+    /**
+     * Verifies the session token sent as Authorization: Bearer, in memory.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @return the account_id the token was issued to, or 0 if the request carries no token.
+     * @throws UnauthorizedResponse if a token was sent but is malformed, forged, expired or revoked, which is
+     * answered with 401.
+     */
+    private int sessionAccount(Context context) {
+        String token = bearerToken(context);
+        if (token == null) return 0;
+        int account_id = sessionTokens.verify(token);
+        if (account_id == 0) throw new UnauthorizedResponse();
+        return account_id;
+    }
+
+    /**
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param account_id the account of the request's session token, or 0 to read the follower_id from the body.
+     * @return the follow of the {account_id} path parameter by the requesting account.
+     */
+    private static Follow sessionFollow(Context context, int account_id) {
+        Follow follow = account_id != 0 ? new Follow(account_id, 0) : context.bodyStreamAsClass(Follow.class);
+        follow.setFollowee_id(context.pathParamAsClass("account_id", int.class).get());
+        return follow;
+    }
+
+    private static String bearerToken(Context context) {
+        String authorization = context.header(Header.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return authorization.substring(7).trim();
+    }
+
+    private static boolean hasTimeRange(Context context) {
+        return context.queryParam("since") != null || context.queryParam("until") != null;
+    }
+
+    /**
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param name since or until.
+     * @param absent the bound to use when the parameter is not given.
+     * @return the parameter as a time_posted_epoch.
+     * @throws NumberFormatException if the parameter is not a whole number.
+     */
+    private static long timeParam(Context context, String name, long absent) {
+        String value = context.queryParam(name);
+        return value == null ? absent : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Sets the ETag of the resource being read and checks it against the request's If-None-Match header.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param etag the current strong ETag of the resource, read before the resource itself.
+     * @return True if the client's copy is current and a 304 has been set, in which case nothing else should run.
+     */
+    private boolean notModified(Context context, String etag) {
+        context.header(Header.ETAG, etag);
+        String ifNoneMatch = context.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match uses the weak comparison, so a W/ prefix added by an intermediary still matches
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                context.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands the request to one of the handler pools and frees the Jetty thread. If the pool is saturated the
+     * request fails with RejectedExecutionException, which is answered with 503.
+     * @param pool the pool for this kind of request.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param handler the handler to run on the pool.
+     */
+    private void runOn(BoundedExecutor pool, Context context, Handler handler) {
+        context.future(() -> pool.supply(() -> {
+            Trace.Span span = Trace.span("handler");
+            try {
+                handler.handle(context);
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            finally {
+                span.close();
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Writes each message from the cursor straight onto the response as an element of a JSON array, so memory
+     * use does not grow with the number of rows and the first bytes go out as soon as the first row is read.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param cursor an open cursor, which is always closed, or null to respond with 500.
+     */
+    private void streamJsonArray(Context context, MessageCursor cursor) throws IOException {
+        if (cursor == null) {
+            context.status(500);
+            return;
+        }
+        try (MessageCursor messages = cursor) {
+            writeJsonArray(context, messages);
+        }
+    }
+
+    /**
+     * Writes messages onto the response as a JSON array, copying in the cached JSON of any message that has it.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @param messages the messages to write.
+     */
+    private void writeJsonArray(Context context, Iterator<Message> messages) throws IOException {
+        context.contentType(ContentType.APPLICATION_JSON);
+        serverTimingHeader(context);
+        try (JsonGenerator generator = jsonMapper.createGenerator(context.outputStream())) {
+            generator.writeStartArray();
+            while (messages.hasNext()) messageService.writeMessageJson(messages.next(), generator);
+            generator.writeEndArray();
+        }
+    }
+}
@@ -3,52 +3,99 @@ package DAO;
 import java.sql.*;
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 public class AccountDAO {
+    // queries on the request hot path; QueryPlanTest checks that each one is planned with an index.
+    public static final String SELECT_BY_ID_SQL = "SELECT * FROM account WHERE account_id = ?";
+    public static final String SELECT_BY_USERNAME_SQL = "SELECT * FROM account WHERE username = ?";
+    public static final String UPDATE_PASSWORD_SQL = "UPDATE account SET password = ? WHERE account_id = ?";
+
+    // SQLState H2 reports when an insert violates the unique constraint on username
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // ids of every account known to exist, so the POST /messages existence check rarely touches the database
+    private final AccountIdIndex accountIds = new AccountIdIndex();
+    // usernames known to be taken, so registration only probes for names that may already exist
+    private final UsernameBloomFilter usernames = new UsernameBloomFilter();
+
+    // no-args constructor which loads the ids and usernames of all existing accounts into memory.
+    public AccountDAO() {
+        this(true);
+    }
+
+    // constructor for subclasses that keep accounts somewhere other than the account table and skip the load.
+    protected AccountDAO(boolean loadAccounts) {
+        if (loadAccounts) loadAccounts();
+    }
+
     /**
-     * Logs into the account if username and password match an account in the database.
-     * @param account to be logged into.
-     * @return Account object with updated account_id or null.
+     * Retrieves an account by its username, which is unique, so the password can be checked against it.
+     * @param username of the account to retrieve.
+     * @return the account with its stored password column, or null.
      */
-    public Account login(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
+    public Account selectAccountByUsername(String username) {
+        String sql = SELECT_BY_USERNAME_SQL;
 
-        try {
-            String sql = "SELECT * FROM account WHERE username = ? and password = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
-            preparedStatement.setString(1, account.getUsername());
-            preparedStatement.setString(2, account.getPassword());
-            ResultSet rs = preparedStatement.executeQuery();
-            
-            while(rs.next()) {
-                account.setAccount_id(rs.getInt("account_id"));
-                account.setUsername(rs.getString("username"));
-                account.setPassword(rs.getString("password"));
-                return account;
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, username);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    return new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
             }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
         return null;
     }
 
     /**
-     * Verifies if an account exists in the database by its account_id.
+     * Replaces the stored password column of an account, e.g. with a new hash of it.
+     * @param accountId of the account to change.
+     * @param password the new column value.
+     * @return True if the account exists and was changed.
+     */
+    public boolean updatePassword(int accountId, String password) {
+        String sql = UPDATE_PASSWORD_SQL;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setString(1, password);
+            preparedStatement.setInt(2, accountId);
+            return preparedStatement.executeUpdate() > 0;
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Verifies if an account exists by its account_id. Known ids are answered from the in-memory index; an id
+     * missing from the index is looked up in the database, in case the account was added by another path.
      * @param accountId of the account to verify existence.
      * @return True/False representing existence.
      */
     public boolean accountExists(int accountId) {
-        Connection connection = ConnectionUtil.getConnection();
+        if (accountIds.contains(accountId)) return true;
+        String sql = SELECT_BY_ID_SQL;
 
-        try {
-            String sql = "SELECT * FROM account WHERE account_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, accountId);
-            return preparedStatement.executeQuery().next();
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (!rs.next()) return false;
+                accountIds.add(accountId);
+                return true;
+            }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
         return false;
     }
@@ -59,44 +106,78 @@ public class AccountDAO {
      * @return True/False representing existence.
      */
     public boolean accountExists(String username) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = SELECT_BY_USERNAME_SQL;
 
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setString(1, username);
-            return preparedStatement.executeQuery().next();
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                return rs.next();
+            }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
         return false;
     }
     /**
-     * Stores the new account in account table.
+     * Checks the in-memory filter of taken usernames without touching the database.
+     * @param username the username to check.
+     * @return False if no account has the username, True if one may have it.
+     */
+    public boolean usernameMayExist(String username) {
+        return usernames.mightContain(username);
+    }
+
+    /**
+     * Stores the new account in account table. The unique constraint on username is what rejects a taken name,
+     * so concurrent registrations of the same username can not both succeed.
      * @param account The account object to be saved.
-     * @return New Account object with updated account_id object or old object provided.
+     * @return New Account object with updated account_id, or null if the username is taken.
      */
     public Account insertNewAccount(Account account) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "INSERT INTO account (username, password) VALUES (?,?)";
 
-        try {
-            String sql = "INSERT INTO account (username, password) VALUES (?,?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             preparedStatement.setString(1, account.getUsername());
             preparedStatement.setString(2, account.getPassword());
-            
+
             preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            
-            while(pkeyResultSet.next()) {
-                account.setAccount_id(pkeyResultSet.getInt(1));
-                return account;
+            try (ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys()) {
+                while(pkeyResultSet.next()) {
+                    account.setAccount_id(pkeyResultSet.getInt(1));
+                    accountIds.add(account.getAccount_id());
+                    usernames.add(account.getUsername());
+                    return account;
+                }
             }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            // a taken username is an expected outcome rather than an error
+            if (UNIQUE_VIOLATION.equals(e.getSQLState())) usernames.add(account.getUsername());
+            else Metrics.queryFailed(e);
         }
         return null;
     }
+
+    /**
+     * Fills the account id index and the username filter from the account table.
+     */
+    private void loadAccounts() {
+        String sql = "SELECT account_id, username FROM account";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery()) {
+            while(rs.next()) {
+                accountIds.add(rs.getInt("account_id"));
+                if (rs.getString("username") != null) usernames.add(rs.getString("username"));
+            }
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package DAO;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent, growable bitset of account ids. Account ids are dense auto-increment integers, so one bit
+ * per id is far smaller than a set of boxed Integers and a lookup is a single array read.
+ *
+ * Reads take no lock. Adds set their bit with a CAS and only take a lock when the bitset has to grow.
+ */
+public class AccountIdIndex {
+    private final ReentrantLock growLock = new ReentrantLock();
+    private volatile AtomicLongArray words = new AtomicLongArray(16);
+
+    /**
+     * @param account_id the id to look up.
+     * @return True if the id has been added to the index.
+     */
+    public boolean contains(int account_id) {
+        if (account_id < 0) return false;
+        AtomicLongArray current = words;
+        int word = account_id >>> 6;
+        return word < current.length() && (current.get(word) & (1L << account_id)) != 0;
+    }
+
+    /**
+     * Records an id as existing.
+     * @param account_id the id of an account known to be in the database.
+     */
+    public void add(int account_id) {
+        if (account_id < 0) return;
+        int word = account_id >>> 6;
+        long bit = 1L << account_id;
+
+        AtomicLongArray current = words;
+        while (true) {
+            if (word >= current.length()) current = grow(word);
+            setBits(current, word, bit);
+            // if a grow has already published a copy our bit may have missed it, so set it again in the copy
+            AtomicLongArray latest = words;
+            if (latest == current) return;
+            current = latest;
+        }
+    }
+
+    private static void setBits(AtomicLongArray array, int word, long bits) {
+        long old;
+        do {
+            old = array.get(word);
+            if ((old & bits) == bits) return;
+        } while (!array.compareAndSet(word, old, old | bits));
+    }
+
+    private AtomicLongArray grow(int word) {
+        growLock.lock();
+        try {
+            AtomicLongArray current = words;
+            if (word < current.length()) return current;
+
+            int length = current.length();
+            while (length <= word) length *= 2;
+            AtomicLongArray grown = new AtomicLongArray(length);
+            for (int i = 0; i < current.length(); i++) grown.set(i, current.get(i));
+            words = grown;
+            // adders that still saw the old array after the copy above finished their set before this publish,
+            // so merging the old words once more picks up every bit they set
+            for (int i = 0; i < current.length(); i++) setBits(grown, i, current.get(i));
+            return grown;
+        }
+        finally {
+            growLock.unlock();
+        }
+    }
+}
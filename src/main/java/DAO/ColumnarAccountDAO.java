@@ -0,0 +1,65 @@
+package DAO;
+
+import java.io.IOException;
+
+import Model.Account;
+import Util.Metrics;
+
+/**
+ * An AccountDAO backed by ColumnarStore instead of the H2 account table. Every account is already in memory, so
+ * the id index and username filter of AccountDAO are not loaded.
+ */
+public class ColumnarAccountDAO extends AccountDAO {
+    private final ColumnarStore store;
+
+    public ColumnarAccountDAO(ColumnarStore store) {
+        super(false);
+        this.store = store;
+    }
+
+    @Override
+    public Account selectAccountByUsername(String username) {
+        return store.selectAccountByUsername(username);
+    }
+
+    @Override
+    public boolean updatePassword(int accountId, String password) {
+        try {
+            return store.updatePassword(accountId, password);
+        }
+        catch(IOException e) {
+            Metrics.queryFailed(e);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean accountExists(int accountId) {
+        return store.accountExists(accountId);
+    }
+
+    @Override
+    public boolean accountExists(String username) {
+        return store.usernameExists(username);
+    }
+
+    // the store's username lookup is exact and as cheap as the filter
+    @Override
+    public boolean usernameMayExist(String username) {
+        return store.usernameExists(username);
+    }
+
+    @Override
+    public Account insertNewAccount(Account account) {
+        try {
+            Account stored = store.insertAccount(account.getUsername(), account.getPassword());
+            if (stored == null) return null;
+            account.setAccount_id(stored.getAccount_id());
+            return account;
+        }
+        catch(IOException e) {
+            Metrics.queryFailed(e);
+        }
+        return null;
+    }
+}
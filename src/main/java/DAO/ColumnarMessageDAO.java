@@ -0,0 +1,115 @@
+package DAO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * A MessageDAO backed by ColumnarStore instead of the H2 message table. Chosen by StorageEngine when the server is
+ * started with -Dstorage.engine=columnar.
+ */
+public class ColumnarMessageDAO extends MessageDAO {
+    private final ColumnarStore store;
+
+    public ColumnarMessageDAO(ColumnarStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public Message selectMessageById(int message_id) {
+        return store.selectMessage(message_id);
+    }
+
+    @Override
+    public ArrayList<Message> selectMessagesByIds(Collection<Integer> message_ids) {
+        ArrayList<Message> messages = new ArrayList<>(message_ids.size());
+        for (int message_id : message_ids) {
+            Message message = store.selectMessage(message_id);
+            if (message != null) messages.add(message);
+        }
+        return messages;
+    }
+
+    @Override
+    public ArrayList<Message> selectAllMessages() {
+        return store.selectMessages();
+    }
+
+    @Override
+    public MessageCursor openAllMessagesCursor() {
+        return store.openCursor(false, 0);
+    }
+
+    @Override
+    public MessageCursor openUserMessagesCursor(int account_id) {
+        return store.openCursor(true, account_id);
+    }
+
+    @Override
+    public MessageCursor openMessagesBetweenCursor(long since, long until) {
+        return store.openTimeRangeCursor(false, 0, since, until);
+    }
+
+    @Override
+    public MessageCursor openUserMessagesBetweenCursor(int account_id, long since, long until) {
+        return store.openTimeRangeCursor(true, account_id, since, until);
+    }
+
+    @Override
+    public ArrayList<Message> selectMessagesAfter(int after_id, int limit) {
+        return store.selectMessagesAfter(after_id, limit);
+    }
+
+    @Override
+    public ArrayList<Message> selectAllUserMessages(int account_id) {
+        return store.selectMessagesPostedBy(account_id);
+    }
+
+    @Override
+    public Message insertNewMessage(Message message) {
+        try {
+            return store.insertMessage(message);
+        }
+        catch(IOException e) {
+            Metrics.queryFailed(e);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean insertNewMessages(List<Message> messages) {
+        try {
+            return store.insertMessages(messages);
+        }
+        catch(IOException e) {
+            Metrics.queryFailed(e);
+        }
+        return false;
+    }
+
+    @Override
+    public Message updateMessage(int message_id, Message message) {
+        try {
+            return store.updateMessage(message_id, message.getMessage_text());
+        }
+        catch(IOException e) {
+            Metrics.queryFailed(e);
+        }
+        return null;
+    }
+
+    @Override
+    public Message deleteMessageById(int message_id) {
+        try {
+            return store.deleteMessage(message_id);
+        }
+        catch(IOException e) {
+            Metrics.queryFailed(e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,971 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * An in-memory storage engine for the account and message tables, used instead of H2 when the server is started
+ * with -Dstorage.engine=columnar.
+ *
+ * Messages are kept as columns: message_id, posted_by and time_posted_epoch in primitive arrays ordered by
+ * message_id, and each message_text as UTF-8 in an arena of 1 MiB byte chunks, addressed by one packed long per row.
+ * Readers take no lock. They read the current table from a volatile field and only look at the rows it counts; the
+ * single writer fills rows past that count and then publishes a new table, so a published row is never half written.
+ * An update or delete swaps the row's packed text address, which readers load atomically, and never touches bytes
+ * already in the arena.
+ *
+ * Writers take a lock and write each change to the WriteAheadLog before applying it. A snapshot of the live rows is
+ * written every storage.columnar.snapshotIntervalMillis, or sooner once the log reaches
+ * storage.columnar.snapshotLogBytes; it drops deleted rows and replaced text from memory, and the log is emptied.
+ * On startup the snapshot is loaded and the log replayed over it. With no snapshot the tables are imported from H2
+ * on first use, which is also how an existing deployment moves to this engine.
+ */
+public class ColumnarStore implements AutoCloseable {
+    // the same limit as the varchar(255) columns of the H2 tables
+    public static final int MAX_FIELD_LENGTH = 255;
+    public static final String DIR = System.getProperty("storage.columnar.dir", "columnar");
+    public static final boolean FSYNC = Boolean.getBoolean("storage.columnar.fsync");
+    public static final long SNAPSHOT_INTERVAL_MILLIS = Long.getLong("storage.columnar.snapshotIntervalMillis", 60000);
+    public static final long SNAPSHOT_LOG_BYTES = Long.getLong("storage.columnar.snapshotLogBytes", 64L << 20);
+
+    // a text address packs the chunk index into the high 32 bits, then a 20 bit offset and a 12 bit length
+    private static final int CHUNK_BYTES = 1 << 20;
+    // 4 GiB of text, far more than the heap holds; the chunk array is never resized, so readers need no fence for it
+    private static final int MAX_CHUNKS = 1 << 12;
+    private static final long DELETED = -1;
+    private static final long NULL_TEXT = -2;
+    private static final int INITIAL_ROWS = 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarStore.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x534d4353;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final byte ACCOUNT_INSERT = 1;
+    private static final byte MESSAGE_INSERT = 2;
+    private static final byte MESSAGE_UPDATE = 3;
+    private static final byte MESSAGE_DELETE = 4;
+    private static final byte ACCOUNT_PASSWORD = 5;
+
+    private static final ReentrantLock sharedLock = new ReentrantLock();
+    private static ColumnarStore shared;
+
+    private final Path snapshotPath;
+    private final WriteAheadLog log;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile MessageTable messages;
+    private volatile AccountTable accounts;
+    // filled after the account's row is published, so a reader that finds an id also finds its row
+    private final ConcurrentHashMap<String, Integer> accountIdsByUsername = new ConcurrentHashMap<>();
+    // set while the tables still have to be imported from H2
+    private volatile boolean importPending;
+    private ScheduledExecutorService snapshotter;
+    private final AtomicBoolean snapshotQueued = new AtomicBoolean();
+
+    // everything below is guarded by writeLock
+    private int nextAccountId;
+    private int nextMessageId;
+    private int chunkCount;
+    private int chunkUsed;
+    private int deletedRows;
+    private long deadTextBytes;
+
+    /**
+     * Opens a store kept in the given directory: loads its snapshot and replays its log, or, when there is no
+     * snapshot yet, arranges for the tables to be imported from H2 on first use.
+     * @param dir directory for the snapshot and the log, created if missing.
+     * @param fsync whether each logged change is forced to the disk before it is applied.
+     */
+    public ColumnarStore(Path dir, boolean fsync) throws IOException {
+        Files.createDirectories(dir);
+        snapshotPath = dir.resolve("snapshot.bin");
+        Path logPath = dir.resolve("wal.log");
+        clear();
+        if (Files.exists(snapshotPath)) {
+            readSnapshot();
+            log = new WriteAheadLog(logPath, fsync);
+            log.replay(this::redo);
+        }
+        else {
+            // the log only holds what changed since the last snapshot, so without one it is no use
+            Files.deleteIfExists(logPath);
+            log = new WriteAheadLog(logPath, fsync);
+            importPending = true;
+        }
+    }
+
+    /**
+     * @return the store in storage.columnar.dir shared by every DAO of the process, opened on first use with
+     * periodic snapshots and closed when the JVM exits.
+     */
+    public static ColumnarStore shared() {
+        sharedLock.lock();
+        try {
+            if (shared == null) {
+                ColumnarStore store = new ColumnarStore(Paths.get(DIR), FSYNC);
+                store.scheduleSnapshots(SNAPSHOT_INTERVAL_MILLIS);
+                Runtime.getRuntime().addShutdownHook(new Thread(store::close, "columnar-close"));
+                shared = store;
+            }
+            return shared;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("could not open the columnar store in " + DIR, e);
+        }
+        finally {
+            sharedLock.unlock();
+        }
+    }
+
+    /**
+     * Empties the store and its files, so the tables are imported from H2 again on next use. Used by tests after
+     * they reset the H2 tables.
+     */
+    public void reset() throws IOException {
+        writeLock.lock();
+        try {
+            // set first, so a reader arriving meanwhile waits for the import instead of seeing empty tables
+            importPending = true;
+            clear();
+            log.truncate();
+            Files.deleteIfExists(snapshotPath);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    public Message selectMessage(int message_id) {
+        ensureLoaded();
+        MessageTable table = messages;
+        int row = table.row(message_id);
+        return row < 0 ? null : table.message(row);
+    }
+
+    /**
+     * @return every message, ordered by message_id.
+     */
+    public ArrayList<Message> selectMessages() {
+        return drain(openCursor(false, 0));
+    }
+
+    /**
+     * @param after_id only messages with a greater message_id are returned.
+     * @param limit the maximum number of messages to return.
+     * @return at most limit messages ordered by message_id.
+     */
+    public ArrayList<Message> selectMessagesAfter(int after_id, int limit) {
+        ensureLoaded();
+        MessageTable table = messages;
+        ArrayList<Message> page = new ArrayList<>();
+        int row = table.row(after_id);
+        for (row = row < 0 ? -row - 1 : row + 1; row < table.size && page.size() < limit; row++) {
+            Message message = table.message(row);
+            if (message != null) page.add(message);
+        }
+        return page;
+    }
+
+    /**
+     * @param account_id the account whose messages are returned.
+     * @return the account's messages ordered by message_id, found by scanning the posted_by column.
+     */
+    public ArrayList<Message> selectMessagesPostedBy(int account_id) {
+        return drain(openCursor(true, account_id));
+    }
+
+    /**
+     * Opens a cursor over the messages as they are now; later writes may or may not be seen by it.
+     * @param byAccount whether to return only the messages of one account.
+     * @param account_id the account, if byAccount is set.
+     * @return the cursor, which holds no resources but should still be closed like any MessageCursor.
+     */
+    public MessageCursor openCursor(boolean byAccount, int account_id) {
+        ensureLoaded();
+        return new TableCursor(messages, byAccount, account_id);
+    }
+
+    /**
+     * Opens a cursor over the messages posted in a time range, as they are now. The store keeps no index on
+     * time_posted_epoch: the column is scanned for the rows in range, which are sorted by time unless, as usual,
+     * they already are, and each message is only read when the cursor reaches it.
+     * @param byAccount whether to return only the messages of one account.
+     * @param account_id the account, if byAccount is set.
+     * @param since the earliest time_posted_epoch included.
+     * @param until the time_posted_epoch at which the range ends, itself excluded.
+     * @return a cursor ordered by time_posted_epoch then message_id.
+     */
+    public MessageCursor openTimeRangeCursor(boolean byAccount, int account_id, long since, long until) {
+        ensureLoaded();
+        MessageTable table = messages;
+        int[] rows = new int[16];
+        int count = 0;
+        boolean sorted = true;
+        for (int row = 0; row < table.size; row++) {
+            long time = table.times[row];
+            if (time < since || time >= until || (byAccount && table.postedBy[row] != account_id)) continue;
+            if (count == rows.length) rows = Arrays.copyOf(rows, count * 2);
+            if (count > 0 && table.times[rows[count - 1]] > time) sorted = false;
+            rows[count++] = row;
+        }
+        if (!sorted) {
+            // rows are in message_id order, and the sort is stable, so message_id still breaks ties
+            rows = IntStream.of(rows).limit(count).boxed()
+                .sorted(Comparator.comparingLong(row -> table.times[row])).mapToInt(Integer::intValue).toArray();
+        }
+        return new RowCursor(table, Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Stores a new message with the next message_id. Like the H2 table, a posted_by with no account or a
+     * message_text longer than MAX_FIELD_LENGTH is refused.
+     * @param message the message; its message_id is set when it is stored.
+     * @return the message, or null if it was refused.
+     */
+    public Message insertMessage(Message message) throws IOException {
+        return insertMessages(List.of(message)) ? message : null;
+    }
+
+    /**
+     * Stores several messages with consecutive message_ids, logged as one record so a crash keeps all or none.
+     * @param batch the messages; each gets its message_id when the batch is stored.
+     * @return True if every message was stored, False if any was refused and none were.
+     */
+    public boolean insertMessages(List<Message> batch) throws IOException {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            byte[][] texts = new byte[batch.size()][];
+            long textBytes = 0;
+            for (int i = 0; i < texts.length; i++) {
+                Message message = batch.get(i);
+                if (!accountExists(message.getPosted_by()) || tooLong(message.getMessage_text())) return false;
+                texts[i] = encode(message.getMessage_text());
+                if (texts[i] != null) textBytes += texts[i].length;
+            }
+            reserveText(textBytes);
+
+            DataOutputStream out = log.begin();
+            out.writeByte(MESSAGE_INSERT);
+            out.writeInt(texts.length);
+            for (int i = 0; i < texts.length; i++) {
+                Message message = batch.get(i);
+                out.writeInt(nextMessageId + i);
+                out.writeInt(message.getPosted_by());
+                out.writeLong(message.getTime_posted_epoch());
+                writeBytes(out, texts[i]);
+            }
+            log.append();
+
+            MessageTable table = messages;
+            int firstId = nextMessageId;
+            for (int i = 0; i < texts.length; i++) {
+                Message message = batch.get(i);
+                table = append(table, firstId + i, message.getPosted_by(), message.getTime_posted_epoch(), texts[i]);
+                message.setMessage_id(firstId + i);
+            }
+            messages = table;
+        }
+        finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        return true;
+    }
+
+    /**
+     * @param message_id the message to change.
+     * @param message_text its new text.
+     * @return the updated message, or null if there is no such message or the text is too long.
+     */
+    public Message updateMessage(int message_id, String message_text) throws IOException {
+        ensureLoaded();
+        Message updated;
+        writeLock.lock();
+        try {
+            if (selectMessage(message_id) == null || tooLong(message_text)) return null;
+            byte[] text = encode(message_text);
+            reserveText(text == null ? 0 : text.length);
+            // looked up after reserveText, which may have compacted the table
+            MessageTable table = messages;
+            int row = table.row(message_id);
+
+            DataOutputStream out = log.begin();
+            out.writeByte(MESSAGE_UPDATE);
+            out.writeInt(message_id);
+            writeBytes(out, text);
+            log.append();
+
+            setText(table, row, text);
+            updated = table.message(row);
+        }
+        finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        return updated;
+    }
+
+    /**
+     * @param message_id the message to remove.
+     * @return the removed message, or null if there was no such message.
+     */
+    public Message deleteMessage(int message_id) throws IOException {
+        ensureLoaded();
+        Message deleted;
+        writeLock.lock();
+        try {
+            MessageTable table = messages;
+            int row = table.row(message_id);
+            deleted = row < 0 ? null : table.message(row);
+            if (deleted == null) return null;
+
+            DataOutputStream out = log.begin();
+            out.writeByte(MESSAGE_DELETE);
+            out.writeInt(message_id);
+            log.append();
+
+            delete(table, row);
+        }
+        finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        return deleted;
+    }
+
+    /**
+     * @return the account with this username, including its stored password column, or null.
+     */
+    public Account selectAccountByUsername(String username) {
+        ensureLoaded();
+        Integer id = username == null ? null : accountIdsByUsername.get(username);
+        if (id == null) return null;
+        AccountTable table = accounts;
+        int row = table.row(id);
+        return row >= 0 ? table.account(row) : null;
+    }
+
+    /**
+     * Replaces the stored password column of an account.
+     * @return True if the account exists and was changed, False if there is no such account or it is too long.
+     */
+    public boolean updatePassword(int account_id, String password) throws IOException {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            if (accounts.row(account_id) < 0 || tooLong(password)) return false;
+            DataOutputStream out = log.begin();
+            out.writeByte(ACCOUNT_PASSWORD);
+            out.writeInt(account_id);
+            writeBytes(out, encode(password));
+            log.append();
+
+            setPassword(account_id, password);
+        }
+        finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        return true;
+    }
+
+    public boolean accountExists(int account_id) {
+        ensureLoaded();
+        return accounts.row(account_id) >= 0;
+    }
+
+    public boolean usernameExists(String username) {
+        ensureLoaded();
+        return username != null && accountIdsByUsername.containsKey(username);
+    }
+
+    /**
+     * Stores a new account with the next account_id, unless the username is taken or a field is too long.
+     * @return the new account, or null if it was refused.
+     */
+    public Account insertAccount(String username, String password) throws IOException {
+        ensureLoaded();
+        Account account;
+        writeLock.lock();
+        try {
+            if (usernameExists(username) || tooLong(username) || tooLong(password)) return null;
+            int id = nextAccountId;
+            DataOutputStream out = log.begin();
+            out.writeByte(ACCOUNT_INSERT);
+            out.writeInt(id);
+            writeBytes(out, encode(username));
+            writeBytes(out, encode(password));
+            log.append();
+
+            addAccount(id, username, password);
+            account = new Account(id, username, password);
+        }
+        finally {
+            writeLock.unlock();
+        }
+        afterWrite();
+        return account;
+    }
+
+    /**
+     * Writes a snapshot of the live rows, compacting the tables in memory first, and empties the log. Writers wait
+     * while it is written; readers do not.
+     */
+    public void snapshot() throws IOException {
+        ensureLoaded();
+        writeLock.lock();
+        try {
+            writeSnapshot();
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes in the log, which a restart replays over the last snapshot.
+     */
+    public long getLogBytes() throws IOException {
+        return log.size();
+    }
+
+    /**
+     * Stops the snapshots and forces the log to the disk.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            if (snapshotter != null) snapshotter.shutdown();
+            log.close();
+        }
+        catch(IOException e) {
+            logger.warn("Could not close the columnar store's log", e);
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void scheduleSnapshots(long intervalMillis) {
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "columnar-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(this::snapshotIfLogged, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void snapshotIfLogged() {
+        snapshotQueued.set(false);
+        try {
+            if (log.size() > 0) snapshot();
+        }
+        catch(IOException | RuntimeException e) {
+            logger.warn("Columnar store snapshot failed", e);
+        }
+    }
+
+    // queues an early snapshot once the log is long enough to slow down a restart
+    private void afterWrite() throws IOException {
+        if (snapshotter != null && log.size() >= SNAPSHOT_LOG_BYTES && snapshotQueued.compareAndSet(false, true)) {
+            snapshotter.execute(this::snapshotIfLogged);
+        }
+    }
+
+    // the import only counts once its snapshot is on disk: without one a restart deletes the log and imports H2
+    // again, losing every write made since. So a failed import or snapshot is thrown and leaves the tables empty
+    // with the import still pending, refusing reads and writes until a later call gets both done.
+    private void ensureLoaded() {
+        if (!importPending) return;
+        writeLock.lock();
+        try {
+            if (!importPending) return;
+            try {
+                importFromH2();
+                writeSnapshot();
+            }
+            catch(IOException e) {
+                clear();
+                throw new UncheckedIOException("could not write the snapshot of the imported H2 tables", e);
+            }
+            catch(RuntimeException e) {
+                clear();
+                throw e;
+            }
+            importPending = false;
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    // called with writeLock held, or from the constructor
+    private void clear() {
+        messages = MessageTable.empty(INITIAL_ROWS);
+        accounts = AccountTable.empty(INITIAL_ROWS);
+        accountIdsByUsername.clear();
+        nextAccountId = 1;
+        nextMessageId = 1;
+        chunkCount = 0;
+        chunkUsed = 0;
+        deletedRows = 0;
+        deadTextBytes = 0;
+    }
+
+    // called with writeLock held
+    private void importFromH2() {
+        try (Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("SELECT * FROM account ORDER BY account_id")) {
+                while(rs.next()) {
+                    addAccount(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
+            }
+            MessageTable table = messages;
+            try (ResultSet rs = statement.executeQuery("SELECT * FROM message ORDER BY message_id")) {
+                while(rs.next()) {
+                    table = append(table, rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getLong("time_posted_epoch"), encode(rs.getString("message_text")));
+                }
+            }
+            messages = table;
+        }
+        catch(SQLException e) {
+            throw new IllegalStateException("could not import the H2 tables into the columnar store", e);
+        }
+    }
+
+    // applies a record read back from the log; records already covered by the snapshot are skipped
+    private void redo(DataInput in) throws IOException {
+        byte type = in.readByte();
+        if (type == ACCOUNT_INSERT) {
+            int id = in.readInt();
+            String username = decode(readBytes(in));
+            String password = decode(readBytes(in));
+            if (id >= nextAccountId) addAccount(id, username, password);
+        }
+        else if (type == ACCOUNT_PASSWORD) {
+            int id = in.readInt();
+            String password = decode(readBytes(in));
+            if (accounts.row(id) >= 0) setPassword(id, password);
+        }
+        else if (type == MESSAGE_INSERT) {
+            MessageTable table = messages;
+            for (int count = in.readInt(); count > 0; count--) {
+                int id = in.readInt();
+                int postedBy = in.readInt();
+                long time = in.readLong();
+                byte[] text = readBytes(in);
+                if (id >= nextMessageId) table = append(table, id, postedBy, time, text);
+            }
+            messages = table;
+        }
+        else if (type == MESSAGE_UPDATE || type == MESSAGE_DELETE) {
+            MessageTable table = messages;
+            int row = table.row(in.readInt());
+            byte[] text = type == MESSAGE_UPDATE ? readBytes(in) : null;
+            if (row < 0 || table.texts.get(row) == DELETED) return;
+            if (type == MESSAGE_UPDATE) setText(table, row, text);
+            else delete(table, row);
+        }
+        else throw new IOException("unknown write-ahead log record type " + type);
+    }
+
+    // called with writeLock held
+    private void writeSnapshot() throws IOException {
+        if (deletedRows > 0 || deadTextBytes > 0) compact();
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(nextAccountId);
+            out.writeInt(nextMessageId);
+
+            AccountTable accountTable = accounts;
+            out.writeInt(accountTable.size);
+            for (int row = 0; row < accountTable.size; row++) {
+                out.writeInt(accountTable.ids[row]);
+                writeBytes(out, encode(accountTable.usernames[row]));
+                writeBytes(out, encode(accountTable.passwords[row]));
+            }
+            MessageTable messageTable = messages;
+            out.writeInt(messageTable.size);
+            for (int row = 0; row < messageTable.size; row++) {
+                out.writeInt(messageTable.ids[row]);
+                out.writeInt(messageTable.postedBy[row]);
+                out.writeLong(messageTable.times[row]);
+                long address = messageTable.texts.get(row);
+                if (address == NULL_TEXT) out.writeInt(-1);
+                else {
+                    out.writeInt(length(address));
+                    out.write(messageTable.chunks[chunk(address)], offset(address), length(address));
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // a crash before this leaves a log the snapshot already covers, which redo skips
+        log.truncate();
+    }
+
+    // called from the constructor, on an empty store
+    private void readSnapshot() throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotPath), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException(snapshotPath + " is not a columnar store snapshot");
+            }
+            int accountIdLimit = in.readInt();
+            int messageIdLimit = in.readInt();
+
+            for (int count = in.readInt(); count > 0; count--) {
+                addAccount(in.readInt(), decode(readBytes(in)), decode(readBytes(in)));
+            }
+            MessageTable table = messages;
+            for (int count = in.readInt(); count > 0; count--) {
+                table = append(table, in.readInt(), in.readInt(), in.readLong(), readBytes(in));
+            }
+            messages = table;
+
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum) throw new IOException(snapshotPath + " is corrupt");
+            nextAccountId = Math.max(nextAccountId, accountIdLimit);
+            nextMessageId = Math.max(nextMessageId, messageIdLimit);
+        }
+    }
+
+    // rebuilds the message table from its live rows into a fresh arena
+    private void compact() {
+        MessageTable old = messages;
+        MessageTable table = MessageTable.empty(Math.max(INITIAL_ROWS, old.size - deletedRows));
+        chunkCount = 0;
+        chunkUsed = 0;
+        for (int row = 0; row < old.size; row++) {
+            long address = old.texts.get(row);
+            if (address == DELETED) continue;
+            long copied = address == NULL_TEXT ? NULL_TEXT :
+                appendText(table, old.chunks[chunk(address)], offset(address), length(address));
+            table = table.append(old.ids[row], old.postedBy[row], old.times[row], copied);
+        }
+        messages = table;
+        deletedRows = 0;
+        deadTextBytes = 0;
+    }
+
+    // makes sure the arena can take this much more text before a change is logged
+    private void reserveText(long bytes) throws IOException {
+        if (chunkCount + bytes / CHUNK_BYTES + 2 <= MAX_CHUNKS) return;
+        if (deletedRows > 0 || deadTextBytes > 0) compact();
+        if (chunkCount + bytes / CHUNK_BYTES + 2 > MAX_CHUNKS) throw new IOException("the message text arena is full");
+    }
+
+    // the returned table holds the new row but is not yet published
+    private MessageTable append(MessageTable table, int id, int postedBy, long time, byte[] text) {
+        long address = text == null ? NULL_TEXT : appendText(table, text, 0, text.length);
+        nextMessageId = Math.max(nextMessageId, id + 1);
+        return table.append(id, postedBy, time, address);
+    }
+
+    private void setText(MessageTable table, int row, byte[] text) {
+        long old = table.texts.get(row);
+        if (old != NULL_TEXT) deadTextBytes += length(old);
+        table.texts.set(row, text == null ? NULL_TEXT : appendText(table, text, 0, text.length));
+    }
+
+    private void delete(MessageTable table, int row) {
+        long old = table.texts.get(row);
+        if (old != NULL_TEXT) deadTextBytes += length(old);
+        table.texts.set(row, DELETED);
+        deletedRows++;
+    }
+
+    // copies text into the arena; the chunk is filled in before any address pointing into it is published
+    private long appendText(MessageTable table, byte[] source, int offset, int length) {
+        if (chunkCount == 0 || chunkUsed + length > CHUNK_BYTES) {
+            if (chunkCount == MAX_CHUNKS) throw new IllegalStateException("the message text arena is full");
+            table.chunks[chunkCount++] = new byte[CHUNK_BYTES];
+            chunkUsed = 0;
+        }
+        System.arraycopy(source, offset, table.chunks[chunkCount - 1], chunkUsed, length);
+        long address = ((long) (chunkCount - 1) << 32) | ((long) chunkUsed << 12) | length;
+        chunkUsed += length;
+        return address;
+    }
+
+    // called with writeLock held, or from the constructor
+    private void setPassword(int id, String password) {
+        AccountTable table = accounts;
+        table.passwords[table.row(id)] = password;
+        // republished so readers that start after this see the new column
+        accounts = new AccountTable(table.size, table.ids, table.usernames, table.passwords);
+    }
+
+    private void addAccount(int id, String username, String password) {
+        accounts = accounts.append(id, username, password);
+        if (username != null) accountIdsByUsername.put(username, id);
+        nextAccountId = Math.max(nextAccountId, id + 1);
+    }
+
+    private static ArrayList<Message> drain(MessageCursor cursor) {
+        ArrayList<Message> messages = new ArrayList<>();
+        try (cursor) {
+            while (cursor.hasNext()) messages.add(cursor.next());
+        }
+        return messages;
+    }
+
+    private static boolean tooLong(String value) {
+        return value != null && value.length() > MAX_FIELD_LENGTH;
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String decode(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] value) throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null) out.write(value);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    private static int chunk(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offset(long address) {
+        return (int) (address >>> 12) & (CHUNK_BYTES - 1);
+    }
+
+    private static int length(long address) {
+        return (int) address & 0xfff;
+    }
+
+    /**
+     * The message columns as of one write. Rows below size never move; their text addresses may be swapped by later
+     * writes. A table outgrown by the writer is copied into a larger one, and readers still holding the old one keep
+     * reading it.
+     */
+    private static final class MessageTable {
+        final int size;
+        final int[] ids;
+        final int[] postedBy;
+        final long[] times;
+        final AtomicLongArray texts;
+        final byte[][] chunks;
+
+        MessageTable(int size, int[] ids, int[] postedBy, long[] times, AtomicLongArray texts, byte[][] chunks) {
+            this.size = size;
+            this.ids = ids;
+            this.postedBy = postedBy;
+            this.times = times;
+            this.texts = texts;
+            this.chunks = chunks;
+        }
+
+        static MessageTable empty(int capacity) {
+            return new MessageTable(0, new int[capacity], new int[capacity], new long[capacity],
+                new AtomicLongArray(capacity), new byte[MAX_CHUNKS][]);
+        }
+
+        MessageTable append(int id, int postedBy, long time, long address) {
+            MessageTable table = this;
+            if (size == ids.length) {
+                int capacity = size * 2;
+                AtomicLongArray texts = new AtomicLongArray(capacity);
+                for (int row = 0; row < size; row++) texts.set(row, this.texts.get(row));
+                table = new MessageTable(size, Arrays.copyOf(ids, capacity), Arrays.copyOf(this.postedBy, capacity),
+                    Arrays.copyOf(times, capacity), texts, chunks);
+            }
+            table.ids[size] = id;
+            table.postedBy[size] = postedBy;
+            table.times[size] = time;
+            table.texts.set(size, address);
+            return new MessageTable(size + 1, table.ids, table.postedBy, table.times, table.texts, chunks);
+        }
+
+        int row(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        // null if the row has been deleted
+        Message message(int row) {
+            long address = texts.get(row);
+            if (address == DELETED) return null;
+            String text = address == NULL_TEXT ? null :
+                new String(chunks[chunk(address)], offset(address), length(address), StandardCharsets.UTF_8);
+            return new Message(ids[row], postedBy[row], text, times[row]);
+        }
+    }
+
+    /**
+     * The account columns as of one write, published the same way as MessageTable. Only a password is ever changed,
+     * in place; a reader holding the table from before sees either the old or the new column.
+     */
+    private static final class AccountTable {
+        final int size;
+        final int[] ids;
+        final String[] usernames;
+        final String[] passwords;
+
+        AccountTable(int size, int[] ids, String[] usernames, String[] passwords) {
+            this.size = size;
+            this.ids = ids;
+            this.usernames = usernames;
+            this.passwords = passwords;
+        }
+
+        static AccountTable empty(int capacity) {
+            return new AccountTable(0, new int[capacity], new String[capacity], new String[capacity]);
+        }
+
+        AccountTable append(int id, String username, String password) {
+            AccountTable table = size < ids.length ? this : new AccountTable(size, Arrays.copyOf(ids, size * 2),
+                Arrays.copyOf(usernames, size * 2), Arrays.copyOf(passwords, size * 2));
+            table.ids[size] = id;
+            table.usernames[size] = username;
+            table.passwords[size] = password;
+            return new AccountTable(size + 1, table.ids, table.usernames, table.passwords);
+        }
+
+        int row(int id) {
+            return Arrays.binarySearch(ids, 0, size, id);
+        }
+
+        Account account(int row) {
+            return new Account(ids[row], usernames[row], passwords[row]);
+        }
+    }
+
+    /**
+     * A cursor over one published MessageTable. It holds no connection, so closing it only ends the iteration.
+     */
+    private static final class RowCursor extends MessageCursor {
+        private final MessageTable table;
+        private final int[] rows;
+        private int index;
+        private Message next;
+
+        RowCursor(MessageTable table, int[] rows) {
+            this.table = table;
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // a row deleted since the scan reads as null and is skipped
+            while (next == null && index < rows.length) next = table.message(rows[index++]);
+            return next != null;
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Message message = next;
+            next = null;
+            return message;
+        }
+
+        @Override
+        public void close() {
+            index = rows.length;
+            next = null;
+        }
+    }
+
+    private static final class TableCursor extends MessageCursor {
+        private final MessageTable table;
+        private final boolean byAccount;
+        private final int accountId;
+        private int row;
+        private Message next;
+
+        TableCursor(MessageTable table, boolean byAccount, int accountId) {
+            this.table = table;
+            this.byAccount = byAccount;
+            this.accountId = accountId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && row < table.size) {
+                int current = row++;
+                if (!byAccount || table.postedBy[current] == accountId) next = table.message(current);
+            }
+            return next != null;
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Message message = next;
+            next = null;
+            return message;
+        }
+
+        @Override
+        public void close() {
+            row = table.size;
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package DAO;
+
+import java.sql.*;
+import java.util.ArrayList;
+
+import Model.Follow;
+import Util.ConnectionUtil;
+import Util.Metrics;
+
+/**
+ * Reads and writes the follow table. Follows are kept in H2 under either storage engine.
+ */
+public class FollowDAO {
+    public static final String INSERT_SQL = "MERGE INTO follow KEY (follower_id, followee_id) VALUES (?,?)";
+    public static final String DELETE_SQL = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?";
+    public static final String SELECT_ALL_SQL = "SELECT follower_id, followee_id FROM follow";
+
+    /**
+     * Stores a follow. Storing one that already exists changes nothing, so a repeated follow is not an error.
+     * @param follow the follow to store.
+     * @return True if the follow is stored, False if the statement failed.
+     */
+    public boolean insertFollow(Follow follow) {
+        String sql = INSERT_SQL;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, follow.getFollower_id());
+            preparedStatement.setInt(2, follow.getFollowee_id());
+            preparedStatement.executeUpdate();
+            return true;
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Removes a follow.
+     * @param follow the follow to remove.
+     * @return True if the follow existed and was removed, False otherwise.
+     */
+    public boolean deleteFollow(Follow follow) {
+        String sql = DELETE_SQL;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, follow.getFollower_id());
+            preparedStatement.setInt(2, follow.getFollowee_id());
+            return preparedStatement.executeUpdate() > 0;
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves every follow, to build the in-memory follow graph.
+     * @return all follows, or null if the query failed.
+     */
+    public ArrayList<Follow> selectAllFollows() {
+        String sql = SELECT_ALL_SQL;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery()) {
+            ArrayList<Follow> follows = new ArrayList<>();
+            while(rs.next()) follows.add(new Follow(rs.getInt("follower_id"), rs.getInt("followee_id")));
+            return follows;
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        return null;
+    }
+}
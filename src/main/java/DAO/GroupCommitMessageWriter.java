@@ -0,0 +1,133 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import Model.Message;
+
+/**
+ * Collects message inserts from many request threads and writes them to the database together, so a burst of
+ * concurrent posts pays for one transaction commit instead of one per message.
+ *
+ * A single writer thread takes the first pending insert, then waits at most maxDelayMicros for up to maxRows
+ * inserts in total before flushing them with MessageDAO.insertNewMessages. Each caller's future completes with
+ * its message, including the generated message_id, or with null if the insert failed. If the group insert
+ * fails, every message in the group is retried on its own so one bad row does not fail its neighbours.
+ */
+public class GroupCommitMessageWriter implements AutoCloseable {
+    public static final boolean ENABLED = Boolean.getBoolean("messages.groupCommit.enabled");
+    public static final int MAX_ROWS = Integer.getInteger("messages.groupCommit.maxRows", 64);
+    public static final long MAX_DELAY_MICROS = Long.getLong("messages.groupCommit.maxDelayMicros", 500);
+
+    private final MessageDAO messageDAO;
+    private final int maxRows;
+    private final long maxDelayNanos;
+    private final BlockingQueue<PendingInsert> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public GroupCommitMessageWriter(MessageDAO messageDAO) {
+        this(messageDAO, MAX_ROWS, MAX_DELAY_MICROS);
+    }
+
+    public GroupCommitMessageWriter(MessageDAO messageDAO, int maxRows, long maxDelayMicros) {
+        this.messageDAO = messageDAO;
+        this.maxRows = maxRows;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a message to be inserted with the next group.
+     * @param message Message object to be saved to message table.
+     * @return a future completed with the saved message, or with null if it could not be saved.
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingInsert insert = new PendingInsert(message);
+        pending.add(insert);
+        // after close() nothing drains the queue, so an insert that raced with it is written directly
+        if (!running && pending.remove(insert)) insert.result.complete(messageDAO.insertNewMessage(message));
+        return insert.result;
+    }
+
+    /**
+     * Stops the writer thread after flushing whatever is already queued.
+     */
+    @Override
+    public void close() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushRemaining();
+    }
+
+    private void run() {
+        List<PendingInsert> group = new ArrayList<>(maxRows);
+        while (running) {
+            try {
+                group.add(pending.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (group.size() < maxRows) {
+                    // take whatever is already queued without waiting, then wait out the rest of the delay
+                    if (pending.drainTo(group, maxRows - group.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingInsert next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    group.add(next);
+                }
+            }
+            catch (InterruptedException e) {
+                // close() interrupts a blocked take; anything already collected is still flushed below
+            }
+            flush(group);
+            group.clear();
+        }
+    }
+
+    private void flushRemaining() {
+        List<PendingInsert> group = new ArrayList<>();
+        pending.drainTo(group);
+        flush(group);
+    }
+
+    private void flush(List<PendingInsert> group) {
+        if (group.isEmpty()) return;
+        List<Message> messages = new ArrayList<>(group.size());
+        for (PendingInsert insert : group) messages.add(insert.message);
+
+        try {
+            if (messageDAO.insertNewMessages(messages)) {
+                for (PendingInsert insert : group) insert.result.complete(insert.message);
+                return;
+            }
+            for (PendingInsert insert : group) insert.result.complete(messageDAO.insertNewMessage(insert.message));
+        }
+        catch (RuntimeException e) {
+            for (PendingInsert insert : group) insert.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * A message waiting to be written and the future its caller is blocked on.
+     */
+    private static final class PendingInsert {
+        private final Message message;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package DAO;
+
+import Model.Account;
+import Util.Metrics;
+
+/**
+ * Wraps another AccountDAO and times every call into a dao_query timer labelled with the wrapped class and the
+ * method, counting the calls during which the wrapped DAO reported an error. Each call is also a span of the
+ * request's trace, if it is sampled. The wrapped DAO keeps the id index and
+ * username filter, so this one does not load them.
+ */
+public class InstrumentedAccountDAO extends AccountDAO {
+    private final AccountDAO accountDAO;
+    private final Metrics.Timer selectAccountByUsername;
+    private final Metrics.Timer updatePassword;
+    private final Metrics.Timer accountExistsById;
+    private final Metrics.Timer accountExistsByUsername;
+    private final Metrics.Timer usernameMayExist;
+    private final Metrics.Timer insertNewAccount;
+
+    public InstrumentedAccountDAO(AccountDAO accountDAO) {
+        super(false);
+        this.accountDAO = accountDAO;
+        String dao = accountDAO.getClass().getSimpleName();
+        selectAccountByUsername = Metrics.timer("dao_query", "dao", dao, "method", "selectAccountByUsername").traced(dao + ".selectAccountByUsername");
+        updatePassword = Metrics.timer("dao_query", "dao", dao, "method", "updatePassword").traced(dao + ".updatePassword");
+        accountExistsById = Metrics.timer("dao_query", "dao", dao, "method", "accountExistsById").traced(dao + ".accountExistsById");
+        accountExistsByUsername = Metrics.timer("dao_query", "dao", dao, "method", "accountExistsByUsername").traced(dao + ".accountExistsByUsername");
+        usernameMayExist = Metrics.timer("dao_query", "dao", dao, "method", "usernameMayExist").traced(dao + ".usernameMayExist");
+        insertNewAccount = Metrics.timer("dao_query", "dao", dao, "method", "insertNewAccount").traced(dao + ".insertNewAccount");
+    }
+
+    @Override
+    public Account selectAccountByUsername(String username) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return accountDAO.selectAccountByUsername(username);
+        }
+        finally {
+            selectAccountByUsername.stop(start, failures);
+        }
+    }
+
+    @Override
+    public boolean updatePassword(int accountId, String password) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return accountDAO.updatePassword(accountId, password);
+        }
+        finally {
+            updatePassword.stop(start, failures);
+        }
+    }
+
+    @Override
+    public boolean accountExists(int accountId) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return accountDAO.accountExists(accountId);
+        }
+        finally {
+            accountExistsById.stop(start, failures);
+        }
+    }
+
+    @Override
+    public boolean accountExists(String username) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return accountDAO.accountExists(username);
+        }
+        finally {
+            accountExistsByUsername.stop(start, failures);
+        }
+    }
+
+    @Override
+    public boolean usernameMayExist(String username) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return accountDAO.usernameMayExist(username);
+        }
+        finally {
+            usernameMayExist.stop(start, failures);
+        }
+    }
+
+    @Override
+    public Account insertNewAccount(Account account) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return accountDAO.insertNewAccount(account);
+        }
+        finally {
+            insertNewAccount.stop(start, failures);
+        }
+    }
+}
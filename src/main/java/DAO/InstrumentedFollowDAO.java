@@ -0,0 +1,62 @@
+package DAO;
+
+import java.util.ArrayList;
+
+import Model.Follow;
+import Util.Metrics;
+
+/**
+ * Wraps another FollowDAO and times every call into a dao_query timer labelled with the wrapped class and the
+ * method, counting the calls during which the wrapped DAO reported an error. Each call is also a span of the
+ * request's trace, if it is sampled.
+ */
+public class InstrumentedFollowDAO extends FollowDAO {
+    private final FollowDAO followDAO;
+    private final Metrics.Timer insertFollow;
+    private final Metrics.Timer deleteFollow;
+    private final Metrics.Timer selectAllFollows;
+
+    public InstrumentedFollowDAO(FollowDAO followDAO) {
+        this.followDAO = followDAO;
+        String dao = followDAO.getClass().getSimpleName();
+        insertFollow = Metrics.timer("dao_query", "dao", dao, "method", "insertFollow").traced(dao + ".insertFollow");
+        deleteFollow = Metrics.timer("dao_query", "dao", dao, "method", "deleteFollow").traced(dao + ".deleteFollow");
+        selectAllFollows = Metrics.timer("dao_query", "dao", dao, "method", "selectAllFollows").traced(dao + ".selectAllFollows");
+    }
+
+    @Override
+    public boolean insertFollow(Follow follow) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return followDAO.insertFollow(follow);
+        }
+        finally {
+            insertFollow.stop(start, failures);
+        }
+    }
+
+    @Override
+    public boolean deleteFollow(Follow follow) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return followDAO.deleteFollow(follow);
+        }
+        finally {
+            deleteFollow.stop(start, failures);
+        }
+    }
+
+    @Override
+    public ArrayList<Follow> selectAllFollows() {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return followDAO.selectAllFollows();
+        }
+        finally {
+            selectAllFollows.stop(start, failures);
+        }
+    }
+}
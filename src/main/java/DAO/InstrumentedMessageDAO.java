@@ -0,0 +1,204 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * Wraps another MessageDAO and times every call into a dao_query timer labelled with the wrapped class and the
+ * method, counting the calls during which the wrapped DAO reported an error. Each call is also a span of the
+ * request's trace, if it is sampled. For a cursor, only opening it is timed.
+ */
+public class InstrumentedMessageDAO extends MessageDAO {
+    private final MessageDAO messageDAO;
+    private final Metrics.Timer selectMessageById;
+    private final Metrics.Timer selectMessagesByIds;
+    private final Metrics.Timer selectAllMessages;
+    private final Metrics.Timer openAllMessagesCursor;
+    private final Metrics.Timer openUserMessagesCursor;
+    private final Metrics.Timer openMessagesBetweenCursor;
+    private final Metrics.Timer openUserMessagesBetweenCursor;
+    private final Metrics.Timer selectMessagesAfter;
+    private final Metrics.Timer selectAllUserMessages;
+    private final Metrics.Timer insertNewMessage;
+    private final Metrics.Timer insertNewMessages;
+    private final Metrics.Timer updateMessage;
+    private final Metrics.Timer deleteMessageById;
+
+    public InstrumentedMessageDAO(MessageDAO messageDAO) {
+        this.messageDAO = messageDAO;
+        String dao = messageDAO.getClass().getSimpleName();
+        selectMessageById = Metrics.timer("dao_query", "dao", dao, "method", "selectMessageById").traced(dao + ".selectMessageById");
+        selectMessagesByIds = Metrics.timer("dao_query", "dao", dao, "method", "selectMessagesByIds").traced(dao + ".selectMessagesByIds");
+        selectAllMessages = Metrics.timer("dao_query", "dao", dao, "method", "selectAllMessages").traced(dao + ".selectAllMessages");
+        openAllMessagesCursor = Metrics.timer("dao_query", "dao", dao, "method", "openAllMessagesCursor").traced(dao + ".openAllMessagesCursor");
+        openUserMessagesCursor = Metrics.timer("dao_query", "dao", dao, "method", "openUserMessagesCursor").traced(dao + ".openUserMessagesCursor");
+        openMessagesBetweenCursor = Metrics.timer("dao_query", "dao", dao, "method", "openMessagesBetweenCursor").traced(dao + ".openMessagesBetweenCursor");
+        openUserMessagesBetweenCursor = Metrics.timer("dao_query", "dao", dao, "method", "openUserMessagesBetweenCursor").traced(dao + ".openUserMessagesBetweenCursor");
+        selectMessagesAfter = Metrics.timer("dao_query", "dao", dao, "method", "selectMessagesAfter").traced(dao + ".selectMessagesAfter");
+        selectAllUserMessages = Metrics.timer("dao_query", "dao", dao, "method", "selectAllUserMessages").traced(dao + ".selectAllUserMessages");
+        insertNewMessage = Metrics.timer("dao_query", "dao", dao, "method", "insertNewMessage").traced(dao + ".insertNewMessage");
+        insertNewMessages = Metrics.timer("dao_query", "dao", dao, "method", "insertNewMessages").traced(dao + ".insertNewMessages");
+        updateMessage = Metrics.timer("dao_query", "dao", dao, "method", "updateMessage").traced(dao + ".updateMessage");
+        deleteMessageById = Metrics.timer("dao_query", "dao", dao, "method", "deleteMessageById").traced(dao + ".deleteMessageById");
+    }
+
+    @Override
+    public Message selectMessageById(int message_id) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.selectMessageById(message_id);
+        }
+        finally {
+            selectMessageById.stop(start, failures);
+        }
+    }
+
+    @Override
+    public ArrayList<Message> selectMessagesByIds(Collection<Integer> message_ids) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.selectMessagesByIds(message_ids);
+        }
+        finally {
+            selectMessagesByIds.stop(start, failures);
+        }
+    }
+
+    @Override
+    public ArrayList<Message> selectAllMessages() {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.selectAllMessages();
+        }
+        finally {
+            selectAllMessages.stop(start, failures);
+        }
+    }
+
+    @Override
+    public MessageCursor openAllMessagesCursor() {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.openAllMessagesCursor();
+        }
+        finally {
+            openAllMessagesCursor.stop(start, failures);
+        }
+    }
+
+    @Override
+    public MessageCursor openUserMessagesCursor(int account_id) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.openUserMessagesCursor(account_id);
+        }
+        finally {
+            openUserMessagesCursor.stop(start, failures);
+        }
+    }
+
+    @Override
+    public MessageCursor openMessagesBetweenCursor(long since, long until) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.openMessagesBetweenCursor(since, until);
+        }
+        finally {
+            openMessagesBetweenCursor.stop(start, failures);
+        }
+    }
+
+    @Override
+    public MessageCursor openUserMessagesBetweenCursor(int account_id, long since, long until) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.openUserMessagesBetweenCursor(account_id, since, until);
+        }
+        finally {
+            openUserMessagesBetweenCursor.stop(start, failures);
+        }
+    }
+
+    @Override
+    public ArrayList<Message> selectMessagesAfter(int after_id, int limit) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.selectMessagesAfter(after_id, limit);
+        }
+        finally {
+            selectMessagesAfter.stop(start, failures);
+        }
+    }
+
+    @Override
+    public ArrayList<Message> selectAllUserMessages(int account_id) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.selectAllUserMessages(account_id);
+        }
+        finally {
+            selectAllUserMessages.stop(start, failures);
+        }
+    }
+
+    @Override
+    public Message insertNewMessage(Message message) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.insertNewMessage(message);
+        }
+        finally {
+            insertNewMessage.stop(start, failures);
+        }
+    }
+
+    @Override
+    public boolean insertNewMessages(List<Message> messages) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.insertNewMessages(messages);
+        }
+        finally {
+            insertNewMessages.stop(start, failures);
+        }
+    }
+
+    @Override
+    public Message updateMessage(int message_id, Message message) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.updateMessage(message_id, message);
+        }
+        finally {
+            updateMessage.stop(start, failures);
+        }
+    }
+
+    @Override
+    public Message deleteMessageById(int message_id) {
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        try {
+            return messageDAO.deleteMessageById(message_id);
+        }
+        finally {
+            deleteMessageById.stop(start, failures);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package DAO;
+
+import java.sql.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * Iterates over the rows of a message query one at a time while the query is still running, so a caller can
+ * write each message out without the whole result ever being held in memory.
+ *
+ * The cursor owns its pooled connection until it is closed, so it must always be closed, preferably with a
+ * try-with-resources block. A database error ends the iteration early and is logged like the other DAO errors.
+ */
+public class MessageCursor implements Iterator<Message>, AutoCloseable {
+    private final Connection connection;
+    private final PreparedStatement preparedStatement;
+    private ResultSet rs;
+    private Message next;
+    private boolean done;
+
+    /**
+     * Opens a cursor over the given query. Lazy query execution is switched on for the session so H2 produces
+     * rows as they are read instead of materializing the result first.
+     * @param connection a pooled connection the cursor takes ownership of.
+     * @param sql the query to run.
+     * @param parameters values for the query's parameters, in order.
+     */
+    MessageCursor(Connection connection, String sql, Object... parameters) throws SQLException {
+        this.connection = connection;
+        try (Statement setting = connection.createStatement()) {
+            setting.execute("SET LAZY_QUERY_EXECUTION TRUE");
+        }
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(sql);
+            for (int i = 0; i < parameters.length; i++) statement.setObject(i + 1, parameters[i]);
+            this.rs = statement.executeQuery();
+        }
+        catch(SQLException | RuntimeException e) {
+            try {
+                if (statement != null) statement.close();
+            }
+            catch(SQLException closeException) {
+                e.addSuppressed(closeException);
+            }
+            finally {
+                endLazyExecution();
+            }
+            throw e;
+        }
+        this.preparedStatement = statement;
+    }
+
+    /**
+     * For cursors that do not run a query; subclasses override hasNext, next and close.
+     */
+    protected MessageCursor() {
+        this.connection = null;
+        this.preparedStatement = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) return true;
+        if (done) return false;
+        try {
+            if (rs.next()) {
+                next = new Message(rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch"));
+                return true;
+            }
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        done = true;
+        return false;
+    }
+
+    @Override
+    public Message next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Message message = next;
+        next = null;
+        return message;
+    }
+
+    /**
+     * Closes the query and hands the connection back to the pool with lazy execution switched off again.
+     */
+    @Override
+    public void close() {
+        done = true;
+        try {
+            rs.close();
+            preparedStatement.close();
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        finally {
+            endLazyExecution();
+            try {
+                connection.close();
+            }
+            catch(SQLException e) {
+                Metrics.queryFailed(e);
+            }
+        }
+    }
+
+    /**
+     * Switches lazy query execution back off before the connection returns to the pool. If that fails the
+     * physical connection is aborted, so the pool discards it instead of lending out a session still in lazy mode.
+     */
+    private void endLazyExecution() {
+        try (Statement setting = connection.createStatement()) {
+            setting.execute("SET LAZY_QUERY_EXECUTION FALSE");
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+            try {
+                connection.abort(Runnable::run);
+            }
+            catch(SQLException abortException) {
+                Metrics.queryFailed(abortException);
+            }
+        }
+    }
+}
@@ -3,48 +3,89 @@ package DAO;
 import java.sql.*;
 import Model.Message;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 public class MessageDAO {
+    // queries on the request hot path; QueryPlanTest checks that each one is planned with an index.
+    public static final String SELECT_BY_ID_SQL = "SELECT * FROM message WHERE message_id = ?";
+    public static final String SELECT_AFTER_SQL = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+    public static final String SELECT_BY_ACCOUNT_SQL = "SELECT * FROM message WHERE message.posted_by = ?";
+    public static final String SELECT_BY_IDS_SQL = "SELECT * FROM message WHERE message_id = ANY(?)";
+    // time ranges are half open, since <= time_posted_epoch < until, and ordered to match the V2 indexes
+    public static final String SELECT_BY_TIME_SQL = "SELECT * FROM message WHERE time_posted_epoch >= ? AND time_posted_epoch < ? "
+        + "ORDER BY time_posted_epoch, message_id";
+    public static final String SELECT_BY_ACCOUNT_TIME_SQL = "SELECT * FROM message WHERE posted_by = ? "
+        + "AND time_posted_epoch >= ? AND time_posted_epoch < ? ORDER BY posted_by, time_posted_epoch, message_id";
+
     /**
      * Retrieves a message from the message table by its message_id.
      * @param message_id of the message to retrieve.
      * @return the Message Object or null.
      */
     public Message selectMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = SELECT_BY_ID_SQL;
 
-        try {
-            String sql = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, message_id);
-            ResultSet rs = preparedStatement.executeQuery();
 
-            while(rs.next()) {
-                return new Message(rs.getInt("message_id"),
-                rs.getInt("posted_by"),
-                rs.getString("message_text"),
-                rs.getLong("time_posted_epoch"));
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    return new Message(rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch"));
+                }
             }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
         return null;
     }
 
+    /**
+     * Retrieves several messages by their message_id with one primary key lookup per id, in a single query.
+     * @param message_ids ids of the messages to retrieve.
+     * @return the messages that exist, in no particular order.
+     */
+    public ArrayList<Message> selectMessagesByIds(Collection<Integer> message_ids) {
+        ArrayList<Message> messages = new ArrayList<Message>();
+        String sql = SELECT_BY_IDS_SQL;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", message_ids.toArray()));
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    messages.add(new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch")));
+                }
+            }
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        return messages;
+    }
+
     /**
      * Retrieves all messages from the message table.
      * @return a list of all Message objects from message table.
      */
     public ArrayList<Message> selectAllMessages() {
-        Connection connection = ConnectionUtil.getConnection();
         ArrayList<Message> messages = new ArrayList<Message>();
+        String sql = "SELECT * FROM message";
 
-        try {
-            String sql = "SELECT * FROM message";
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            ResultSet rs = preparedStatement.executeQuery()) {
 
             while(rs.next()) {
                 messages.add(new Message(rs.getInt("message_id"),
@@ -54,7 +95,77 @@ public class MessageDAO {
             }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
+        }
+        return messages;
+    }
+
+    /**
+     * Opens a cursor over every message in the message table, ordered by message_id.
+     * @return a cursor that must be closed by the caller, or null if the query could not be started.
+     */
+    public MessageCursor openAllMessagesCursor() {
+        return openCursor("SELECT * FROM message ORDER BY message_id");
+    }
+
+    /**
+     * Opens a cursor over the messages posted by an account.
+     * @param account_id of the account to retrieve messages for.
+     * @return a cursor that must be closed by the caller, or null if the query could not be started.
+     */
+    public MessageCursor openUserMessagesCursor(int account_id) {
+        return openCursor(SELECT_BY_ACCOUNT_SQL, account_id);
+    }
+
+    /**
+     * Opens a cursor over the messages posted in a time range, read in time order from the time_posted_epoch index.
+     * @param since the earliest time_posted_epoch included.
+     * @param until the time_posted_epoch at which the range ends, itself excluded.
+     * @return a cursor ordered by time_posted_epoch then message_id that must be closed by the caller, or null if
+     * the query could not be started.
+     */
+    public MessageCursor openMessagesBetweenCursor(long since, long until) {
+        return openCursor(SELECT_BY_TIME_SQL, since, until);
+    }
+
+    /**
+     * Opens a cursor over the messages an account posted in a time range.
+     * @param account_id of the account to retrieve messages for.
+     * @param since the earliest time_posted_epoch included.
+     * @param until the time_posted_epoch at which the range ends, itself excluded.
+     * @return a cursor ordered by time_posted_epoch then message_id that must be closed by the caller, or null if
+     * the query could not be started.
+     */
+    public MessageCursor openUserMessagesBetweenCursor(int account_id, long since, long until) {
+        return openCursor(SELECT_BY_ACCOUNT_TIME_SQL, account_id, since, until);
+    }
+
+    /**
+     * Retrieves the messages that follow a given message_id using a primary key range scan.
+     * @param after_id only messages with a greater message_id are returned; 0 starts from the beginning.
+     * @param limit the maximum number of messages to return.
+     * @return a list of at most limit Message objects ordered by message_id.
+     */
+    public ArrayList<Message> selectMessagesAfter(int after_id, int limit) {
+        ArrayList<Message> messages = new ArrayList<Message>();
+        String sql = SELECT_AFTER_SQL;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            preparedStatement.setInt(1, after_id);
+            preparedStatement.setInt(2, limit);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    messages.add(new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch")));
+                }
+            }
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
         }
         return messages;
     }
@@ -62,28 +173,28 @@ public class MessageDAO {
     /**
      * Retrieves a list of Message objects from message table based on account_id.
      * @param account_id of the account to retrieves message for.
-     * @return a list containing Message objects loaded from message table. 
+     * @return a list containing Message objects loaded from message table.
      */
-    public ArrayList<Message> selectAllUserMessages(int account_id) {        
-        Connection connection = ConnectionUtil.getConnection();
+    public ArrayList<Message> selectAllUserMessages(int account_id) {
         ArrayList<Message> messages = new ArrayList<Message>();
+        String sql = SELECT_BY_ACCOUNT_SQL;
 
-        try {
-            String sql = "SELECT * FROM message WHERE message.posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, account_id);
-            ResultSet rs = preparedStatement.executeQuery();
 
-            while(rs.next()) {
-                messages.add(new Message(rs.getInt("message_id"),
-                    rs.getInt("posted_by"),
-                    rs.getString("message_text"),
-                    rs.getLong("time_posted_epoch"))
-                );
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    messages.add(new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch"))
+                    );
+                }
             }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
         return messages;
     }
@@ -94,67 +205,158 @@ public class MessageDAO {
      * @return the saved Message object from database with updated message id or null.
      */
     public Message insertNewMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?)";
 
-        try {
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             preparedStatement.setInt(1, message.getPosted_by());
             preparedStatement.setString(2, message.getMessage_text());
             preparedStatement.setLong(3, message.getTime_posted_epoch());
             preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
 
-            while(pkeyResultSet.next()) {
-                message.setMessage_id(pkeyResultSet.getInt(1));
-                return message;
+            try (ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys()) {
+                while(pkeyResultSet.next()) {
+                    message.setMessage_id(pkeyResultSet.getInt(1));
+                    return message;
+                }
             }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
         return null;
     }
 
     /**
-     * Updates a message in the message table.
+     * Stores several messages in the message table with one JDBC batch in a single transaction, so either every
+     * message is saved or none is.
+     * @param messages Message objects to be saved; each gets its generated message_id on success.
+     * @return True/False indicating whether the whole batch was saved.
+     */
+    public boolean insertNewMessages(List<Message> messages) {
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?,?,?)";
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            connection.setAutoCommit(false);
+            try {
+                for (Message message : messages) {
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                try (ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys()) {
+                    for (Message message : messages) {
+                        if (!pkeyResultSet.next()) throw new SQLException("missing generated key for batch insert");
+                        message.setMessage_id(pkeyResultSet.getInt(1));
+                    }
+                }
+                connection.commit();
+                return true;
+            }
+            catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+        }
+        return false;
+    }
+
+    /**
+     * Updates a message in the message table and reads back the updated row in the same statement, using an
+     * H2 data change delta table.
      * @param message_id id of the message to be updated in message table.
      * @param message Message object containing updated text to save to message table.
-     * @return True/False indicating save success or failure.
+     * @return the updated Message object, or null if no message has that id.
      */
-    public boolean updateMessage(int message_id, Message message) {
-        Connection connection = ConnectionUtil.getConnection();
+    public Message updateMessage(int message_id, Message message) {
+        String sql = "SELECT * FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
 
-        try {
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setString(1, message.getMessage_text());
             preparedStatement.setInt(2, message_id);
-            return preparedStatement.executeUpdate() > 0;
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    return new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch"));
+                }
+            }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
-        return false;
+        return null;
     }
 
     /**
-     * Remove a message from the message table.
+     * Remove a message from the message table and read back the removed row in the same statement, using an
+     * H2 data change delta table.
      * @param message_id of Message to be deleted from message table.
-     * @return True/False indicating save success or failure.
+     * @return the deleted Message object, or null if no message had that id.
      */
-    public boolean deleteMessageById(int message_id) {
-        Connection connection = ConnectionUtil.getConnection();
+    public Message deleteMessageById(int message_id) {
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
 
-        try {
-            String sql = "DELETE FROM message WHERE message_id = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
             preparedStatement.setInt(1, message_id);
-            return preparedStatement.executeUpdate() > 0;
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()) {
+                    return new Message(rs.getInt("message_id"),
+                        rs.getInt("posted_by"),
+                        rs.getString("message_text"),
+                        rs.getLong("time_posted_epoch"));
+                }
+            }
         }
         catch(SQLException e) {
-            System.out.println(e.getMessage());
+            Metrics.queryFailed(e);
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * Starts a query on its own pooled connection and wraps it in a MessageCursor that owns the connection.
+     * @param sql the query to run.
+     * @param parameters values for the query's parameters, in order.
+     * @return the open cursor or null.
+     */
+    private MessageCursor openCursor(String sql, Object... parameters) {
+        Connection connection;
+        try {
+            connection = ConnectionUtil.getConnection();
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+            return null;
+        }
+
+        try {
+            return new MessageCursor(connection, sql, parameters);
+        }
+        catch(SQLException e) {
+            Metrics.queryFailed(e);
+            try {
+                connection.close();
+            }
+            catch(SQLException closeException) {
+                Metrics.queryFailed(closeException);
+            }
+        }
+        return null;
     }
 }
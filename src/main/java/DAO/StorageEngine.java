@@ -0,0 +1,61 @@
+package DAO;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Util.Metrics;
+
+/**
+ * Chooses where accounts and messages are kept, from the storage.engine system property read at startup: "h2",
+ * the default, for the H2 tables, or "columnar" for the in-memory ColumnarStore.
+ */
+public class StorageEngine {
+    public static final String ENGINE = System.getProperty("storage.engine", "h2");
+    public static final boolean COLUMNAR = "columnar".equals(ENGINE);
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageEngine.class);
+
+    static {
+        if (!COLUMNAR && !"h2".equals(ENGINE)) throw new IllegalArgumentException("unknown storage.engine " + ENGINE);
+    }
+
+    /**
+     * @return a MessageDAO for the selected engine, timed into GET /metrics unless metrics are disabled.
+     */
+    public static MessageDAO newMessageDAO() {
+        MessageDAO messageDAO = COLUMNAR ? new ColumnarMessageDAO(ColumnarStore.shared()) : new MessageDAO();
+        return Metrics.ENABLED ? new InstrumentedMessageDAO(messageDAO) : messageDAO;
+    }
+
+    /**
+     * @return an AccountDAO for the selected engine, timed into GET /metrics unless metrics are disabled.
+     */
+    public static AccountDAO newAccountDAO() {
+        AccountDAO accountDAO = COLUMNAR ? new ColumnarAccountDAO(ColumnarStore.shared()) : new AccountDAO();
+        return Metrics.ENABLED ? new InstrumentedAccountDAO(accountDAO) : accountDAO;
+    }
+
+    /**
+     * @return a FollowDAO, timed into GET /metrics unless metrics are disabled. Follows are in H2 under either engine.
+     */
+    public static FollowDAO newFollowDAO() {
+        FollowDAO followDAO = new FollowDAO();
+        return Metrics.ENABLED ? new InstrumentedFollowDAO(followDAO) : followDAO;
+    }
+
+    /**
+     * Brings the selected engine back in line with freshly reset H2 tables. Only the columnar engine keeps its own
+     * copy; it is emptied and imported again from H2 on its next use.
+     */
+    public static void resetTestStorage() {
+        if (!COLUMNAR) return;
+        try {
+            ColumnarStore.shared().reset();
+        }
+        catch(IOException e) {
+            logger.warn("Could not reset the columnar store", e);
+        }
+    }
+}
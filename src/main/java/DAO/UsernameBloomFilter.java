@@ -0,0 +1,87 @@
+package DAO;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent Bloom filter of usernames that are taken. A negative answer is certain, so registration can
+ * skip the username probe for names the filter has never seen; a positive answer only means "maybe taken".
+ *
+ * The filter never grows, so its false positive rate rises as accounts are added. A false positive only costs
+ * the probe it would otherwise have saved.
+ */
+public class UsernameBloomFilter {
+    public static final int BITS = Integer.getInteger("accounts.bloom.bits", 1 << 20);
+    public static final int HASHES = Integer.getInteger("accounts.bloom.hashes", 5);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashes;
+
+    public UsernameBloomFilter() {
+        this(BITS, HASHES);
+    }
+
+    /**
+     * @param bits number of bits in the filter, rounded up to a multiple of 64.
+     * @param hashes number of bits set per username.
+     */
+    public UsernameBloomFilter(int bits, int hashes) {
+        this.words = new AtomicLongArray(Math.max(1, (bits + 63) >>> 6));
+        this.bitCount = (long) words.length() << 6;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Records a username as taken.
+     * @param username the username of an existing account.
+     */
+    public void add(String username) {
+        long hash = hash(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = words.get(word);
+                if ((old & mask) != 0) break;
+            } while (!words.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    /**
+     * @param username the username to check.
+     * @return False if the username is certainly free, True if it may be taken.
+     */
+    public boolean mightContain(String username) {
+        long hash = hash(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            long bit = index(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private long index(int combined) {
+        return (combined & 0x7fffffffL) % bitCount;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 chars, finished with a murmur3 mix so both halves are well distributed
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
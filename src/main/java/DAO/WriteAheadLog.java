@@ -0,0 +1,138 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The append-only log behind ColumnarStore. Every change is written here as one record before it is applied in
+ * memory. A record is its payload length, the payload and a CRC32 of the payload, so a record cut short by a crash
+ * fails its check on replay and the log is truncated back to the last whole record.
+ *
+ * Records are handed to the operating system as they are written, which survives a crash of the server process.
+ * With fsync on, each record is also forced to the disk before the change is applied, which survives losing power.
+ *
+ * Not thread safe; ColumnarStore only uses it under its write lock.
+ */
+class WriteAheadLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    // larger than any record the store writes, so a corrupt length is not mistaken for one
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private final boolean fsync;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+
+    /**
+     * Opens the log, creating the file if it does not exist. New records go after any already in it.
+     * @param path the log file.
+     * @param fsync whether to force every record to the disk.
+     */
+    WriteAheadLog(Path path, boolean fsync) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fsync = fsync;
+        channel.position(channel.size());
+    }
+
+    /**
+     * Starts a new record.
+     * @return the stream to write the record's payload to, followed by a call to append().
+     */
+    DataOutputStream begin() {
+        record.reset();
+        return recordOut;
+    }
+
+    /**
+     * Writes the record started by begin() to the end of the log.
+     */
+    void append() throws IOException {
+        byte[] payload = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length + 8);
+        buffer.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        if (fsync) channel.force(false);
+    }
+
+    /**
+     * Reads every whole record from the start of the log, then truncates anything after the last one.
+     * @param apply called with each record's payload, in the order the records were written.
+     * @return the number of records read.
+     */
+    int replay(RecordHandler apply) throws IOException {
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        long valid = 0;
+        int count = 0;
+        long size = channel.size();
+        while (size - valid >= 8) {
+            int length = in.readInt();
+            if (length < 1 || length > MAX_RECORD_BYTES || size - valid - 8 < length) break;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (in.readInt() != (int) crc.getValue()) break;
+            apply.apply(new DataInputStream(new ByteArrayInputStream(payload)));
+            valid += length + 8;
+            count++;
+        }
+        if (valid < size) {
+            logger.warn("Dropping {} bytes of the write-ahead log after the last whole record", size - valid);
+            channel.truncate(valid);
+            channel.force(false);
+        }
+        channel.position(valid);
+        return count;
+    }
+
+    /**
+     * @return the length of the log in bytes.
+     */
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Empties the log, once everything in it is covered by a snapshot.
+     */
+    void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+    }
+
+    /**
+     * Forces the log to the disk and closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Applies one record read back from the log.
+     */
+    interface RecordHandler {
+        void apply(DataInput payload) throws IOException;
+    }
+}
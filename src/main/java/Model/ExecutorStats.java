@@ -0,0 +1,79 @@
+package Model;
+
+/**
+ * This is a class that models a snapshot of one of the handler pools, as reported by GET /admin/executors.
+ */
+public class ExecutorStats {
+    /**
+     * The kind of request the pool runs: read, write or auth.
+     */
+    public String name;
+    /**
+     * Requests waiting for a worker.
+     */
+    public int queue_depth;
+    /**
+     * How many requests may wait before new ones are rejected with 503.
+     */
+    public int queue_capacity;
+    /**
+     * Workers currently handling a request.
+     */
+    public int active;
+    /**
+     * Requests rejected with 503 since the server started.
+     */
+    public long rejected;
+    /**
+     * Requests handled since the server started.
+     */
+    public long completed;
+
+    public ExecutorStats() {
+    }
+
+    public ExecutorStats(String name, int queue_depth, int queue_capacity, int active, long rejected, long completed) {
+        this.name = name;
+        this.queue_depth = queue_depth;
+        this.queue_capacity = queue_capacity;
+        this.active = active;
+        this.rejected = rejected;
+        this.completed = completed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueue_depth() {
+        return queue_depth;
+    }
+
+    public int getQueue_capacity() {
+        return queue_capacity;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutorStats{" +
+                "name='" + name + '\'' +
+                ", queue_depth=" + queue_depth +
+                ", queue_capacity=" + queue_capacity +
+                ", active=" + active +
+                ", rejected=" + rejected +
+                ", completed=" + completed +
+                '}';
+    }
+}
@@ -0,0 +1,94 @@
+package Model;
+
+/**
+ * This is a class that models a snapshot of the off-heap message JSON cache, as reported by GET /admin/json-cache.
+ */
+public class JsonCacheStats {
+    /**
+     * Off-heap bytes allocated for the cache.
+     */
+    public long capacity_bytes;
+    /**
+     * Off-heap bytes holding cached JSON.
+     */
+    public long used_bytes;
+    /**
+     * Messages whose JSON is cached.
+     */
+    public int entries;
+    public long hits;
+    public long misses;
+    /**
+     * Messages dropped to make room for newer ones.
+     */
+    public long evictions;
+    /**
+     * Messages that could not be cached at all.
+     */
+    public long dropped;
+    /**
+     * Direct buffer memory in use by the whole JVM, including the cache.
+     */
+    public long jvm_direct_bytes;
+
+    public JsonCacheStats() {
+    }
+
+    public JsonCacheStats(long capacity_bytes, long used_bytes, int entries, long hits, long misses, long evictions,
+            long dropped, long jvm_direct_bytes) {
+        this.capacity_bytes = capacity_bytes;
+        this.used_bytes = used_bytes;
+        this.entries = entries;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.dropped = dropped;
+        this.jvm_direct_bytes = jvm_direct_bytes;
+    }
+
+    public long getCapacity_bytes() {
+        return capacity_bytes;
+    }
+
+    public long getUsed_bytes() {
+        return used_bytes;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public long getJvm_direct_bytes() {
+        return jvm_direct_bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "JsonCacheStats{" +
+                "capacity_bytes=" + capacity_bytes +
+                ", used_bytes=" + used_bytes +
+                ", entries=" + entries +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", dropped=" + dropped +
+                ", jvm_direct_bytes=" + jvm_direct_bytes +
+                '}';
+    }
+}
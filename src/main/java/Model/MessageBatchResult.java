@@ -0,0 +1,58 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a POST /messages/batch request. Exactly one of
+ * message and error is set.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the message in the request array.
+     */
+    private int index;
+    /**
+     * The created message, including its generated message_id, or null if it was not created.
+     */
+    private Message message;
+    /**
+     * Why the message was not created, or null if it was.
+     */
+    private String error;
+
+    public MessageBatchResult() {
+    }
+
+    public MessageBatchResult(int index, Message message, String error) {
+        this.index = index;
+        this.message = message;
+        this.error = error;
+    }
+
+    public static MessageBatchResult created(int index, Message message) {
+        return new MessageBatchResult(index, message, null);
+    }
+
+    public static MessageBatchResult failed(int index, String error) {
+        return new MessageBatchResult(index, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "index=" + index +
+                ", message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of messages returned by a keyset (cursor based) query, along with
+ * the opaque cursor a client sends back to fetch the page that follows it.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, ordered by message_id.
+     */
+    private List<Message> messages;
+    /**
+     * The cursor for the next page, or null when this is the last page.
+     */
+    private String next_cursor;
+
+    public MessagePage(List<Message> messages, String next_cursor) {
+        this.messages = messages;
+        this.next_cursor = next_cursor;
+    }
+
+    /**
+     * @return messages
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return next_cursor
+     */
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "messages=" + messages +
+                ", next_cursor='" + next_cursor + '\'' +
+                '}';
+    }
+}
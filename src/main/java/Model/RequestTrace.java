@@ -0,0 +1,97 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one of the slowest sampled requests, with its phases, as reported by
+ * GET /admin/traces.
+ */
+public class RequestTrace {
+    public String method;
+    /**
+     * The path requested.
+     */
+    public String path;
+    /**
+     * The path pattern of the route that handled it.
+     */
+    public String route;
+    public int status;
+    /**
+     * When the request arrived, in milliseconds since the epoch.
+     */
+    public long started_epoch_millis;
+    /**
+     * How long the request took, in microseconds.
+     */
+    public double duration_micros;
+    /**
+     * Phases not recorded because the trace already held trace.maxSpans.
+     */
+    public int dropped_spans;
+    /**
+     * The request's phases, in the order they started.
+     */
+    public List<TraceSpan> spans;
+
+    public RequestTrace() {
+    }
+
+    public RequestTrace(String method, String path, String route, int status, long started_epoch_millis,
+        double duration_micros, int dropped_spans, List<TraceSpan> spans) {
+        this.method = method;
+        this.path = path;
+        this.route = route;
+        this.status = status;
+        this.started_epoch_millis = started_epoch_millis;
+        this.duration_micros = duration_micros;
+        this.dropped_spans = dropped_spans;
+        this.spans = spans;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getStarted_epoch_millis() {
+        return started_epoch_millis;
+    }
+
+    public double getDuration_micros() {
+        return duration_micros;
+    }
+
+    public int getDropped_spans() {
+        return dropped_spans;
+    }
+
+    public List<TraceSpan> getSpans() {
+        return spans;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTrace{" +
+                "method='" + method + '\'' +
+                ", path='" + path + '\'' +
+                ", route='" + route + '\'' +
+                ", status=" + status +
+                ", started_epoch_millis=" + started_epoch_millis +
+                ", duration_micros=" + duration_micros +
+                ", dropped_spans=" + dropped_spans +
+                ", spans=" + spans +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+package Model;
+
+/**
+ * This is a class that models a snapshot of the message search index, as reported by GET /admin/search-index.
+ */
+public class SearchIndexStats {
+    /**
+     * Whether the table has been read into the index yet; it is read on the first search.
+     */
+    public boolean loaded;
+    /**
+     * Time taken to read the table into the index, or -1 before it is loaded.
+     */
+    public long load_millis;
+    /**
+     * Distinct terms in the index.
+     */
+    public int terms;
+    /**
+     * (term, message) pairs held in the posting lists.
+     */
+    public long postings;
+    /**
+     * Bytes allocated for the posting lists.
+     */
+    public long posting_bytes;
+
+    public SearchIndexStats() {
+    }
+
+    public SearchIndexStats(boolean loaded, long load_millis, int terms, long postings, long posting_bytes) {
+        this.loaded = loaded;
+        this.load_millis = load_millis;
+        this.terms = terms;
+        this.postings = postings;
+        this.posting_bytes = posting_bytes;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public long getLoad_millis() {
+        return load_millis;
+    }
+
+    public int getTerms() {
+        return terms;
+    }
+
+    public long getPostings() {
+        return postings;
+    }
+
+    public long getPosting_bytes() {
+        return posting_bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchIndexStats{" +
+                "loaded=" + loaded +
+                ", load_millis=" + load_millis +
+                ", terms=" + terms +
+                ", postings=" + postings +
+                ", posting_bytes=" + posting_bytes +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one timed phase of a traced request, as reported by GET /admin/traces.
+ */
+public class TraceSpan {
+    /**
+     * The phase, e.g. parse, MessageService.updateMessage or MessageDAO.updateMessage.
+     */
+    public String name;
+    /**
+     * Microseconds from the start of the request to the start of the phase.
+     */
+    public double start_micros;
+    /**
+     * How long the phase took, in microseconds.
+     */
+    public double duration_micros;
+    /**
+     * The phases within this one, in the order they started.
+     */
+    public List<TraceSpan> children;
+
+    public TraceSpan() {
+    }
+
+    public TraceSpan(String name, double start_micros, double duration_micros, List<TraceSpan> children) {
+        this.name = name;
+        this.start_micros = start_micros;
+        this.duration_micros = duration_micros;
+        this.children = children;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getStart_micros() {
+        return start_micros;
+    }
+
+    public double getDuration_micros() {
+        return duration_micros;
+    }
+
+    public List<TraceSpan> getChildren() {
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        return "TraceSpan{" +
+                "name='" + name + '\'' +
+                ", start_micros=" + start_micros +
+                ", duration_micros=" + duration_micros +
+                ", children=" + children +
+                '}';
+    }
+}
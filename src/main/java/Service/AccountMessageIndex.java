@@ -0,0 +1,201 @@
+package Service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import DAO.MessageCursor;
+import Model.Message;
+
+/**
+ * An in-memory secondary index from account id to the ids of the account's messages, ordered by time_posted_epoch
+ * and then message_id, so the messages of one account can be found without filtering the whole message table.
+ *
+ * Each account's ids and times are kept in primitive arrays. A message posted later than everything the account
+ * already has is appended in place and published by bumping the list's size; anything else builds new arrays.
+ * Readers take no lock and only look at the rows the list they read counts. Changes to one account are serialized
+ * by the map.
+ *
+ * The table is read into the index on first use. Writes recorded before or during that read are kept, since adding
+ * a message twice is harmless; a message deleted while the table was being read may come back as an id with no row,
+ * which readers skip when they fetch the rows. Like MessageVersions, the index only sees writes made through
+ * MessageService, and must be told about a write after it is committed.
+ */
+public class AccountMessageIndex {
+    private static final int[] NO_IDS = new int[0];
+
+    private final ConcurrentHashMap<Integer, Postings> accounts = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    /**
+     * Reads every message in the table into the index, unless that has already been done.
+     * @param table opens a cursor over the message table; it is closed here.
+     * @return True if the index is loaded, False if the cursor could not be opened.
+     */
+    public boolean load(Supplier<MessageCursor> table) {
+        if (loaded) return true;
+        loadLock.lock();
+        try {
+            if (loaded) return true;
+            try (MessageCursor messages = table.get()) {
+                if (messages == null) return false;
+                while (messages.hasNext()) add(messages.next());
+            }
+            loaded = true;
+            return true;
+        }
+        finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * Records a message that was just stored.
+     * @param message the message, with its message_id set.
+     */
+    public void add(Message message) {
+        accounts.compute(message.getPosted_by(), (account_id, postings) ->
+            postings == null ? Postings.of(message) : postings.with(message));
+    }
+
+    /**
+     * Forgets a message that was just deleted.
+     * @param message the deleted message, with its posted_by and time_posted_epoch as stored.
+     */
+    public void remove(Message message) {
+        accounts.computeIfPresent(message.getPosted_by(), (account_id, postings) -> postings.without(message));
+    }
+
+    /**
+     * @param account_id the account whose messages to find.
+     * @return the ids of the account's messages, oldest first.
+     */
+    public int[] messageIds(int account_id) {
+        Postings postings = accounts.get(account_id);
+        return postings == null ? NO_IDS : Arrays.copyOf(postings.ids, postings.size);
+    }
+
+    /**
+     * @param account_id the account whose messages to find.
+     * @param since the earliest time_posted_epoch included.
+     * @param until the time_posted_epoch at which the range ends, itself excluded.
+     * @return the ids of the account's messages posted in the range, oldest first, found by binary search.
+     */
+    public int[] messageIds(int account_id, long since, long until) {
+        Postings postings = accounts.get(account_id);
+        if (postings == null || since >= until) return NO_IDS;
+        return Arrays.copyOfRange(postings.ids, postings.firstAtOrAfter(since), postings.firstAtOrAfter(until));
+    }
+
+    /**
+     * Passes the account's newest messages to visitor, newest first, without copying the account's ids.
+     * @param account_id the account whose messages to visit.
+     * @param count the most messages to pass.
+     * @param visitor receives each message_id and time_posted_epoch.
+     */
+    public void forEachNewest(int account_id, int count, MessageVisitor visitor) {
+        Postings postings = accounts.get(account_id);
+        if (postings == null) return;
+        for (int i = postings.size - 1; i >= Math.max(0, postings.size - count); i--) visitor.accept(postings.ids[i], postings.times[i]);
+    }
+
+    /**
+     * Receives the messages passed by forEachNewest.
+     */
+    public interface MessageVisitor {
+        void accept(int message_id, long time_posted_epoch);
+    }
+
+    /**
+     * @return the number of accounts with at least one message.
+     */
+    public int accountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * One account's ids and times. The arrays may be longer than size; the rows past it are only written by the
+     * next append, before it publishes a Postings that counts them.
+     */
+    private static final class Postings {
+        final int[] ids;
+        final long[] times;
+        final int size;
+
+        Postings(int[] ids, long[] times, int size) {
+            this.ids = ids;
+            this.times = times;
+            this.size = size;
+        }
+
+        static Postings of(Message message) {
+            return new Postings(new int[] { message.getMessage_id() }, new long[] { message.getTime_posted_epoch() }, 1);
+        }
+
+        Postings with(Message message) {
+            int id = message.getMessage_id();
+            long time = message.getTime_posted_epoch();
+            int position = search(id, time);
+            if (position >= 0) return this;
+            position = -position - 1;
+
+            if (position == size && size < ids.length) {
+                ids[size] = id;
+                times[size] = time;
+                return new Postings(ids, times, size + 1);
+            }
+            int capacity = size == ids.length ? size * 2 : ids.length;
+            int[] newIds = new int[capacity];
+            long[] newTimes = new long[capacity];
+            System.arraycopy(ids, 0, newIds, 0, position);
+            System.arraycopy(times, 0, newTimes, 0, position);
+            newIds[position] = id;
+            newTimes[position] = time;
+            System.arraycopy(ids, position, newIds, position + 1, size - position);
+            System.arraycopy(times, position, newTimes, position + 1, size - position);
+            return new Postings(newIds, newTimes, size + 1);
+        }
+
+        // null once the account has no messages left, which drops it from the map
+        Postings without(Message message) {
+            int position = search(message.getMessage_id(), message.getTime_posted_epoch());
+            if (position < 0) return this;
+            if (size == 1) return null;
+            int[] newIds = new int[ids.length];
+            long[] newTimes = new long[times.length];
+            System.arraycopy(ids, 0, newIds, 0, position);
+            System.arraycopy(times, 0, newTimes, 0, position);
+            System.arraycopy(ids, position + 1, newIds, position, size - position - 1);
+            System.arraycopy(times, position + 1, newTimes, position, size - position - 1);
+            return new Postings(newIds, newTimes, size - 1);
+        }
+
+        // the position of the first message posted at or after time, or size if there is none
+        int firstAtOrAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < time) low = middle + 1;
+                else high = middle;
+            }
+            return low;
+        }
+
+        // binary search on (time, id); returns -(insertion point) - 1 when absent, like Arrays.binarySearch
+        private int search(int id, long time) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int order = times[middle] != time ? Long.compare(times[middle], time) : Integer.compare(ids[middle], id);
+                if (order < 0) low = middle + 1;
+                else if (order > 0) high = middle - 1;
+                else return middle;
+            }
+            return -(low + 1);
+        }
+    }
+}
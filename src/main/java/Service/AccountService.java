@@ -2,40 +2,82 @@ package Service;
 
 import Model.Account;
 import DAO.AccountDAO;
+import DAO.StorageEngine;
+import Util.Trace;
 
 public class AccountService {
     // AccountDAO for class to communicate with database
     private AccountDAO accountDAO;
+    // hashes passwords before they are stored and checks logins against the stored hash
+    private PasswordHasher passwordHasher;
+    // credentials that passed the hasher recently, so a repeated login skips the key derivation
+    private CredentialCache credentialCache;
 
-    // no-args constructor to create a new instance of AccountService.
+    // no-args constructor to create a new instance of AccountService on the storage engine selected at startup.
     public AccountService() {
-        accountDAO = new AccountDAO();
+        this(StorageEngine.newAccountDAO());
     }
 
     // Constructor for when an AccountDAO is provided.
     public AccountService(AccountDAO accountDAO) {
+        this(accountDAO, new PasswordHasher(), new CredentialCache());
+    }
+
+    // Constructor for when the AccountDAO, hasher and credential cache are provided.
+    public AccountService(AccountDAO accountDAO, PasswordHasher passwordHasher, CredentialCache credentialCache) {
         this.accountDAO = accountDAO;
+        this.passwordHasher = passwordHasher;
+        this.credentialCache = credentialCache;
     }
 
     /**
      * Creates a new account if valid username, password, and no other user
-     * exists by the username given.
+     * exists by the username given. The insert itself rejects a taken username through the unique
+     * constraint; the username probe only runs for names the in-memory filter says may be taken, to
+     * avoid a failed insert in the common case of a repeated name. Only a hash of the password is stored.
      * @param account Account object from json.
-     * @return the newly created account from the database.
+     * @return the newly created account, with the password as sent.
      */
     public Account registerNewAccount(Account account) {
-        return accountObjectIsInvalid(account) || accountDAO.accountExists(account.getUsername()) ? null :
-            accountDAO.insertNewAccount(account);
+        if (accountObjectIsInvalid(account)) return null;
+        if (accountDAO.usernameMayExist(account.getUsername()) && accountDAO.accountExists(account.getUsername())) return null;
+        Account stored = accountDAO.insertNewAccount(new Account(account.getUsername(), passwordHasher.hash(account.getPassword())));
+        if (stored == null) return null;
+        account.setAccount_id(stored.getAccount_id());
+        return account;
     }
 
     /**
-     * Attempts logging into an existing account.
+     * Attempts logging into an existing account. The account is read by username and the password checked against
+     * its stored hash, unless the same credentials passed recently. A legacy plaintext password, or a hash made at
+     * a lower cost than accounts.password.iterations, is replaced with a new hash once it has matched.
      * @param account Account object from json.
-     * @return the account if it exists and credentials match.
+     * @return the account, with the password as sent, if it exists and credentials match.
      */
     public Account login(Account account) {
-        return accountObjectIsInvalid(account) ? null :
-            accountDAO.login(account);
+        if (accountObjectIsInvalid(account)) return null;
+        Account stored = accountDAO.selectAccountByUsername(account.getUsername());
+        if (stored == null) return null;
+
+        String column = stored.getPassword();
+        if (!credentialCache.contains(account.getUsername(), column, account.getPassword())) {
+            boolean verified;
+            Trace.Span span = Trace.span("PasswordHasher.verify");
+            try {
+                verified = passwordHasher.verify(account.getPassword(), column);
+            }
+            finally {
+                span.close();
+            }
+            if (!verified) return null;
+            if (passwordHasher.needsRehash(column)) {
+                String rehashed = passwordHasher.hash(account.getPassword());
+                if (accountDAO.updatePassword(stored.getAccount_id(), rehashed)) column = rehashed;
+            }
+            credentialCache.put(account.getUsername(), column, account.getPassword());
+        }
+        account.setAccount_id(stored.getAccount_id());
+        return account;
     }
 
     /**
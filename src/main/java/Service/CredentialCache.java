@@ -0,0 +1,88 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * A bounded, short-lived cache of credentials that recently passed PasswordHasher.verify, so a client logging in
+ * again does not pay for the key derivation again.
+ *
+ * Entries are keyed by username and hold an HMAC, under a key made at startup, of the stored password column and
+ * the password that matched it. The password itself is never held. Since the stored column is part of the digest,
+ * a changed password no longer matches without any invalidation.
+ */
+public class CredentialCache {
+    public static final long MAX_SIZE = Long.getLong("accounts.credentialCache.maxSize", 10_000);
+    public static final long TTL_SECONDS = Long.getLong("accounts.credentialCache.ttlSeconds", 300);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, byte[]> digests;
+    // Mac instances are not thread-safe, so each thread keeps one
+    private final ThreadLocal<Mac> macs;
+
+    public CredentialCache() {
+        this(MAX_SIZE, Duration.ofSeconds(TTL_SECONDS));
+    }
+
+    public CredentialCache(long maxSize, Duration ttl) {
+        digests = Caffeine.newBuilder().maximumSize(maxSize).expireAfterWrite(ttl).build();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(keySpec);
+                return mac;
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " is not available", e);
+            }
+        });
+    }
+
+    /**
+     * @param username the username logging in.
+     * @param stored the account's password column as just read.
+     * @param password the password the client sent.
+     * @return True if this password was verified against this stored column within the TTL.
+     */
+    public boolean contains(String username, String stored, String password) {
+        byte[] cached = digests.getIfPresent(username);
+        return cached != null && MessageDigest.isEqual(cached, digest(stored, password));
+    }
+
+    /**
+     * Records a credential that just passed verification.
+     * @param username the username that logged in.
+     * @param stored the account's password column after the login, including any rehash.
+     * @param password the password that matched it.
+     */
+    public void put(String username, String stored, String password) {
+        digests.put(username, digest(stored, password));
+    }
+
+    /**
+     * @return the approximate number of cached credentials.
+     */
+    public long size() {
+        return digests.estimatedSize();
+    }
+
+    private byte[] digest(String stored, String password) {
+        Mac mac = macs.get();
+        mac.update(stored.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+}
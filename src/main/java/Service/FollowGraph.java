@@ -0,0 +1,108 @@
+package Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import Model.Follow;
+
+/**
+ * The follow table held in memory both ways round: the followers of each account, to fan a new message out to, and
+ * the accounts each follower follows, to build a home timeline from.
+ *
+ * The table is read on first use. Follows recorded before or during that read are kept, since adding one twice is
+ * harmless; a follow removed while the table was being read may come back until it is removed again. Like
+ * AccountMessageIndex, the graph only sees changes made through FollowService.
+ */
+public class FollowGraph {
+    private final ConcurrentHashMap<Integer, Set<Integer>> followers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Set<Integer>> following = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+
+    /**
+     * Reads every follow in the table into the graph, unless that has already been done.
+     * @param table reads the follow table, returning null if it can not.
+     * @return True if the graph is loaded, False if the table could not be read.
+     */
+    public boolean load(Supplier<List<Follow>> table) {
+        if (loaded) return true;
+        loadLock.lock();
+        try {
+            if (loaded) return true;
+            List<Follow> follows = table.get();
+            if (follows == null) return false;
+            for (Follow follow : follows) add(follow);
+            loaded = true;
+            return true;
+        }
+        finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * @return True once the table has been read.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Records a follow that was just stored.
+     * @param follow the follow.
+     */
+    public void add(Follow follow) {
+        following.computeIfAbsent(follow.getFollower_id(), id -> ConcurrentHashMap.newKeySet()).add(follow.getFollowee_id());
+        followers.computeIfAbsent(follow.getFollowee_id(), id -> ConcurrentHashMap.newKeySet()).add(follow.getFollower_id());
+    }
+
+    /**
+     * Forgets a follow that was just removed.
+     * @param follow the follow.
+     */
+    public void remove(Follow follow) {
+        Set<Integer> followees = following.get(follow.getFollower_id());
+        if (followees != null) followees.remove(follow.getFollowee_id());
+        Set<Integer> followersOf = followers.get(follow.getFollowee_id());
+        if (followersOf != null) followersOf.remove(follow.getFollower_id());
+    }
+
+    /**
+     * @param account_id the account being followed.
+     * @return a live, unmodifiable view of the accounts following it.
+     */
+    public Set<Integer> followers(int account_id) {
+        Set<Integer> ids = followers.get(account_id);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * @param account_id the follower.
+     * @return a live, unmodifiable view of the accounts it follows.
+     */
+    public Set<Integer> following(int account_id) {
+        Set<Integer> ids = following.get(account_id);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * @param account_id the account being followed.
+     * @return how many accounts follow it.
+     */
+    public int followerCount(int account_id) {
+        Set<Integer> ids = followers.get(account_id);
+        return ids == null ? 0 : ids.size();
+    }
+
+    /**
+     * @param follow the follow to check.
+     * @return True if the follower follows the followee.
+     */
+    public boolean contains(Follow follow) {
+        return following(follow.getFollower_id()).contains(follow.getFollowee_id());
+    }
+}
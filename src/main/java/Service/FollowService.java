@@ -0,0 +1,63 @@
+package Service;
+import DAO.FollowDAO;
+import DAO.StorageEngine;
+import Model.Follow;
+import java.util.function.IntPredicate;
+
+public class FollowService {
+    // FollowDAO for class to communicate with database.
+    private FollowDAO followDAO;
+    // the follow table in memory, read on the first timeline request or fan-out.
+    private FollowGraph followGraph = new FollowGraph();
+
+    // no-args constructor for creating a new FollowService with a new FollowDAO.
+    public FollowService() {
+        this(StorageEngine.newFollowDAO());
+    }
+
+    // constructor with provided FollowDAO object
+    public FollowService(FollowDAO followDAO) {
+        this.followDAO = followDAO;
+    }
+
+    /**
+     * Stores a follow if both accounts exist and are different accounts. Following an account twice is not an
+     * error and returns the follow again.
+     * @param follow Follow object from the request.
+     * @param accountExists check that an account id refers to a real account.
+     * @return the follow, or null if it is invalid or could not be stored.
+     */
+    public Follow follow(Follow follow, IntPredicate accountExists) {
+        if (follow.getFollower_id() == follow.getFollowee_id() ||
+            !accountExists.test(follow.getFollower_id()) ||
+            !accountExists.test(follow.getFollowee_id()) ||
+            !followDAO.insertFollow(follow)) return null;
+        followGraph.add(follow);
+        return follow;
+    }
+
+    /**
+     * Removes a follow.
+     * @param follow Follow object from the request.
+     * @return the removed follow, or null if there was no such follow.
+     */
+    public Follow unfollow(Follow follow) {
+        if (!followDAO.deleteFollow(follow)) return null;
+        followGraph.remove(follow);
+        return follow;
+    }
+
+    /**
+     * @return the follow graph, read from the table if that has not been done yet, or null if it could not be.
+     */
+    public FollowGraph loadFollowGraph() {
+        return followGraph.load(followDAO::selectAllFollows) ? followGraph : null;
+    }
+
+    /**
+     * @return the follow graph, which may not have been read from the table yet.
+     */
+    public FollowGraph getFollowGraph() {
+        return followGraph;
+    }
+}
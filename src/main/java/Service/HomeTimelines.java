@@ -0,0 +1,262 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import Model.Follow;
+import Model.Message;
+
+/**
+ * The home timeline of each follower: the newest messages of the accounts it follows, newest first by
+ * time_posted_epoch and then message_id.
+ *
+ * Each follower that has read its timeline gets a bounded ring of the newest timeline.capacity messages, and a new
+ * message is fanned out into the rings of its author's followers when it is created, so a read merges nothing.
+ * An account with more than timeline.fanoutMaxFollowers followers is not fanned out, since one message would
+ * touch that many rings; its newest messages are read from AccountMessageIndex when a follower reads instead.
+ *
+ * Rings are kept for at most timeline.maxRings followers, evicted by Caffeine and rebuilt from AccountMessageIndex
+ * on the follower's next read. A ring is registered before it is filled, so a message created while it is being
+ * filled either reaches it by fan-out or is read by the fill; a message that does both is only kept once. Rings
+ * hold ids, not messages, so an edit never leaves them stale.
+ */
+public class HomeTimelines {
+    public static final int CAPACITY = Integer.getInteger("timeline.capacity", 200);
+    public static final long MAX_RINGS = Long.getLong("timeline.maxRings", 100_000);
+    public static final int FANOUT_MAX_FOLLOWERS = Integer.getInteger("timeline.fanoutMaxFollowers", 10_000);
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final AccountMessageIndex accountMessageIndex;
+    private final FollowGraph followGraph;
+    private final int capacity;
+    private final int fanoutMaxFollowers;
+    private final Cache<Integer, TimelineRing> rings;
+
+    public HomeTimelines(AccountMessageIndex accountMessageIndex, FollowGraph followGraph) {
+        this(accountMessageIndex, followGraph, CAPACITY, MAX_RINGS, FANOUT_MAX_FOLLOWERS);
+    }
+
+    public HomeTimelines(AccountMessageIndex accountMessageIndex, FollowGraph followGraph, int capacity, long maxRings, int fanoutMaxFollowers) {
+        this.accountMessageIndex = accountMessageIndex;
+        this.followGraph = followGraph;
+        this.capacity = capacity;
+        this.fanoutMaxFollowers = fanoutMaxFollowers;
+        this.rings = Caffeine.newBuilder().maximumSize(maxRings).build();
+    }
+
+    /**
+     * Adds a message that was just created to the rings of its author's followers, unless the author has too many
+     * followers to fan out to. Followers without a ring are skipped; their ring is filled when they first read.
+     * @param message the created message, with its message_id set.
+     */
+    public void fanOut(Message message) {
+        int author = message.getPosted_by();
+        if (isPulled(author)) return;
+        for (int follower_id : followGraph.followers(author)) {
+            TimelineRing ring = rings.getIfPresent(follower_id);
+            if (ring != null) ring.add(message.getTime_posted_epoch(), message.getMessage_id(), author);
+        }
+    }
+
+    /**
+     * Removes a message that was just deleted from the rings of its author's followers.
+     * @param message the deleted message, with its posted_by and time_posted_epoch as stored.
+     */
+    public void removed(Message message) {
+        for (int follower_id : followGraph.followers(message.getPosted_by())) {
+            TimelineRing ring = rings.getIfPresent(follower_id);
+            if (ring != null) ring.remove(message.getTime_posted_epoch(), message.getMessage_id());
+        }
+    }
+
+    /**
+     * Adds the newest messages of a newly followed account to the follower's ring, if it has one.
+     * @param follow the follow that was just stored.
+     */
+    public void followed(Follow follow) {
+        TimelineRing ring = rings.getIfPresent(follow.getFollower_id());
+        if (ring == null || isPulled(follow.getFollowee_id())) return;
+        synchronized (ring) {
+            // an unfilled ring reads every followee, this one included, when it is filled
+            if (ring.filled) fill(ring, follow.getFollowee_id());
+        }
+    }
+
+    /**
+     * Removes the messages of an account that is no longer followed from the follower's ring, if it has one.
+     * @param follow the follow that was just removed.
+     */
+    public void unfollowed(Follow follow) {
+        TimelineRing ring = rings.getIfPresent(follow.getFollower_id());
+        if (ring != null) ring.removeAuthor(follow.getFollowee_id());
+    }
+
+    /**
+     * Reads a home timeline, creating and filling the follower's ring on its first read.
+     * @param follower_id the account whose timeline to read.
+     * @param limit the most ids to return.
+     * @return the ids of the newest messages of the accounts the follower follows, newest first.
+     */
+    public int[] messageIds(int follower_id, int limit) {
+        Set<Integer> followees = followGraph.following(follower_id);
+        if (followees.isEmpty() || limit <= 0) return NO_IDS;
+
+        List<Entry> entries = new ArrayList<>();
+        TimelineRing ring = rings.get(follower_id, id -> new TimelineRing(capacity));
+        synchronized (ring) {
+            if (!ring.filled) {
+                for (int followee_id : followees) if (!isPulled(followee_id)) fill(ring, followee_id);
+                ring.filled = true;
+            }
+            ring.forEachNewest(limit, entries);
+        }
+        for (int followee_id : followees) {
+            if (isPulled(followee_id)) {
+                accountMessageIndex.forEachNewest(followee_id, limit, (message_id, time) -> entries.add(new Entry(time, message_id, followee_id)));
+            }
+        }
+
+        // newest first; an account that crossed the fan-out threshold may be both in the ring and pulled
+        entries.sort((a, b) -> a.time != b.time ? Long.compare(b.time, a.time) : Integer.compare(b.message_id, a.message_id));
+        int[] ids = new int[Math.min(limit, entries.size())];
+        int count = 0;
+        int last = 0;
+        for (Entry entry : entries) {
+            if (count == ids.length) break;
+            if (count > 0 && entry.message_id == last) continue;
+            if (!followees.contains(entry.author)) continue;
+            ids[count++] = last = entry.message_id;
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * @return the number of followers holding a ring.
+     */
+    public long ringCount() {
+        rings.cleanUp();
+        return rings.estimatedSize();
+    }
+
+    private boolean isPulled(int author) {
+        return followGraph.followerCount(author) > fanoutMaxFollowers;
+    }
+
+    // called holding the ring's lock
+    private void fill(TimelineRing ring, int followee_id) {
+        accountMessageIndex.forEachNewest(followee_id, capacity, (message_id, time) -> ring.add(time, message_id, followee_id));
+    }
+
+    private static final class Entry {
+        final long time;
+        final int message_id;
+        final int author;
+
+        Entry(long time, int message_id, int author) {
+            this.time = time;
+            this.message_id = message_id;
+            this.author = author;
+        }
+    }
+
+    /**
+     * A circular buffer of the newest capacity messages of one timeline, oldest first by (time, message_id). A new
+     * message is almost always the newest and is written over the oldest without moving anything else.
+     */
+    private static final class TimelineRing {
+        final long[] times;
+        final int[] ids;
+        final int[] authors;
+        int start;
+        int size;
+        // set once the ring holds the newest messages of every followee
+        boolean filled;
+
+        TimelineRing(int capacity) {
+            times = new long[capacity];
+            ids = new int[capacity];
+            authors = new int[capacity];
+        }
+
+        synchronized void add(long time, int message_id, int author) {
+            int position = search(time, message_id);
+            if (position >= 0) return;
+            position = -position - 1;
+            if (size == ids.length) {
+                // older than everything kept
+                if (position == 0) return;
+                start = slot(1);
+                size--;
+                position--;
+            }
+            for (int i = size; i > position; i--) move(i - 1, i);
+            int slot = slot(position);
+            times[slot] = time;
+            ids[slot] = message_id;
+            authors[slot] = author;
+            size++;
+        }
+
+        synchronized void remove(long time, int message_id) {
+            int position = search(time, message_id);
+            if (position < 0) return;
+            for (int i = position; i < size - 1; i++) move(i + 1, i);
+            size--;
+        }
+
+        synchronized void removeAuthor(int author) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (authors[slot(i)] != author) move(i, kept++);
+            }
+            size = kept;
+        }
+
+        synchronized void forEachNewest(int count, List<Entry> entries) {
+            for (int i = size - 1; i >= Math.max(0, size - count); i--) {
+                int slot = slot(i);
+                entries.add(new Entry(times[slot], ids[slot], authors[slot]));
+            }
+        }
+
+        // the slot of the position'th oldest entry
+        private int slot(int position) {
+            int slot = start + position;
+            return slot < ids.length ? slot : slot - ids.length;
+        }
+
+        private void move(int from, int to) {
+            int fromSlot = slot(from);
+            int toSlot = slot(to);
+            times[toSlot] = times[fromSlot];
+            ids[toSlot] = ids[fromSlot];
+            authors[toSlot] = authors[fromSlot];
+        }
+
+        // binary search on (time, message_id); returns -(insertion point) - 1 when absent, like Arrays.binarySearch
+        private int search(long time, int message_id) {
+            int low = 0;
+            int high = size - 1;
+            // the common case: newer than everything kept
+            if (size > 0) {
+                int newest = slot(size - 1);
+                if (times[newest] < time || (times[newest] == time && ids[newest] < message_id)) return -(size + 1);
+            }
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int slot = slot(middle);
+                int order = times[slot] != time ? Long.compare(times[slot], time) : Integer.compare(ids[slot], message_id);
+                if (order < 0) low = middle + 1;
+                else if (order > 0) high = middle - 1;
+                else return middle;
+            }
+            return -(low + 1);
+        }
+    }
+}
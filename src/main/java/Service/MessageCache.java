@@ -0,0 +1,190 @@
+package Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.Metrics;
+import Util.VirtualThreadMode;
+
+/**
+ * A bounded, concurrent read-through cache in front of MessageDAO.selectMessageById. Eviction is Caffeine's
+ * W-TinyLFU, so a scan over many cold ids does not flush the popular messages.
+ *
+ * Ids that do not exist are cached as empty for a short time so repeated probes for missing messages stay
+ * off the database. A load during which the DAO reported a failed query is not cached at all, so a database error
+ * is answered like a miss only once instead of hiding the message until the entry lapses. Callers must invalidate
+ * an id after any write to it.
+ *
+ * Loads run on VirtualThreadMode.blockingExecutor(). With platform threads that is the calling thread; in
+ * virtual thread mode the database read happens outside the map's internal monitor so it never pins.
+ */
+public class MessageCache {
+    public static final long MAX_SIZE = Long.getLong("messages.cache.maxSize", 10_000);
+    public static final long NEGATIVE_TTL_MILLIS = Long.getLong("messages.cache.negativeTtlMillis", 2_000);
+
+    private final AsyncLoadingCache<Integer, Optional<Message>> cache;
+
+    public MessageCache(MessageDAO messageDAO) {
+        this(messageDAO, MAX_SIZE, Duration.ofMillis(NEGATIVE_TTL_MILLIS));
+    }
+
+    public MessageCache(MessageDAO messageDAO, long maxSize, Duration negativeTtl) {
+        cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new NegativeEntryExpiry(negativeTtl.toNanos()))
+            .recordStats()
+            .executor(VirtualThreadMode.blockingExecutor())
+            .buildAsync(new CacheLoader<Integer, Optional<Message>>() {
+                // the DAO returns null both for a missing id and a failed query; only its failure count tells them apart
+                @Override
+                public Optional<Message> load(Integer message_id) {
+                    int failures = Metrics.queryFailures();
+                    Message message = messageDAO.selectMessageById(message_id);
+                    if (Metrics.queryFailures() != failures) throw new LoadFailedException();
+                    return Optional.ofNullable(message);
+                }
+
+                // every miss of a getAll is read with one query; ids it does not find are cached as missing
+                @Override
+                public Map<Integer, Optional<Message>> loadAll(Set<? extends Integer> message_ids) {
+                    int failures = Metrics.queryFailures();
+                    List<Message> messages = messageDAO.selectMessagesByIds(new ArrayList<>(message_ids));
+                    if (Metrics.queryFailures() != failures) throw new LoadFailedException();
+                    Map<Integer, Optional<Message>> loaded = new HashMap<>();
+                    for (Integer message_id : message_ids) loaded.put(message_id, Optional.empty());
+                    for (Message message : messages) loaded.put(message.getMessage_id(), Optional.of(message));
+                    return loaded;
+                }
+            });
+    }
+
+    /**
+     * @param message_id the id of the message to retrieve.
+     * @return the message, loading it from the database on a miss, or null if it does not exist or the load failed.
+     */
+    public Message get(int message_id) {
+        try {
+            return cache.get(message_id).join().orElse(null);
+        }
+        catch(CompletionException e) {
+            if (e.getCause() instanceof LoadFailedException) return null;
+            throw e;
+        }
+    }
+
+    /**
+     * @param message_ids ids of the messages to retrieve.
+     * @return the messages that exist, in the order of message_ids; all the misses are loaded together, and if that
+     * load fails only the cached messages are returned.
+     */
+    public ArrayList<Message> getAll(int[] message_ids) {
+        // hits are read straight from the map; only the misses go through the bulk load
+        Message[] found = new Message[message_ids.length];
+        List<Integer> misses = null;
+        for (int i = 0; i < message_ids.length; i++) {
+            CompletableFuture<Optional<Message>> cached = cache.getIfPresent(message_ids[i]);
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) found[i] = cached.join().orElse(null);
+            else {
+                if (misses == null) misses = new ArrayList<>();
+                misses.add(message_ids[i]);
+            }
+        }
+        if (misses != null) {
+            Map<Integer, Optional<Message>> loaded;
+            try {
+                loaded = cache.getAll(misses).join();
+            }
+            catch(CompletionException e) {
+                if (!(e.getCause() instanceof LoadFailedException)) throw e;
+                loaded = Map.of();
+            }
+            for (int i = 0; i < message_ids.length; i++) {
+                if (found[i] == null && loaded.containsKey(message_ids[i])) found[i] = loaded.get(message_ids[i]).orElse(null);
+            }
+        }
+
+        ArrayList<Message> messages = new ArrayList<>(message_ids.length);
+        for (Message message : found) if (message != null) messages.add(message);
+        return messages;
+    }
+
+    /**
+     * Caches a message that was just written, replacing any negative entry for its id.
+     * @param message a message with its message_id set.
+     */
+    public void put(Message message) {
+        cache.put(message.getMessage_id(), CompletableFuture.completedFuture(Optional.of(message)));
+    }
+
+    /**
+     * Drops whatever is cached for an id so the next read goes to the database.
+     * @param message_id the id of the message that changed.
+     */
+    public void invalidate(int message_id) {
+        cache.synchronous().invalidate(message_id);
+    }
+
+    /**
+     * @return hit ratio, eviction count and load latency statistics since the cache was created.
+     */
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    /**
+     * @return the approximate number of cached entries, including negative ones.
+     */
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    /**
+     * Thrown by a load whose query failed, so Caffeine discards the result instead of caching it as missing.
+     */
+    private static final class LoadFailedException extends RuntimeException {
+        LoadFailedException() {
+            super("message query failed", null, false, false);
+        }
+    }
+
+    /**
+     * Keeps found messages until they are evicted or invalidated, but lets "not found" entries lapse quickly.
+     */
+    private static final class NegativeEntryExpiry implements Expiry<Integer, Optional<Message>> {
+        private final long negativeTtlNanos;
+
+        NegativeEntryExpiry(long negativeTtlNanos) {
+            this.negativeTtlNanos = negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(Integer key, Optional<Message> value, long currentTime) {
+            return value.isPresent() ? Long.MAX_VALUE : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer key, Optional<Message> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer key, Optional<Message> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
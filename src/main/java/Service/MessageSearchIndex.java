@@ -0,0 +1,502 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import DAO.MessageCursor;
+import Model.Message;
+
+/**
+ * An inverted index over message_text: each term maps to the ids of the messages containing it, stored as a
+ * posting list of varint-encoded gaps between ascending ids. Terms are the runs of letters and digits in the text,
+ * lower-cased.
+ *
+ * A query's terms must all match. Its last term also matches as a prefix, so results follow a query as it is typed,
+ * and a query in double quotes must appear as a phrase. The postings only narrow the search to candidates; every
+ * candidate's current text is checked against the query, which is also what enforces a phrase and hides postings
+ * left behind by an update or delete the index did not see in full.
+ *
+ * The table is read into the index on first use, like AccountMessageIndex, and changes are recorded through
+ * MessageService after they are committed. Changes take a lock; queries do not. A posting list only ever grows in
+ * place past the end its readers know about, and is otherwise replaced whole.
+ */
+public class MessageSearchIndex {
+    // a shorter last term is matched exactly rather than expanded to every term it starts
+    public static final int MIN_PREFIX_LENGTH = 2;
+    // how many times more postings than the shortest exact term's a prefix may expand to before it is not intersected
+    private static final int PREFIX_EXPANSION_FACTOR = 4;
+    private static final Intersection NO_CANDIDATES = new Intersection(new int[0], List.of(), null);
+
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+    private volatile long loadMillis = -1;
+
+    /**
+     * Reads every message in the table into the index, unless that has already been done.
+     * @param table opens a cursor over the message table; it is closed here.
+     * @return True if the index is loaded, False if the cursor could not be opened.
+     */
+    public boolean load(Supplier<MessageCursor> table) {
+        if (loaded) return true;
+        loadLock.lock();
+        try {
+            if (loaded) return true;
+            long start = System.nanoTime();
+            // built apart from the index and published once, rather than replacing a posting list per message
+            Map<String, IdList> built = new HashMap<>();
+            try (MessageCursor messages = table.get()) {
+                if (messages == null) return false;
+                while (messages.hasNext()) {
+                    Message message = messages.next();
+                    for (String term : tokenize(message.getMessage_text())) {
+                        built.computeIfAbsent(term, t -> new IdList()).add(message.getMessage_id());
+                    }
+                }
+            }
+            publish(built);
+            loadMillis = (System.nanoTime() - start) / 1_000_000;
+            loaded = true;
+            return true;
+        }
+        finally {
+            loadLock.unlock();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Indexes a message that was just stored, or the new text of one that was just updated.
+     * @param message the message, with its message_id set.
+     */
+    public void add(Message message) {
+        Set<String> messageTerms = new LinkedHashSet<>(tokenize(message.getMessage_text()));
+        if (messageTerms.isEmpty()) return;
+        int id = message.getMessage_id();
+        writeLock.lock();
+        try {
+            for (String term : messageTerms) {
+                Postings postings = terms.get(term);
+                Postings updated = postings == null ? Postings.of(id) : postings.with(id);
+                if (updated != postings) terms.put(term, updated);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Removes a message from the postings of the terms in its text.
+     * @param message the message as it was before it was deleted or updated.
+     */
+    public void remove(Message message) {
+        removeTerms(new LinkedHashSet<>(tokenize(message.getMessage_text())), message.getMessage_id());
+    }
+
+    /**
+     * Moves a message from the terms of its old text to the terms of its new text. Terms in both are left alone, so
+     * a query running meanwhile does not lose the message.
+     * @param before the message as it was before the update.
+     * @param after the message as it is now.
+     */
+    public void update(Message before, Message after) {
+        Set<String> removed = new LinkedHashSet<>(tokenize(before.getMessage_text()));
+        removed.removeAll(tokenize(after.getMessage_text()));
+        add(after);
+        removeTerms(removed, before.getMessage_id());
+    }
+
+    /**
+     * Finds the messages whose postings hold every term of a query, newest first. Each term's posting list is decoded
+     * once, but the lists are only intersected as far as the caller reads, so asking for the newest few matches does
+     * not walk every id the terms share. The candidates still have to be checked with matches(), against their
+     * current text.
+     * @param query a parsed query with at least one term.
+     * @return candidate message ids in descending order.
+     */
+    public PrimitiveIterator.OfInt candidates(Query query) {
+        List<int[]> lists = new ArrayList<>(query.terms.size());
+        int last = query.terms.size() - 1;
+        int exactTerms = query.prefix ? last : last + 1;
+        for (int i = 0; i < exactTerms; i++) {
+            int[] ids = exactIds(query.terms.get(i));
+            if (ids.length == 0) return NO_CANDIDATES;
+            lists.add(ids);
+        }
+        lists.sort((a, b) -> Integer.compare(a.length, b.length));
+
+        BitSet prefixIds = null;
+        if (query.prefix) {
+            SortedMap<String, Postings> expanded = prefixTerms(query.terms.get(last));
+            if (expanded.isEmpty()) return NO_CANDIDATES;
+            // a short prefix can expand to thousands of terms; if those hold far more postings than the other
+            // terms' shortest list, they would barely narrow it, so the prefix is left to matches()
+            long postings = 0;
+            for (Postings list : expanded.values()) postings += list.count;
+            if (lists.isEmpty() || postings <= (long) lists.get(0).length * PREFIX_EXPANSION_FACTOR) {
+                prefixIds = new BitSet();
+                for (Postings list : expanded.values()) list.addTo(prefixIds);
+            }
+        }
+
+        // the shortest list drives the walk and the others are probed
+        if (prefixIds != null && (lists.isEmpty() || prefixIds.cardinality() < lists.get(0).length)) {
+            return new Intersection(prefixIds.stream().toArray(), lists, null);
+        }
+        return new Intersection(lists.remove(0), lists, prefixIds);
+    }
+
+    /**
+     * @param query a parsed query.
+     * @param text a message_text.
+     * @return True if the text holds every term of the query, with the last one as a prefix if the query allows it,
+     * and as consecutive words if the query is a phrase.
+     */
+    public static boolean matches(Query query, String text) {
+        List<String> words = tokenize(text);
+        int last = query.terms.size() - 1;
+        if (query.phrase) {
+            for (int start = 0; start + last < words.size(); start++) {
+                boolean match = true;
+                for (int i = 0; i <= last && match; i++) match = termMatches(query, i, words.get(start + i));
+                if (match) return true;
+            }
+            return false;
+        }
+        for (int i = 0; i <= last; i++) {
+            boolean found = false;
+            for (int w = 0; w < words.size() && !found; w++) found = termMatches(query, i, words.get(w));
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Splits text into terms: runs of letters and digits, lower-cased.
+     * @param text the text, which may be null.
+     * @return the terms in the order they appear, with repeats.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        int start = -1;
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) start = i;
+            }
+            else if (start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        if (start >= 0) words.add(text.substring(start).toLowerCase(Locale.ROOT));
+        return words;
+    }
+
+    /**
+     * @param q the q parameter of a search request.
+     * @return the parsed query, or null if it has no terms.
+     */
+    public static Query parse(String q) {
+        if (q == null) return null;
+        String trimmed = q.strip();
+        boolean phrase = trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"");
+        // a trailing space means the last word is finished, so it is not a prefix
+        String body = phrase ? trimmed.substring(1, trimmed.length() - 1) : q;
+        List<String> queryTerms = tokenize(body);
+        if (queryTerms.isEmpty()) return null;
+        boolean prefix = !body.isEmpty() && Character.isLetterOrDigit(body.codePointBefore(body.length()))
+            && queryTerms.get(queryTerms.size() - 1).length() >= MIN_PREFIX_LENGTH;
+        return new Query(queryTerms, prefix, phrase);
+    }
+
+    /**
+     * @return time taken to read the table into the index, or -1 before it is loaded.
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * @return the number of (term, message) pairs in the posting lists.
+     */
+    public long getPostingCount() {
+        long count = 0;
+        for (Postings postings : terms.values()) count += postings.count;
+        return count;
+    }
+
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * @return bytes allocated for posting lists, including the unused tail of each list's array.
+     */
+    public long getPostingBytes() {
+        long bytes = 0;
+        for (Postings postings : terms.values()) bytes += postings.data.length;
+        return bytes;
+    }
+
+    private void removeTerms(Set<String> removed, int id) {
+        if (removed.isEmpty()) return;
+        writeLock.lock();
+        try {
+            for (String term : removed) {
+                Postings postings = terms.get(term);
+                Postings updated = postings == null ? null : postings.without(id);
+                if (updated == null) terms.remove(term);
+                else if (updated != postings) terms.put(term, updated);
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int[] exactIds(String term) {
+        Postings postings = terms.get(term);
+        return postings == null ? new int[0] : postings.decode();
+    }
+
+    private SortedMap<String, Postings> prefixTerms(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+    }
+
+    // the posting lists read by load(), merged with anything add() recorded while the table was being read
+    private void publish(Map<String, IdList> built) {
+        writeLock.lock();
+        try {
+            for (Map.Entry<String, IdList> entry : built.entrySet()) {
+                IdList ids = entry.getValue();
+                Postings postings = terms.get(entry.getKey());
+                if (postings != null) {
+                    for (int id : postings.decode()) ids.add(id);
+                }
+                ids.sort();
+                terms.put(entry.getKey(), Postings.encode(ids.ids, ids.size));
+            }
+        }
+        finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static boolean termMatches(Query query, int index, String word) {
+        String term = query.terms.get(index);
+        return index == query.terms.size() - 1 && query.prefix ? word.startsWith(term) : word.equals(term);
+    }
+
+    /**
+     * A parsed search query.
+     */
+    public static final class Query {
+        final List<String> terms;
+        final boolean prefix;
+        final boolean phrase;
+
+        Query(List<String> terms, boolean prefix, boolean phrase) {
+            this.terms = terms;
+            this.prefix = prefix;
+            this.phrase = phrase;
+        }
+    }
+
+    /**
+     * Walks the driver list from its highest id down, keeping the ids every other list also holds.
+     */
+    private static final class Intersection implements PrimitiveIterator.OfInt {
+        private final int[] driver;
+        private final List<int[]> others;
+        private final BitSet prefixIds;
+        private int index;
+        private int next;
+
+        Intersection(int[] driver, List<int[]> others, BitSet prefixIds) {
+            this.driver = driver;
+            this.others = others;
+            this.prefixIds = prefixIds;
+            this.index = driver.length - 1;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (next < 0) throw new NoSuchElementException();
+            int id = next;
+            advance();
+            return id;
+        }
+
+        private void advance() {
+            while (index >= 0) {
+                int id = driver[index--];
+                boolean everywhere = prefixIds == null || prefixIds.get(id);
+                for (int j = 0; j < others.size() && everywhere; j++) everywhere = Arrays.binarySearch(others.get(j), id) >= 0;
+                if (everywhere) {
+                    next = id;
+                    return;
+                }
+            }
+            next = -1;
+        }
+    }
+
+    /**
+     * A growing list of the ids under one term, while the table is read. The cursor returns ids in ascending order,
+     * so sort() usually has nothing to do.
+     */
+    private static final class IdList {
+        int[] ids = new int[4];
+        int size;
+        boolean sorted = true;
+
+        void add(int id) {
+            // a term repeated in one message
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size > 0 && ids[size - 1] > id) sorted = false;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        void sort() {
+            if (sorted) return;
+            Arrays.sort(ids, 0, size);
+            int count = 0;
+            for (int i = 0; i < size; i++) if (count == 0 || ids[count - 1] != ids[i]) ids[count++] = ids[i];
+            size = count;
+            sorted = true;
+        }
+    }
+
+    /**
+     * The ids under one term: varint-encoded gaps between ascending ids, in an array that may be longer than length.
+     * A new highest id is appended in place past length before a Postings counting it is published; any other change
+     * builds a new array.
+     */
+    private static final class Postings {
+        final byte[] data;
+        final int length;
+        final int count;
+        final int last;
+
+        Postings(byte[] data, int length, int count, int last) {
+            this.data = data;
+            this.length = length;
+            this.count = count;
+            this.last = last;
+        }
+
+        static Postings of(int id) {
+            return encode(new int[] { id }, 1);
+        }
+
+        Postings with(int id) {
+            if (id > last) {
+                int needed = length + 5;
+                byte[] target = needed <= data.length ? data : Arrays.copyOf(data, Math.max(needed, data.length * 2));
+                int end = writeVarint(target, length, id - last);
+                return new Postings(target, end, count + 1, id);
+            }
+            int[] ids = decode();
+            int position = Arrays.binarySearch(ids, id);
+            if (position >= 0) return this;
+            position = -position - 1;
+            int[] inserted = new int[ids.length + 1];
+            System.arraycopy(ids, 0, inserted, 0, position);
+            inserted[position] = id;
+            System.arraycopy(ids, position, inserted, position + 1, ids.length - position);
+            return encode(inserted, inserted.length);
+        }
+
+        // null once no ids are left
+        Postings without(int id) {
+            int[] ids = decode();
+            int position = Arrays.binarySearch(ids, id);
+            if (position < 0) return this;
+            if (ids.length == 1) return null;
+            System.arraycopy(ids, position + 1, ids, position, ids.length - position - 1);
+            return encode(ids, ids.length - 1);
+        }
+
+        int[] decode() {
+            int[] ids = new int[count];
+            int previous = 0;
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[offset++];
+                    gap |= (b & 0x7f) << shift;
+                    if (b >= 0) break;
+                }
+                previous += gap;
+                ids[i] = previous;
+            }
+            return ids;
+        }
+
+        void addTo(BitSet ids) {
+            int previous = 0;
+            int offset = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[offset++];
+                    gap |= (b & 0x7f) << shift;
+                    if (b >= 0) break;
+                }
+                previous += gap;
+                ids.set(previous);
+            }
+        }
+
+        static Postings encode(int[] ids, int count) {
+            byte[] data = new byte[Math.max(8, count * 2)];
+            int length = 0;
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                if (length + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+                length = writeVarint(data, length, ids[i] - previous);
+                previous = ids[i];
+            }
+            return new Postings(data, length, count, previous);
+        }
+
+        private static int writeVarint(byte[] data, int offset, int value) {
+            while ((value & ~0x7f) != 0) {
+                data[offset++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[offset++] = (byte) value;
+            return offset;
+        }
+    }
+}
@@ -1,20 +1,89 @@
 package Service;
+import Model.Follow;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessagePage;
+import DAO.GroupCommitMessageWriter;
+import DAO.MessageCursor;
 import DAO.MessageDAO;
+import DAO.StorageEngine;
+import Util.ModelJsonMapper;
+import Util.OffHeapJsonCache;
+import Util.Trace;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntPredicate;
 
 public class MessageService {
+    // page size used when the client does not ask for one, and the most a client may ask for.
+    public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("messages.defaultPageSize", 100);
+    public static final int MAX_PAGE_SIZE = Integer.getInteger("messages.maxPageSize", 500);
+    // the most messages one POST /messages/batch request may carry.
+    public static final int MAX_BATCH_SIZE = Integer.getInteger("messages.batch.maxSize", 1000);
+    // off-heap memory for the encoded JSON of messages read by id, and the size of each slab it is split into.
+    public static final long JSON_CACHE_CAPACITY_BYTES = Long.getLong("messages.jsonCache.capacityBytes", 16L << 20);
+    public static final int JSON_CACHE_SLAB_BYTES = Integer.getInteger("messages.jsonCache.slabBytes", 256 << 10);
+
     //MessageDAO for class to communicate with database.
     private MessageDAO messageDAO;
+    // read-through cache in front of messageDAO.selectMessageById, invalidated on every write.
+    private MessageCache messageCache;
+    // version stamps behind the ETags of the message endpoints, moved by every write below.
+    private MessageVersions messageVersions = new MessageVersions();
+    // encoded JSON of messages read by id, written to responses without serializing them again.
+    private OffHeapJsonCache messageJsonCache = new OffHeapJsonCache(JSON_CACHE_CAPACITY_BYTES, JSON_CACHE_SLAB_BYTES);
+    private ModelJsonMapper jsonMapper = new ModelJsonMapper();
+    // batches concurrent single inserts into one transaction; null unless messages.groupCommit.enabled is set.
+    private GroupCommitMessageWriter groupCommitWriter;
+    // ids of each account's messages in time order, read from the table on the first per-account request.
+    private AccountMessageIndex accountMessageIndex = new AccountMessageIndex();
+    // terms of every message_text mapped to the ids of the messages holding them, read on the first search.
+    private MessageSearchIndex messageSearchIndex = new MessageSearchIndex();
+    // who follows whom, shared with the follow endpoints.
+    private FollowService followService;
+    // per-follower rings of home timeline ids that new messages are fanned out into.
+    private HomeTimelines homeTimelines;
 
-    // no-args constructor
+    // no-args constructor, using the MessageDAO of the storage engine selected at startup
     public MessageService() {
-        messageDAO = new MessageDAO();
+        this(new FollowService());
+    }
+
+    // constructor with provided FollowService, using the MessageDAO of the storage engine selected at startup
+    public MessageService(FollowService followService) {
+        this(StorageEngine.newMessageDAO(), followService);
     }
     
     // constructor with provided MessageDAO object
     public MessageService(MessageDAO messageDAO) {
+        this(messageDAO, new FollowService());
+    }
+
+    // private so that (messageDAO, null) still means no group-commit writer to existing callers
+    private MessageService(MessageDAO messageDAO, FollowService followService) {
+        this(messageDAO, GroupCommitMessageWriter.ENABLED ? new GroupCommitMessageWriter(messageDAO) : null, followService);
+    }
+
+    // constructor with provided MessageDAO and group-commit writer, which may be null to insert directly
+    public MessageService(MessageDAO messageDAO, GroupCommitMessageWriter groupCommitWriter) {
+        this(messageDAO, groupCommitWriter, new FollowService());
+    }
+
+    // constructor with provided MessageDAO, group-commit writer and FollowService
+    public MessageService(MessageDAO messageDAO, GroupCommitMessageWriter groupCommitWriter, FollowService followService) {
         this.messageDAO = messageDAO;
+        this.messageCache = new MessageCache(messageDAO);
+        this.groupCommitWriter = groupCommitWriter;
+        this.followService = followService;
+        this.homeTimelines = new HomeTimelines(accountMessageIndex, followService.getFollowGraph());
     }
 
     /**
@@ -25,22 +94,179 @@ public class MessageService {
         return messageDAO.selectAllMessages();
     }
 
+    /**
+     * Opens a cursor over all messages in the database so they can be written out one at a time.
+     * @return a cursor the caller must close, or null if the query failed.
+     */
+    public MessageCursor streamAllMessages() {
+        return messageDAO.openAllMessagesCursor();
+    }
+
+    /**
+     * Opens a cursor over the messages posted in a time range so they can be written out one at a time. The range
+     * is read from the time_posted_epoch index, so its cost follows the messages in it rather than the table.
+     * @param since the earliest time_posted_epoch included.
+     * @param until the time_posted_epoch at which the range ends, itself excluded.
+     * @return a cursor ordered by time_posted_epoch then message_id that the caller must close, or null if the
+     * query failed.
+     * @throws IllegalArgumentException if since is after until.
+     */
+    public MessageCursor streamMessagesBetween(long since, long until) {
+        if (since > until) throw new IllegalArgumentException("since is after until");
+        return messageDAO.openMessagesBetweenCursor(since, until);
+    }
+
+    /**
+     * Retrieves one page of messages ordered by message_id.
+     * @param cursor the next_cursor of the previous page, or null for the first page.
+     * @param limit the requested page size, clamped to between 1 and MAX_PAGE_SIZE.
+     * @return the page of messages and the cursor of the page after it.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public MessagePage getMessagesPage(String cursor, int limit) {
+        int after_id = cursor == null ? 0 : PageCursor.decode(cursor);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        // read one extra row to learn whether another page follows without a count query
+        ArrayList<Message> messages = messageDAO.selectMessagesAfter(after_id, pageSize + 1);
+        if (messages.size() <= pageSize) return new MessagePage(messages, null);
+
+        messages.remove(pageSize);
+        return new MessagePage(messages, PageCursor.encode(messages.get(pageSize - 1).getMessage_id()));
+    }
+
     /** 
      * Retrieves a message from the database by Id if valid
      * @param message_id the id of the message to retrieve
      * @return The corresponding message or null.
     */
     public Message getMessageById(int message_id) {
-        return messageDAO.selectMessageById(message_id);
+        return messageCache.get(message_id);
     }
 
     /**
-     * Retrieves a list of messages from a given user by account id if valid.
+     * Writes the JSON of a message by Id, from the off-heap cache when it is there. On a miss the message is read
+     * through the message cache, encoded once and cached for the next read.
+     * @param message_id the id of the message to write.
+     * @param out the response to write to.
+     * @return True if the message was written, False if there is no such message and nothing was written.
+     */
+    public boolean writeMessageJson(int message_id, OutputStream out) throws IOException {
+        if (messageJsonCache.writeTo(message_id, out)) return true;
+
+        long version = messageVersions.messageVersion(message_id);
+        Message message = messageCache.get(message_id);
+        if (message == null) return false;
+        byte[] json = jsonMapper.toJsonBytes(message);
+        messageJsonCache.put(message_id, json);
+        // a write that landed while this message was being read may have been cached stale above, so drop it; a
+        // write that lands after this check invalidates the entry itself
+        if (messageVersions.messageVersion(message_id) != version) messageJsonCache.invalidate(message_id);
+        out.write(json);
+        return true;
+    }
+
+    /**
+     * Writes a message as the next value of a JSON response, using its cached JSON if a read by id cached it.
+     * @param message a message read from the database.
+     * @param generator the response being written.
+     */
+    public void writeMessageJson(Message message, JsonGenerator generator) throws IOException {
+        if (!messageJsonCache.writeTo(message.getMessage_id(), generator)) jsonMapper.writeMessage(generator, message);
+    }
+
+    /**
+     * Opens a cursor over the messages of a given user so they can be written out one at a time. The ids come from
+     * the per-account index and the rows from the message cache a chunk at a time, with every miss in a chunk read
+     * in one primary key query, so the cost follows the account's messages rather than the table and only a chunk
+     * is held at once. If the index can not be loaded the table is queried through a cursor instead.
      * @param account_id the id of the account to retrieve messages for
-     * @return A list of messages for the account.
+     * @return a cursor over the account's messages, oldest first, that the caller must close, or null if the query
+     * failed.
+     */
+    public MessageCursor streamMessagesByAccountId(int account_id) {
+        if (!accountMessageIndex.load(messageDAO::openAllMessagesCursor)) return messageDAO.openUserMessagesCursor(account_id);
+        return new CachedMessageCursor(messageCache, accountMessageIndex.messageIds(account_id));
+    }
+
+    /**
+     * Searches message_text for every term of a query, newest first. Candidates come from the search index and
+     * their rows from the message cache, read in growing chunks until enough of them still match.
+     * @param q the query: words that must all appear, the last of them as a prefix unless q ends in a space or
+     * other separator, or a phrase in double quotes.
+     * @param limit the most messages to return, clamped to between 1 and MAX_PAGE_SIZE.
+     * @return the matching messages in descending message_id order.
+     * @throws IllegalArgumentException if the query has no terms.
+     * @throws IllegalStateException if the index can not be loaded.
+     */
+    public ArrayList<Message> searchMessages(String q, int limit) {
+        MessageSearchIndex.Query query = MessageSearchIndex.parse(q);
+        if (query == null) throw new IllegalArgumentException("q has no words to search for");
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        if (!messageSearchIndex.load(messageDAO::openAllMessagesCursor)) throw new IllegalStateException("search index could not be loaded");
+
+        PrimitiveIterator.OfInt candidates = messageSearchIndex.candidates(query);
+        ArrayList<Message> results = new ArrayList<>();
+        int chunkSize = pageSize;
+        while (candidates.hasNext() && results.size() < pageSize) {
+            int[] chunk = new int[chunkSize];
+            int count = 0;
+            while (count < chunkSize && candidates.hasNext()) chunk[count++] = candidates.nextInt();
+            for (Message message : messageCache.getAll(Arrays.copyOf(chunk, count))) {
+                if (results.size() == pageSize) break;
+                if (MessageSearchIndex.matches(query, message.getMessage_text())) results.add(message);
+            }
+            // when few candidates pass the text check, as with a phrase, read more of them per query
+            chunkSize = Math.min(chunkSize * 2, MAX_PAGE_SIZE);
+        }
+        return results;
+    }
+
+    /**
+     * Opens a cursor over the messages a user posted in a time range. The per-account index keeps each account's
+     * ids in time order, so the range is found by binary search and its rows read through the message cache a
+     * chunk at a time; if the index can not be loaded the table is queried through a cursor instead.
+     * @param account_id the id of the account to retrieve messages for
+     * @param since the earliest time_posted_epoch included.
+     * @param until the time_posted_epoch at which the range ends, itself excluded.
+     * @return a cursor over the account's messages in the range, ordered by time_posted_epoch then message_id,
+     * that the caller must close, or null if the query failed.
+     * @throws IllegalArgumentException if since is after until.
+     */
+    public MessageCursor streamMessagesByAccountIdBetween(int account_id, long since, long until) {
+        if (since > until) throw new IllegalArgumentException("since is after until");
+        if (!accountMessageIndex.load(messageDAO::openAllMessagesCursor)) {
+            return messageDAO.openUserMessagesBetweenCursor(account_id, since, until);
+        }
+        return new CachedMessageCursor(messageCache, accountMessageIndex.messageIds(account_id, since, until));
+    }
+
+    /**
+     * Retrieves the home timeline of an account: the newest messages of the accounts it follows. Ids come from the
+     * account's timeline ring, filled when it is first read and fanned into as messages are created, and from the
+     * per-account index for followed accounts with too many followers to fan out to; rows come from the message
+     * cache.
+     * @param account_id the follower whose timeline to read.
+     * @param limit the most messages to return, clamped to between 1 and MAX_PAGE_SIZE.
+     * @return the messages, newest first by time_posted_epoch and then message_id.
+     * @throws IllegalStateException if the per-account index or the follow graph can not be loaded.
      */
-    public ArrayList<Message> getAllMessagesByAccountId(int account_id) {
-        return messageDAO.selectAllUserMessages(account_id);
+    public ArrayList<Message> getHomeTimeline(int account_id, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        if (!accountMessageIndex.load(messageDAO::openAllMessagesCursor) || followService.loadFollowGraph() == null) {
+            throw new IllegalStateException("timeline could not be loaded");
+        }
+        return messageCache.getAll(homeTimelines.messageIds(account_id, pageSize));
+    }
+
+    /**
+     * Brings the follower's timeline ring up to date after a follow was stored or removed through FollowService.
+     * @param follow the follow that changed.
+     * @param following True if the follow was stored, False if it was removed.
+     */
+    public void followChanged(Follow follow, boolean following) {
+        if (following) homeTimelines.followed(follow);
+        else homeTimelines.unfollowed(follow);
     }
 
     /**
@@ -49,29 +275,225 @@ public class MessageService {
      * @return the newly created message or null
      */
     public Message createNewMessage(Message message) {
-        return messageObjectIsInvalid(message) ? null :
-            messageDAO.insertNewMessage(message);
+        Trace.Span span = Trace.span("MessageService.createNewMessage");
+        try {
+            if (messageObjectIsInvalid(message)) return null;
+            Message created;
+            // the insert itself runs on the writer thread, outside the trace; this is the wait for its commit
+            Trace.Span commit = Trace.span(groupCommitWriter == null ? "insert" : "groupCommit");
+            try {
+                created = groupCommitWriter == null ? messageDAO.insertNewMessage(message) :
+                    groupCommitWriter.submit(message).join();
+            }
+            finally {
+                commit.close();
+            }
+            // replaces a negative entry left behind by a lookup of this id before it existed
+            if (created != null) {
+                Trace.Span caches = Trace.span("caches");
+                try {
+                    messageCache.put(created);
+                    accountMessageIndex.add(created);
+                    messageSearchIndex.add(created);
+                    homeTimelines.fanOut(created);
+                    messageVersions.changed(created);
+                }
+                finally {
+                    caches.close();
+                }
+            }
+            return created;
+        }
+        finally {
+            span.close();
+        }
+    }
+
+    /**
+     * Creates every valid message in a batch. Invalid messages are reported and skipped; the valid ones are
+     * inserted together in one transaction, so if that insert fails none of them are created.
+     * @param messages Message objects from json, at most MAX_BATCH_SIZE of them.
+     * @param accountExists check that a message's posted_by refers to a real account.
+     * @return one result per message, in request order, holding either the created message or an error.
+     */
+    public List<MessageBatchResult> createNewMessages(List<Message> messages, IntPredicate accountExists) {
+        List<MessageBatchResult> results = new ArrayList<>(messages.size());
+        List<Message> valid = new ArrayList<>(messages.size());
+        List<Integer> validIndexes = new ArrayList<>(messages.size());
+
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message == null || messageObjectIsInvalid(message)) results.add(MessageBatchResult.failed(i, "invalid message_text"));
+            else if (!accountExists.test(message.getPosted_by())) results.add(MessageBatchResult.failed(i, "posted_by does not exist"));
+            else {
+                results.add(null);
+                valid.add(message);
+                validIndexes.add(i);
+            }
+        }
+
+        boolean inserted = valid.isEmpty() || messageDAO.insertNewMessages(valid);
+        for (int i = 0; i < valid.size(); i++) {
+            int index = validIndexes.get(i);
+            if (inserted) {
+                messageCache.put(valid.get(i));
+                accountMessageIndex.add(valid.get(i));
+                messageSearchIndex.add(valid.get(i));
+                homeTimelines.fanOut(valid.get(i));
+                messageVersions.changed(valid.get(i));
+                results.set(index, MessageBatchResult.created(index, valid.get(i)));
+            }
+            else results.set(index, MessageBatchResult.failed(index, "batch insert failed"));
+        }
+        return results;
     }
 
     /**
-     * Updates an existing message in the database if it is valid and 
-     * is already an existing message in the table.
+     * Updates the text of an existing message in the database if the new text is valid. The update and the
+     * read of the updated row are a single statement, so there is no separate existence check to race with.
      * @param message_id the id of the message to be updated
      * @param message Message object from json.
-     * @return True/False on update success/failure.
+     * @return the updated message, or null if the text is invalid or no message has that id.
      */
-    public boolean canUpdateMessage(int message_id, Message message) {
-        return messageObjectIsInvalid(message) || messageDAO.selectMessageById(message_id) == null ? false :
-            messageDAO.updateMessage(message_id, message);
+    public Message updateMessage(int message_id, Message message) {
+        Trace.Span span = Trace.span("MessageService.updateMessage");
+        try {
+            boolean invalid;
+            Trace.Span validate = Trace.span("validate");
+            try {
+                invalid = messageObjectIsInvalid(message);
+            }
+            finally {
+                validate.close();
+            }
+            if (invalid) return null;
+            // the old text, so the search index can drop the terms it no longer has
+            Message before = messageSearchIndex.isLoaded() ? messageCache.get(message_id) : null;
+            Message updated = messageDAO.updateMessage(message_id, message);
+            Trace.Span caches = Trace.span("caches");
+            try {
+                if (updated != null) {
+                    messageCache.put(updated);
+                    if (before != null) messageSearchIndex.update(before, updated);
+                    else messageSearchIndex.add(updated);
+                    messageVersions.changed(updated);
+                }
+                else messageCache.invalidate(message_id);
+                messageJsonCache.invalidate(message_id);
+            }
+            finally {
+                caches.close();
+            }
+            return updated;
+        }
+        finally {
+            span.close();
+        }
     }
 
     /**
-     * Deletes a message from the database.
+     * Deletes a message from the database, reading back the deleted row in the same statement.
      * @param message_id the id of the message to be deleted
-     * @return True/False indicating delete success/failure.
+     * @return the deleted message, or null if no message had that id.
+     */
+    public Message deleteMessageById(int message_id) {
+        Message deleted = messageDAO.deleteMessageById(message_id);
+        messageCache.invalidate(message_id);
+        if (deleted != null) {
+            accountMessageIndex.remove(deleted);
+            messageSearchIndex.remove(deleted);
+            homeTimelines.removed(deleted);
+            messageVersions.changed(deleted);
+        }
+        messageJsonCache.invalidate(message_id);
+        return deleted;
+    }
+
+    /**
+     * @return the read-through message cache, for reading its hit ratio, eviction and load latency stats.
+     */
+    public MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * @return the off-heap cache of encoded message JSON, for reading its memory use and hit counts.
+     */
+    public OffHeapJsonCache getMessageJsonCache() {
+        return messageJsonCache;
+    }
+
+    /**
+     * @return the per-account message index.
+     */
+    public AccountMessageIndex getAccountMessageIndex() {
+        return accountMessageIndex;
+    }
+
+    /**
+     * @return the full-text search index over message_text.
+     */
+    public MessageSearchIndex getMessageSearchIndex() {
+        return messageSearchIndex;
+    }
+
+    /**
+     * @return the home timeline rings.
+     */
+    public HomeTimelines getHomeTimelines() {
+        return homeTimelines;
+    }
+
+    /**
+     * @return the version stamps used to build ETags for the message endpoints.
      */
-    public boolean canDeleteMessageById(int message_id) {
-        return messageDAO.deleteMessageById(message_id);
+    public MessageVersions getMessageVersions() {
+        return messageVersions;
+    }
+
+    /**
+     * Stops the group-commit writer, if there is one, once it has written the messages already submitted to it.
+     */
+    public void close() {
+        if (groupCommitWriter != null) groupCommitWriter.close();
+    }
+
+    /**
+     * Reads messages by id through the message cache DEFAULT_PAGE_SIZE at a time, in the order of the ids and
+     * skipping any that no longer exist, so a long list is written out without every message held at once.
+     */
+    private static final class CachedMessageCursor extends MessageCursor {
+        private final MessageCache messageCache;
+        private final int[] message_ids;
+        private int position;
+        private Iterator<Message> chunk = Collections.emptyIterator();
+
+        CachedMessageCursor(MessageCache messageCache, int[] message_ids) {
+            this.messageCache = messageCache;
+            this.message_ids = message_ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!chunk.hasNext() && position < message_ids.length) {
+                int end = Math.min(message_ids.length, position + DEFAULT_PAGE_SIZE);
+                chunk = messageCache.getAll(Arrays.copyOfRange(message_ids, position, end)).iterator();
+                position = end;
+            }
+            return chunk.hasNext();
+        }
+
+        @Override
+        public Message next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return chunk.next();
+        }
+
+        @Override
+        public void close() {
+            position = message_ids.length;
+            chunk = Collections.emptyIterator();
+        }
     }
 
     /**
@@ -0,0 +1,78 @@
+package Service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import Model.Message;
+
+/**
+ * Version stamps for the message endpoints, so a conditional GET can be answered without querying the database.
+ *
+ * Every change made through MessageService takes the next value of a global counter and records it as the version
+ * of the whole table, of the message's account and of the message itself. Accounts and messages share a fixed
+ * number of stripes, so a change may also move the version of an unrelated id in the same stripe; that only costs
+ * the client a full response, never a stale one.
+ *
+ * A change must be recorded after it is committed, and a version must be read before the query it describes, so an
+ * ETag can lag behind the content it is sent with but never get ahead of it. Rows changed behind the service's back
+ * are not seen. The random nonce keeps ETags from a previous run of the server from matching after a restart.
+ */
+public class MessageVersions {
+    private static final int STRIPES = 4096;
+
+    private final String nonce = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final AtomicLong table = new AtomicLong();
+    private final AtomicLongArray accounts = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray messages = new AtomicLongArray(STRIPES);
+
+    /**
+     * Records that a message was created, updated or deleted.
+     * @param message the message as it was stored or removed, with its message_id and posted_by.
+     */
+    public void changed(Message message) {
+        long version = table.incrementAndGet();
+        // max keeps a stripe from moving backwards when two writers that share it finish out of order
+        accounts.accumulateAndGet(stripe(message.getPosted_by()), version, Math::max);
+        messages.accumulateAndGet(stripe(message.getMessage_id()), version, Math::max);
+    }
+
+    /**
+     * @return strong ETag for any view of the whole message table.
+     */
+    public String tableEtag() {
+        return etag(table.get());
+    }
+
+    /**
+     * @param account_id the account whose messages are being read.
+     * @return strong ETag for the list of messages posted by the account.
+     */
+    public String accountEtag(int account_id) {
+        return etag(accounts.get(stripe(account_id)));
+    }
+
+    /**
+     * @param message_id the message being read.
+     * @return strong ETag for the message, including its absence.
+     */
+    public String messageEtag(int message_id) {
+        return etag(messages.get(stripe(message_id)));
+    }
+
+    /**
+     * @param message_id a message id.
+     * @return the current version of the message's stripe, for detecting a write that raced with a read.
+     */
+    long messageVersion(int message_id) {
+        return messages.get(stripe(message_id));
+    }
+
+    private String etag(long version) {
+        return "\"" + nonce + "-" + Long.toString(version, 36) + "\"";
+    }
+
+    private static int stripe(int id) {
+        return Math.floorMod(id, STRIPES);
+    }
+}
@@ -0,0 +1,48 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes the position of a keyset page as an opaque token so clients can not come to depend on it being
+ * a raw message_id.
+ */
+public final class PageCursor {
+    private static final String PREFIX = "m:";
+
+    private PageCursor() {
+    }
+
+    /**
+     * @param message_id the last message_id on the current page.
+     * @return an opaque cursor pointing just past that message.
+     */
+    public static String encode(int message_id) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((PREFIX + message_id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param cursor a cursor previously returned by encode.
+     * @return the message_id the cursor points past.
+     * @throws IllegalArgumentException if the cursor was not produced by encode.
+     */
+    public static int decode(String cursor) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+        if (!decoded.startsWith(PREFIX)) throw new IllegalArgumentException("malformed cursor");
+        try {
+            int message_id = Integer.parseInt(decoded.substring(PREFIX.length()));
+            if (message_id < 0) throw new IllegalArgumentException("malformed cursor");
+            return message_id;
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with PBKDF2-HMAC-SHA256 and a random 128-bit salt, stored as
+ * pbkdf2-sha256${iterations}${salt}${hash} in the password column. The cost is accounts.password.iterations; a
+ * stored hash records its own, so raising the setting only affects new hashes, and needsRehash reports the old
+ * ones so they can be upgraded at the next login.
+ *
+ * Rows written before passwords were hashed hold the plaintext. verify still accepts them, comparing in constant
+ * time, and needsRehash reports them too.
+ */
+public class PasswordHasher {
+    public static final int ITERATIONS = Integer.getInteger("accounts.password.iterations", 100_000);
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final int iterations;
+
+    // no-args constructor using accounts.password.iterations
+    public PasswordHasher() {
+        this(ITERATIONS);
+    }
+
+    // constructor with provided cost
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations must be positive");
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param password the plaintext password.
+     * @return the salted hash to store in place of the password.
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+            + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * @param password the plaintext password a client sent.
+     * @param stored the password column of the account: a hash made by hash, or a legacy plaintext password.
+     * @return True if the password matches.
+     */
+    public boolean verify(String password, String stored) {
+        if (password == null || stored == null) return false;
+        String[] fields = fields(stored);
+        if (fields == null) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            byte[] salt = Base64.getDecoder().decode(fields[1]);
+            byte[] expected = Base64.getDecoder().decode(fields[2]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, Integer.parseInt(fields[0])));
+        }
+        catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param stored the password column of the account.
+     * @return True if it is plaintext or was hashed at a lower cost than this hasher's.
+     */
+    public boolean needsRehash(String stored) {
+        String[] fields = fields(stored);
+        if (fields == null) return true;
+        try {
+            return Integer.parseInt(fields[0]) < iterations;
+        }
+        catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the iteration count of new hashes.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    // iterations, salt and hash of a stored hash, or null if the column holds something else
+    private static String[] fields(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return null;
+        String[] fields = stored.substring(PREFIX.length()).split("\\$");
+        return fields.length == 3 ? fields : null;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+        finally {
+            spec.clearPassword();
+        }
+    }
+}
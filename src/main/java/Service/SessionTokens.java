@@ -0,0 +1,153 @@
+package Service;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and verifies the session tokens handed out by POST /login. A token is the account_id, an expiry and a random
+ * nonce, signed with HMAC-SHA256 (truncated to 128 bits) and base64url encoded, about 45 characters in all. Verifying
+ * one is a MAC and a map lookup, so an authenticated request never reads the account table.
+ *
+ * The key comes from session.secret (base64) when set; otherwise a random key is made at startup and every token
+ * is invalidated by a restart. Logged-out tokens are held in a revocation set only until they would have expired.
+ */
+public class SessionTokens {
+    public static final long TTL_SECONDS = Long.getLong("session.ttlSeconds", 3600);
+    public static final String SECRET = System.getProperty("session.secret");
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PAYLOAD_BYTES = 16;
+    private static final int MAC_BYTES = 16;
+    private static final SecureRandom random = new SecureRandom();
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final LongSupplier clockSeconds;
+    // Mac instances are not thread-safe and costly to create, so each thread keeps one
+    private final ThreadLocal<Mac> macs;
+    // canonical encoding of the payload of every revoked token that has not expired yet, mapped to its expiry
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile int purgeAt = 1024;
+
+    // no-args constructor using session.secret and session.ttlSeconds
+    public SessionTokens() {
+        this(SECRET == null ? randomKey() : Base64.getDecoder().decode(SECRET), TTL_SECONDS,
+            () -> System.currentTimeMillis() / 1000);
+    }
+
+    // constructor with provided key, token lifetime and clock
+    public SessionTokens(byte[] key, long ttlSeconds, LongSupplier clockSeconds) {
+        this.key = new SecretKeySpec(key, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.clockSeconds = clockSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(this.key);
+                return mac;
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " is not available", e);
+            }
+        });
+    }
+
+    /**
+     * @param account_id the account that just logged in.
+     * @return a signed token for the account that expires after session.ttlSeconds.
+     */
+    public String issue(int account_id) {
+        byte[] payload = ByteBuffer.allocate(PAYLOAD_BYTES)
+            .putInt(account_id)
+            .putLong(clockSeconds.getAsLong() + ttlSeconds)
+            .putInt(random.nextInt())
+            .array();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + "." + encoder.encodeToString(sign(payload));
+    }
+
+    /**
+     * Checks a token's signature, expiry and revocation without any database access.
+     * @param token a token sent by the client.
+     * @return the account_id the token was issued to, or 0 if it is malformed, forged, expired or revoked.
+     */
+    public int verify(String token) {
+        byte[] payload = verifiedPayload(token);
+        return payload == null ? 0 : ByteBuffer.wrap(payload).getInt(0);
+    }
+
+    /**
+     * Revokes a valid token, so it fails verification for the rest of its lifetime.
+     * @param token a token sent by the client.
+     * @return the account_id the token was issued to, or 0 if it was not valid to begin with.
+     */
+    public int revoke(String token) {
+        byte[] payload = verifiedPayload(token);
+        if (payload == null) return 0;
+        ByteBuffer fields = ByteBuffer.wrap(payload);
+        revoked.put(revocationKey(payload), fields.getLong(4));
+        if (revoked.size() >= purgeAt) purgeExpired();
+        return fields.getInt(0);
+    }
+
+    // the decoded payload of a token whose signature, expiry and revocation check out, otherwise null
+    private byte[] verifiedPayload(String token) {
+        if (token == null) return null;
+        int dot = token.indexOf('.');
+        if (dot < 0) return null;
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (payload.length != PAYLOAD_BYTES || !MessageDigest.isEqual(sign(payload), signature)) return null;
+        if (ByteBuffer.wrap(payload).getLong(4) <= clockSeconds.getAsLong()) return null;
+        if (!revoked.isEmpty() && revoked.containsKey(revocationKey(payload))) return null;
+        return payload;
+    }
+
+    // the decoder also takes padding and ignores unused trailing bits, so the same payload can be sent spelled in
+    // several ways; revocations are keyed on one spelling of the decoded bytes so that none of them gets past
+    private static String revocationKey(byte[] payload) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(payload);
+    }
+
+    /**
+     * @return the number of revoked tokens still held.
+     */
+    public int revokedCount() {
+        return revoked.size();
+    }
+
+    // drops revoked tokens that have expired anyway, and waits for the set to double before doing it again
+    private void purgeExpired() {
+        long now = clockSeconds.getAsLong();
+        revoked.values().removeIf(expiry -> expiry <= now);
+        purgeAt = Math.max(1024, revoked.size() * 2);
+    }
+
+    private byte[] sign(byte[] payload) {
+        byte[] mac = macs.get().doFinal(payload);
+        byte[] truncated = new byte[MAC_BYTES];
+        System.arraycopy(mac, 0, truncated, 0, MAC_BYTES);
+        return truncated;
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,213 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of worker threads with a bounded queue in front of them, used to run one class of request
+ * handlers apart from the others. When every worker is busy and the queue is full, new work is rejected at once
+ * instead of piling up, so a flood of one kind of request can only exhaust its own pool.
+ *
+ * Pooled threads would undo virtual thread mode, so there each task instead gets a thread of its own from a
+ * thread-per-task executor, and the same bounds are kept by two semaphores: one with a permit per worker, which a
+ * task holds while it runs, and one with a permit per worker or queue slot, which it holds from submission on.
+ *
+ * fromProperties reads the sizes from the system properties executor.{name}.threads and executor.{name}.queue.
+ * A task submitted while a traced request is current carries its trace to the worker, with the time it queued.
+ */
+public class BoundedExecutor {
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+    // the pooled workers; null when every task gets its own thread from threadPerTask
+    private final ThreadPoolExecutor executor;
+    private final Executor threadPerTask;
+    // permits for the tasks running and for those running or waiting to, in thread-per-task mode
+    private final Semaphore running;
+    private final Semaphore admitted;
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a pool sized from its system properties, falling back to the given defaults. In virtual thread mode
+     * each of its tasks runs on a virtual thread of its own.
+     * @param name short name of the pool, used in the property names and thread names.
+     * @param defaultThreads number of worker threads if executor.{name}.threads is not set.
+     * @param defaultQueue queue capacity if executor.{name}.queue is not set.
+     * @return the new pool.
+     */
+    public static BoundedExecutor fromProperties(String name, int defaultThreads, int defaultQueue) {
+        int threads = Integer.getInteger("executor." + name + ".threads", defaultThreads);
+        int queueCapacity = Integer.getInteger("executor." + name + ".queue", defaultQueue);
+        return VirtualThreadMode.ENABLED ? new BoundedExecutor(name, threads, queueCapacity, VirtualThreadMode.blockingExecutor()) :
+            new BoundedExecutor(name, threads, queueCapacity);
+    }
+
+    /**
+     * @param name short name of the pool, used in thread names and error messages.
+     * @param threads number of worker threads.
+     * @param queueCapacity how many tasks may wait for a worker before new ones are rejected.
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity) {
+        this(name, threads, queueCapacity, null);
+    }
+
+    /**
+     * @param name short name of the pool, used in thread names and error messages.
+     * @param threads number of tasks that may run at once.
+     * @param queueCapacity how many tasks may wait for a turn before new ones are rejected.
+     * @param threadPerTask an executor starting a new thread for each task, such as one of virtual threads, or null
+     * to run the tasks on a fixed pool of threads.
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity, Executor threadPerTask) {
+        if (threads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("invalid bounds for " + name + " pool threads=" + threads + " queue=" + queueCapacity);
+        }
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.threadPerTask = threadPerTask;
+        if (threadPerTask != null) {
+            // fair, so waiting tasks start in the order they were submitted, as from a queue
+            this.running = new Semaphore(threads, true);
+            this.admitted = new Semaphore(threads + queueCapacity);
+            this.executor = null;
+            return;
+        }
+        this.running = null;
+        this.admitted = null;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-handler-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), threadFactory, (runnable, pool) -> {
+                rejected.increment();
+                throw new RejectedExecutionException(name + " pool is saturated");
+            });
+    }
+
+    /**
+     * Runs the task on this pool.
+     * @param task the work to run.
+     * @return a future completed with the task's result, or failed with RejectedExecutionException if the pool is
+     * saturated.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        Trace trace = Trace.current();
+        Supplier<T> work = trace == null ? task : traced(trace, task);
+        if (executor == null) return supplyOnOwnThread(work);
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        }
+        catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> CompletableFuture<T> supplyOnOwnThread(Supplier<T> work) {
+        if (shutdown || !admitted.tryAcquire()) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException(name + " pool is saturated"));
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            threadPerTask.execute(() -> {
+                running.acquireUninterruptibly();
+                T result = null;
+                Throwable failure = null;
+                try {
+                    result = work.get();
+                }
+                catch (Throwable e) {
+                    failure = e;
+                }
+                // the permits go back before the future completes, so the caller sees the pool free again
+                running.release();
+                admitted.release();
+                completed.increment();
+                if (failure == null) future.complete(result);
+                else future.completeExceptionally(failure);
+            });
+        }
+        catch (RejectedExecutionException e) {
+            admitted.release();
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+        return future;
+    }
+
+    private <T> Supplier<T> traced(Trace trace, Supplier<T> task) {
+        long queued = System.nanoTime();
+        return () -> {
+            Trace previous = Trace.attach(trace);
+            try {
+                Trace.leaf(name + "-queue", queued, System.nanoTime());
+                return task.get();
+            }
+            finally {
+                Trace.attach(previous);
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return number of tasks waiting for a worker.
+     */
+    public int getQueueDepth() {
+        if (executor == null) return Math.max(0, threads + queueCapacity - admitted.availablePermits() - getActiveCount());
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return number of workers currently running a task.
+     */
+    public int getActiveCount() {
+        if (executor == null) return threads - running.availablePermits();
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of tasks turned away because the pool was saturated.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return approximate number of tasks that have finished.
+     */
+    public long getCompletedCount() {
+        if (executor == null) return completed.sum();
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * Stops accepting work; tasks already queued still run.
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (executor != null) executor.shutdown();
+    }
+}
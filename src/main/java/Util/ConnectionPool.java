@@ -0,0 +1,351 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical JDBC connections. Borrowers receive a proxy whose close() hands the
+ * connection back to the pool instead of closing it.
+ *
+ * The pool keeps at least minSize connections open, never opens more than maxSize, validates idle
+ * connections before lending them out, evicts connections that have sat idle past idleTimeoutMillis and
+ * logs the borrowing stack of any connection held longer than leakThresholdMillis.
+ *
+ * Each physical connection also caches up to statementCacheSize prepared statements keyed by SQL text,
+ * and the pool counts cache hits and misses across all of its connections.
+ *
+ * Only a ReentrantLock guards pool state so that borrowers parked on a virtual thread are never pinned.
+ * Closing the pool stops its housekeeper thread and closes its connections as they come back.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    // most recently returned connection is lent out first so the tail of the deque is the eviction candidate
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private boolean closed;
+    private int total;
+    private int waiting;
+
+    private final ScheduledExecutorService housekeeper;
+
+    /**
+     * Creates a pool and opens minSize connections up front.
+     * @param dataSource source of physical connections.
+     * @param minSize number of connections kept open even when idle.
+     * @param maxSize upper bound on open connections.
+     * @param acquireTimeoutMillis how long getConnection() waits for a free connection.
+     * @param idleTimeoutMillis how long a connection above minSize may stay idle before it is closed.
+     * @param leakThresholdMillis how long a connection may be held before it is reported as leaked, 0 disables.
+     * @param statementCacheSize how many prepared statements each connection keeps cached, 0 disables.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+            long idleTimeoutMillis, long leakThresholdMillis, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("invalid pool bounds min=" + minSize + " max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+
+        for (int i = 0; i < minSize; i++) {
+            try {
+                idle.push(open());
+                total++;
+            }
+            catch (SQLException e) {
+                logger.warn("Could not pre-fill connection pool: {}", e.getMessage());
+                break;
+            }
+        }
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, leakThresholdMillis > 0 ? leakThresholdMillis : Long.MAX_VALUE) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to acquireTimeoutMillis for one to become free.
+     * @return a pooled connection which must be closed to return it to the pool.
+     * @throws SQLException if no connection became available in time or a new one could not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean mayOpen = false;
+
+            lock.lock();
+            try {
+                if (closed) throw new SQLException("Connection pool is closed");
+                while (idle.isEmpty() && total >= maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection"
+                            + " (active=" + borrowed.size() + ", max=" + maxSize + ")");
+                    }
+                    waiting++;
+                    try {
+                        available.awaitNanos(remaining);
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    }
+                    finally {
+                        waiting--;
+                    }
+                    if (closed) throw new SQLException("Connection pool is closed");
+                }
+                if (!idle.isEmpty()) candidate = idle.pop();
+                else {
+                    total++;
+                    mayOpen = true;
+                }
+            }
+            finally {
+                lock.unlock();
+            }
+
+            // validation and physical opens happen outside the lock so a slow database never blocks other borrowers
+            if (mayOpen) {
+                try {
+                    candidate = open();
+                }
+                catch (SQLException e) {
+                    discarded();
+                    throw e;
+                }
+            }
+            else if (!candidate.isValid()) {
+                candidate.closePhysical();
+                discarded();
+                continue;
+            }
+            return lend(candidate);
+        }
+    }
+
+    /**
+     * Hands a connection back to the pool. Called by PooledConnection when the borrower closes it.
+     * @param connection the connection being returned.
+     */
+    void release(PooledConnection connection) {
+        borrowed.remove(connection);
+        if (!connection.reset()) {
+            connection.closePhysical();
+            discarded();
+            return;
+        }
+        lock.lock();
+        try {
+            if (!closed) {
+                connection.markIdle();
+                idle.push(connection);
+                available.signal();
+                return;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        connection.closePhysical();
+        discarded();
+    }
+
+    /**
+     * Stops the housekeeper thread and closes the idle connections. Connections still borrowed are closed when
+     * they are returned, and later borrowers get an SQLException.
+     */
+    @Override
+    public void close() {
+        List<PooledConnection> closing;
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            closing = new ArrayList<>(idle);
+            idle.clear();
+            total -= closing.size();
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (PooledConnection connection : closing) connection.closePhysical();
+    }
+
+    /**
+     * @return number of connections currently lent out.
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return number of open connections waiting in the pool.
+     */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of threads blocked in getConnection().
+     */
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of open physical connections, both idle and active.
+     */
+    public int getTotalCount() {
+        lock.lock();
+        try {
+            return total;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of prepareStatement calls answered from a connection's statement cache.
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    /**
+     * @return number of prepareStatement calls that had to prepare a new statement.
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    void statementCacheHit() {
+        statementCacheHits.increment();
+    }
+
+    void statementCacheMiss() {
+        statementCacheMisses.increment();
+    }
+
+    private PooledConnection open() throws SQLException {
+        return new PooledConnection(this, dataSource.getConnection(), statementCacheSize);
+    }
+
+    private Connection lend(PooledConnection connection) {
+        connection.markBorrowed(leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null);
+        borrowed.add(connection);
+        return connection.getProxy();
+    }
+
+    // a physical connection was closed or failed to open, so free its slot for another borrower
+    private void discarded() {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            evictIdle();
+            detectLeaks();
+        }
+        catch (RuntimeException e) {
+            logger.warn("Connection pool housekeeping failed", e);
+        }
+    }
+
+    private void evictIdle() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && total > minSize) {
+                PooledConnection connection = oldestFirst.next();
+                if (now - connection.getLastUsedMillis() < idleTimeoutMillis) break;
+                oldestFirst.remove();
+                total--;
+                evicted.add(connection);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        for (PooledConnection connection : evicted) connection.closePhysical();
+    }
+
+    private void detectLeaks() {
+        if (leakThresholdMillis <= 0) return;
+        long now = System.currentTimeMillis();
+        for (PooledConnection connection : borrowed) {
+            if (now - connection.getBorrowedAtMillis() > leakThresholdMillis && connection.markLeakReported()) {
+                logger.warn("Connection held for more than " + leakThresholdMillis + "ms, possible leak",
+                    connection.getBorrowStack());
+            }
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
 
+import DAO.StorageEngine;
+
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are lent out by a bounded ConnectionPool, so callers must close
+ * every connection they get from here to return it to the pool. Pool bounds can
+ * be tuned with the pool.minSize, pool.maxSize, pool.acquireTimeoutMillis,
+ * pool.idleTimeoutMillis, pool.leakThresholdMillis and pool.statementCacheSize
+ * system properties.
  */
 public class ConnectionUtil {
 
@@ -32,43 +39,65 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource the pool opens its physical connections from.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Bounded pool that lends out and recycles the physical connections.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * static initialization block to establish credentials for the DataSource and create the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource,
+			Integer.getInteger("pool.minSize", 2),
+			Integer.getInteger("pool.maxSize", 16),
+			Long.getLong("pool.acquireTimeoutMillis", 5000),
+			Long.getLong("pool.idleTimeoutMillis", 60000),
+			Long.getLong("pool.leakThresholdMillis", 30000),
+			Integer.getInteger("pool.statementCacheSize", 64));
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, which must be closed to return it to the pool
+	 * @throws SQLException if the pool had no connection free within pool.acquireTimeoutMillis, or a new one could
+	 * not be opened; DAOs report it as they do a failed query.
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+	public static Connection getConnection() throws SQLException {
+		return pool.getConnection();
+	}
 
-		return null;
+	/**
+	 * @return the pool backing getConnection(), for reading its active, idle and waiting gauges
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources, forget the recorded migrations and apply them again on
+	 * top of the fresh tables. A storage engine that keeps its own copy of the
+	 * tables is reset to match. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
+		try (Connection connection = getConnection();
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+			Statement statement = connection.createStatement()) {
+			RunScript.execute(connection, sqlReader);
+			statement.execute("DROP TABLE IF EXISTS follow");
+			statement.execute("DROP TABLE IF EXISTS schema_history");
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
+		MigrationRunner.migrate();
+		StorageEngine.resetTestStorage();
 	}
 }
@@ -0,0 +1,280 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The process-wide registry behind GET /metrics: latency timers and error counts for DAO queries and routes,
+ * counters, and gauges read from other components when scraped, rendered in the Prometheus text format.
+ *
+ * Components look their timers up once and keep them, so the hot path only reads the clock and records into a
+ * LatencyHistogram. DAO errors are reported through queryFailed, which logs them and also counts them on the calling
+ * thread, so the timer around the failing call can tell it failed.
+ */
+public final class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    // set -Dmetrics.enabled=false to hand out the DAOs without their timers
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("metrics.enabled", "true"));
+
+    // the histogram buckets exported, as powers of two nanoseconds from about 1 us to about 17 s
+    private static final int FIRST_BUCKET_EXPONENT = 10;
+    private static final int LAST_BUCKET_EXPONENT = 34;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    // keyed by family then labels, so each family renders in one block
+    private static final ConcurrentSkipListMap<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, DoubleSupplier> decimalGauges = new ConcurrentSkipListMap<>();
+    private static final Map<String, String> help = new ConcurrentHashMap<>();
+    private static final ThreadLocal<int[]> failures = ThreadLocal.withInitial(() -> new int[1]);
+
+    private Metrics() {
+    }
+
+    /**
+     * @param family the metric name prefix, e.g. dao_query, rendered as {family}_duration_seconds and
+     * {family}_errors_total.
+     * @param labels label names and values, alternating.
+     * @return the timer for this family and these labels, created on first use.
+     */
+    public static Timer timer(String family, String... labels) {
+        return timers.computeIfAbsent(family + labels(labels), key -> new Timer());
+    }
+
+    /**
+     * @param name the counter's name, ending in _total.
+     * @param labels label names and values, alternating.
+     * @return the counter for this name and these labels, created on first use.
+     */
+    public static LongAdder counter(String name, String... labels) {
+        return counters.computeIfAbsent(name + labels(labels), key -> new LongAdder());
+    }
+
+    /**
+     * Registers a value read when metrics are rendered, replacing any earlier one with the same name and labels.
+     * @param name the gauge's name; one ending in _total is rendered as a counter.
+     * @param value reads the current value.
+     * @param labels label names and values, alternating.
+     */
+    public static void gauge(String name, LongSupplier value, String... labels) {
+        gauges.put(name + labels(labels), value);
+    }
+
+    /**
+     * Registers a fractional value read when metrics are rendered, such as a ratio or a time in seconds, replacing
+     * any earlier one with the same name and labels.
+     * @param name the gauge's name; one ending in _total is rendered as a counter.
+     * @param value reads the current value.
+     * @param labels label names and values, alternating.
+     */
+    public static void decimalGauge(String name, DoubleSupplier value, String... labels) {
+        decimalGauges.put(name + labels(labels), value);
+    }
+
+    /**
+     * Sets the # HELP text of a metric family.
+     * @param name the rendered name, e.g. dao_query_duration_seconds.
+     * @param text one line describing it.
+     */
+    public static void describe(String name, String text) {
+        help.put(name, text);
+    }
+
+    /**
+     * Logs a DAO error and counts it against the calling thread.
+     * @param e the exception the query failed with.
+     */
+    public static void queryFailed(Exception e) {
+        logger.warn("Query failed", e);
+        failures.get()[0]++;
+    }
+
+    /**
+     * @return the number of DAO errors the calling thread has reported, to compare before and after a call.
+     */
+    public static int queryFailures() {
+        return failures.get()[0];
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format, version 0.0.4.
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        String family = null;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = nameOf(entry.getKey());
+            String labels = labelsOf(entry.getKey());
+            if (!name.equals(family)) {
+                header(out, name + "_duration_seconds", "histogram");
+                family = name;
+            }
+            LatencyHistogram histogram = entry.getValue().histogram;
+            long count = histogram.count();
+            for (int exponent = FIRST_BUCKET_EXPONENT; exponent <= LAST_BUCKET_EXPONENT; exponent++) {
+                sample(out, name + "_duration_seconds_bucket", withLabel(labels, "le", seconds(1L << exponent)), histogram.countBelow(1L << exponent));
+            }
+            sample(out, name + "_duration_seconds_bucket", withLabel(labels, "le", "+Inf"), count);
+            out.append(name).append("_duration_seconds_sum").append(labels).append(' ').append(seconds(histogram.sumNanos())).append('\n');
+            sample(out, name + "_duration_seconds_count", labels, count);
+        }
+        family = null;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = nameOf(entry.getKey());
+            if (!name.equals(family)) {
+                header(out, name + "_duration_quantile_seconds", "gauge");
+                family = name;
+            }
+            for (double quantile : QUANTILES) {
+                out.append(name).append("_duration_quantile_seconds")
+                    .append(withLabel(labelsOf(entry.getKey()), "quantile", Double.toString(quantile)))
+                    .append(' ').append(seconds(entry.getValue().histogram.percentile(quantile))).append('\n');
+            }
+        }
+        family = null;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = nameOf(entry.getKey());
+            if (!name.equals(family)) {
+                header(out, name + "_errors_total", "counter");
+                family = name;
+            }
+            sample(out, name + "_errors_total", labelsOf(entry.getKey()), entry.getValue().errors.sum());
+        }
+        family = null;
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            String name = nameOf(entry.getKey());
+            if (!name.equals(family)) {
+                header(out, name, "counter");
+                family = name;
+            }
+            sample(out, name, labelsOf(entry.getKey()), entry.getValue().sum());
+        }
+        family = null;
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            String name = nameOf(entry.getKey());
+            if (!name.equals(family)) {
+                header(out, name, name.endsWith("_total") ? "counter" : "gauge");
+                family = name;
+            }
+            sample(out, name, labelsOf(entry.getKey()), entry.getValue().getAsLong());
+        }
+        family = null;
+        for (Map.Entry<String, DoubleSupplier> entry : decimalGauges.entrySet()) {
+            String name = nameOf(entry.getKey());
+            if (!name.equals(family)) {
+                header(out, name, name.endsWith("_total") ? "counter" : "gauge");
+                family = name;
+            }
+            out.append(name).append(labelsOf(entry.getKey())).append(' ').append(entry.getValue().getAsDouble()).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * The latency histogram and error count of one query or route.
+     */
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private volatile String span;
+
+        /**
+         * Also adds each call stopped to the current request's trace, if it is sampled.
+         * @param span the span's name, e.g. MessageDAO.updateMessage.
+         * @return this timer.
+         */
+        public Timer traced(String span) {
+            this.span = span;
+            return this;
+        }
+
+        /**
+         * Records a call that started at start, counting it as an error if the calling thread reported a DAO error
+         * since.
+         * @param start System.nanoTime() when the call started.
+         * @param failuresAtStart queryFailures() when the call started.
+         */
+        public void stop(long start, int failuresAtStart) {
+            long end = System.nanoTime();
+            histogram.record(end - start);
+            if (queryFailures() != failuresAtStart) errors.increment();
+            if (span != null) Trace.leaf(span, start, end);
+        }
+
+        /**
+         * @param nanos the duration of a call.
+         * @param failed True if the call failed.
+         */
+        public void record(long nanos, boolean failed) {
+            histogram.record(nanos);
+            if (failed) errors.increment();
+        }
+
+        /**
+         * @return the latency histogram.
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * @return the number of calls that failed.
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type) {
+        String text = help.get(name);
+        if (text != null) out.append("# HELP ").append(name).append(' ').append(text).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length == 0) return "";
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("labels must be name and value pairs");
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) out.append(',');
+            out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String nameOf(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static String labelsOf(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? "" : key.substring(brace);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,165 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Applies the versioned schema scripts under src/main/resources/db/migration in order and records each one
+ * in the schema_history table, so every script runs exactly once per database.
+ *
+ * New scripts are named V{version}__{description}.sql and appended to MIGRATIONS. An applied script must
+ * never be edited; migrate() refuses to run if a recorded checksum no longer matches.
+ */
+public class MigrationRunner {
+    /**
+     * Every migration, in the order it must be applied.
+     */
+    private static final String[] MIGRATIONS = {
+        "V1__message_posted_by_time_index.sql",
+        "V2__message_time_index.sql",
+        "V3__follow.sql",
+    };
+
+    private static final String LOCATION = "db/migration/";
+    private static final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Applies every migration that is not yet recorded in schema_history.
+     * @return the number of migrations applied.
+     * @throws IllegalStateException if a migration fails or an applied script has been modified.
+     */
+    public static int migrate() {
+        lock.lock();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS schema_history ("
+                    + "version int primary key, "
+                    + "script varchar(255), "
+                    + "checksum bigint, "
+                    + "installed_on timestamp default current_timestamp)");
+            }
+            Map<Integer, Long> applied = appliedChecksums(connection);
+
+            int count = 0;
+            for (String script : MIGRATIONS) {
+                int version = versionOf(script);
+                String body = read(script);
+                long checksum = checksum(body);
+
+                if (applied.containsKey(version)) {
+                    if (applied.get(version) != checksum) {
+                        throw new IllegalStateException("Migration " + script + " was modified after it was applied");
+                    }
+                    continue;
+                }
+                RunScript.execute(connection, new StringReader(body));
+                try (PreparedStatement preparedStatement = connection.prepareStatement(
+                        "INSERT INTO schema_history (version, script, checksum) VALUES (?,?,?)")) {
+                    preparedStatement.setInt(1, version);
+                    preparedStatement.setString(2, script);
+                    preparedStatement.setLong(3, checksum);
+                    preparedStatement.executeUpdate();
+                }
+                count++;
+            }
+            return count;
+        }
+        catch (SQLException | IOException e) {
+            throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs EXPLAIN on each query and reports the ones H2 plans as a full table scan. Parameters are bound to
+     * placeholder values since only the shape of the plan matters.
+     * @param queries the SQL of the queries to check.
+     * @return the queries whose plan contains a table scan; empty when every query uses an index.
+     */
+    public static List<String> findTableScans(String... queries) {
+        return findPlans(plan -> plan.contains("tableScan"), queries);
+    }
+
+    /**
+     * Runs EXPLAIN on each query and reports the ones whose ORDER BY H2 has to sort itself, rather than reading the
+     * rows from an index already in that order.
+     * @param queries the SQL of the queries to check.
+     * @return the queries whose plan sorts its result; empty when every ORDER BY is served by an index.
+     */
+    public static List<String> findSorts(String... queries) {
+        return findPlans(plan -> plan.contains("ORDER BY") && !plan.contains("index sorted"), queries);
+    }
+
+    private static List<String> findPlans(Predicate<String> reported, String... queries) {
+        List<String> found = new ArrayList<>();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            for (String sql : queries) {
+                try (PreparedStatement preparedStatement = connection.prepareStatement("EXPLAIN " + sql)) {
+                    int parameterCount = preparedStatement.getParameterMetaData().getParameterCount();
+                    for (int i = 1; i <= parameterCount; i++) preparedStatement.setInt(i, 1);
+
+                    try (ResultSet rs = preparedStatement.executeQuery()) {
+                        while (rs.next()) {
+                            if (reported.test(rs.getString(1))) found.add(sql + "\n" + rs.getString(1));
+                        }
+                    }
+                }
+            }
+        }
+        catch (SQLException e) {
+            throw new IllegalStateException("EXPLAIN failed: " + e.getMessage(), e);
+        }
+        return found;
+    }
+
+    private static Map<Integer, Long> appliedChecksums(Connection connection) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_history")) {
+            while (rs.next()) applied.put(rs.getInt("version"), rs.getLong("checksum"));
+        }
+        return applied;
+    }
+
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static String read(String script) throws IOException {
+        InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(LOCATION + script);
+        if (in == null) throw new IOException("Missing migration " + LOCATION + script);
+        StringBuilder body = new StringBuilder();
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) body.append(buffer, 0, read);
+        }
+        return body.toString();
+    }
+
+    private static long checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,340 @@
+package Util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The Javalin JSON mapper. Message, Account and MessageBatchResult, and arrays and lists of them, are read and
+ * written field by field with Jackson's streaming parser and generator, so the hot paths skip databind's bean
+ * introspection and never build a tree. Every other type falls through to a plain ObjectMapper.
+ *
+ * The wire format matches what databind produced: the same field names in the same order, the same scalar
+ * coercions, and an error for unknown fields. A single message whose message_text is longer than
+ * MAX_MESSAGE_TEXT_LENGTH is rejected with OversizeFieldException as soon as the field is read; inside an array the
+ * text is dropped instead, so the batch can report that one message as invalid. An array of messages longer than
+ * maxArrayLength is rejected with OversizeFieldException when the element past the limit starts, so the rest of
+ * the body is never parsed.
+ */
+public class ModelJsonMapper implements JsonMapper {
+    public static final int MAX_MESSAGE_TEXT_LENGTH = 255;
+
+    private static final SerializedString MESSAGE_ID = new SerializedString("message_id");
+    private static final SerializedString POSTED_BY = new SerializedString("posted_by");
+    private static final SerializedString MESSAGE_TEXT = new SerializedString("message_text");
+    private static final SerializedString TIME_POSTED_EPOCH = new SerializedString("time_posted_epoch");
+    private static final SerializedString ACCOUNT_ID = new SerializedString("account_id");
+    private static final SerializedString USERNAME = new SerializedString("username");
+    private static final SerializedString PASSWORD = new SerializedString("password");
+    private static final SerializedString INDEX = new SerializedString("index");
+    private static final SerializedString MESSAGE = new SerializedString("message");
+    private static final SerializedString ERROR = new SerializedString("error");
+
+    // handles every type without a hand-written codec, and supplies the parsers and generators for those with one
+    private final ObjectMapper fallback;
+    private final JsonFactory factory;
+    private final int maxArrayLength;
+
+    public ModelJsonMapper() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxArrayLength the most messages an array of them may hold when read.
+     */
+    public ModelJsonMapper(int maxArrayLength) {
+        this(new ObjectMapper(), maxArrayLength);
+    }
+
+    public ModelJsonMapper(ObjectMapper fallback) {
+        this(fallback, Integer.MAX_VALUE);
+    }
+
+    public ModelJsonMapper(ObjectMapper fallback, int maxArrayLength) {
+        this.fallback = fallback;
+        this.factory = fallback.getFactory();
+        this.maxArrayLength = maxArrayLength;
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        // a result that is already JSON text is passed through, as Javalin's own mapper does
+        if (obj instanceof String) return (String) obj;
+        SegmentedStringWriter writer = new SegmentedStringWriter(factory._getBufferRecycler());
+        try (JsonGenerator generator = factory.createGenerator(writer)) {
+            write(generator, obj);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.getAndClear();
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        return new ByteArrayInputStream(toJsonBytes(obj));
+    }
+
+    /**
+     * @param obj the value to write.
+     * @return the value as UTF-8 encoded JSON.
+     */
+    public byte[] toJsonBytes(Object obj) {
+        ByteArrayBuilder bytes = new ByteArrayBuilder(factory._getBufferRecycler());
+        try (JsonGenerator generator = factory.createGenerator(bytes)) {
+            write(generator, obj);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T fromJsonString(String json, Type targetType) {
+        try (JsonParser parser = factory.createParser(json)) {
+            return (T) read(parser, targetType);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try (JsonParser parser = factory.createParser(json)) {
+            return (T) read(parser, targetType);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens a generator for writing a response directly to the output, which is left open when the generator is
+     * closed.
+     * @param out the response output stream.
+     * @return a generator to pass to writeMessage.
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return factory.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * Writes one message as a JSON object.
+     * @param generator the generator to write to.
+     * @param message the message to write.
+     */
+    public void writeMessage(JsonGenerator generator, Message message) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(MESSAGE_ID);
+        generator.writeNumber(message.getMessage_id());
+        generator.writeFieldName(POSTED_BY);
+        generator.writeNumber(message.getPosted_by());
+        generator.writeFieldName(MESSAGE_TEXT);
+        generator.writeString(message.getMessage_text());
+        generator.writeFieldName(TIME_POSTED_EPOCH);
+        generator.writeNumber(message.getTime_posted_epoch());
+        generator.writeEndObject();
+    }
+
+    private void writeAccount(JsonGenerator generator, Account account) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ACCOUNT_ID);
+        generator.writeNumber(account.getAccount_id());
+        generator.writeFieldName(USERNAME);
+        generator.writeString(account.getUsername());
+        generator.writeFieldName(PASSWORD);
+        generator.writeString(account.getPassword());
+        generator.writeEndObject();
+    }
+
+    private void writeBatchResult(JsonGenerator generator, MessageBatchResult result) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(INDEX);
+        generator.writeNumber(result.getIndex());
+        generator.writeFieldName(MESSAGE);
+        if (result.getMessage() == null) generator.writeNull();
+        else writeMessage(generator, result.getMessage());
+        generator.writeFieldName(ERROR);
+        generator.writeString(result.getError());
+        generator.writeEndObject();
+    }
+
+    private void write(JsonGenerator generator, Object obj) throws IOException {
+        if (obj == null) generator.writeNull();
+        else if (obj instanceof Message) writeMessage(generator, (Message) obj);
+        else if (obj instanceof Account) writeAccount(generator, (Account) obj);
+        else if (obj instanceof MessageBatchResult) writeBatchResult(generator, (MessageBatchResult) obj);
+        else if (obj instanceof Collection) {
+            generator.writeStartArray();
+            for (Object element : (Collection<?>) obj) write(generator, element);
+            generator.writeEndArray();
+        }
+        else if (obj instanceof Object[]) {
+            generator.writeStartArray();
+            for (Object element : (Object[]) obj) write(generator, element);
+            generator.writeEndArray();
+        }
+        else fallback.writeValue(generator, obj);
+    }
+
+    private Object read(JsonParser parser, Type type) throws IOException {
+        if (type != Message.class && type != Message[].class && type != Account.class) {
+            return fallback.readValue(parser, fallback.constructType(type));
+        }
+        if (parser.nextToken() == null) throw new JsonParseException(parser, "No content to map due to end-of-input");
+        if (type == Message.class) return readMessage(parser, true);
+        if (type == Account.class) return readAccount(parser);
+
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return null;
+        expect(parser, JsonToken.START_ARRAY);
+        List<Message> messages = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (messages.size() == maxArrayLength) throw new OversizeFieldException("array holds more than " + maxArrayLength + " messages");
+            messages.add(readMessage(parser, false));
+        }
+        return messages.toArray(new Message[0]);
+    }
+
+    private Message readMessage(JsonParser parser, boolean rejectOversize) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return null;
+        expect(parser, JsonToken.START_OBJECT);
+        Message message = new Message();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            requireScalar(parser, field);
+            switch (field) {
+                case "message_id":
+                    message.setMessage_id(readInt(parser, field));
+                    break;
+                case "posted_by":
+                    message.setPosted_by(readInt(parser, field));
+                    break;
+                case "message_text":
+                    // the length is checked on the parser's buffer, before a String is made for the text
+                    if (parser.currentToken() == JsonToken.VALUE_STRING && parser.getTextLength() > MAX_MESSAGE_TEXT_LENGTH) {
+                        if (rejectOversize) throw new OversizeFieldException(field, MAX_MESSAGE_TEXT_LENGTH);
+                        message.setMessage_text(null);
+                    }
+                    else message.setMessage_text(parser.getValueAsString());
+                    break;
+                case "time_posted_epoch":
+                    message.setTime_posted_epoch(readLong(parser, field));
+                    break;
+                default:
+                    throw new JsonParseException(parser, "Unrecognized field \"" + field + "\" in Message");
+            }
+        }
+        expect(parser, JsonToken.END_OBJECT);
+        return message;
+    }
+
+    private Account readAccount(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) return null;
+        expect(parser, JsonToken.START_OBJECT);
+        Account account = new Account();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            requireScalar(parser, field);
+            switch (field) {
+                case "account_id":
+                    account.setAccount_id(readInt(parser, field));
+                    break;
+                case "username":
+                    account.setUsername(parser.getValueAsString());
+                    break;
+                case "password":
+                    account.setPassword(parser.getValueAsString());
+                    break;
+                default:
+                    throw new JsonParseException(parser, "Unrecognized field \"" + field + "\" in Account");
+            }
+        }
+        expect(parser, JsonToken.END_OBJECT);
+        return account;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws JsonParseException {
+        if (parser.currentToken() != token) {
+            throw new JsonParseException(parser, "Expected " + token + " but found " + parser.currentToken());
+        }
+    }
+
+    // the coercions databind applies to an int field: whole numbers, fractions truncated, numeric strings and null
+    private static int readInt(JsonParser parser, String field) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT:
+                return parser.getIntValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getValueAsInt();
+            case VALUE_NULL:
+                return 0;
+            case VALUE_STRING:
+                String text = parser.getText().trim();
+                if (text.isEmpty()) return 0;
+                try {
+                    return Integer.parseInt(text);
+                }
+                catch (NumberFormatException e) {
+                    throw new JsonParseException(parser, "Cannot coerce \"" + text + "\" to an int for \"" + field + "\"");
+                }
+            default:
+                throw new JsonParseException(parser, "Cannot coerce " + parser.currentToken() + " to an int for \"" + field + "\"");
+        }
+    }
+
+    // the same coercions for a long field
+    private static long readLong(JsonParser parser, String field) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NUMBER_INT:
+                return parser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getValueAsLong();
+            case VALUE_NULL:
+                return 0;
+            case VALUE_STRING:
+                String text = parser.getText().trim();
+                if (text.isEmpty()) return 0;
+                try {
+                    return Long.parseLong(text);
+                }
+                catch (NumberFormatException e) {
+                    throw new JsonParseException(parser, "Cannot coerce \"" + text + "\" to a long for \"" + field + "\"");
+                }
+            default:
+                throw new JsonParseException(parser, "Cannot coerce " + parser.currentToken() + " to a long for \"" + field + "\"");
+        }
+    }
+
+    // moves to the field's value, which must be a scalar like databind requires for these fields
+    private static void requireScalar(JsonParser parser, String field) throws IOException {
+        JsonToken value = parser.nextToken();
+        if (value == null || value.isStructStart()) {
+            throw new JsonParseException(parser, "Expected a scalar value for \"" + field + "\" but found " + value);
+        }
+    }
+}
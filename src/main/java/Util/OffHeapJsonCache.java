@@ -0,0 +1,303 @@
+package Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Encoded JSON documents kept outside the Java heap, keyed by an int id. The memory is a fixed set of direct
+ * ByteBuffer slabs allocated up front, capacityBytes in total, so the cache never grows and its contents add
+ * nothing to garbage collection.
+ *
+ * Documents are appended to the current slab. When it is full the next slab is recycled whole, dropping every
+ * document in it, so eviction is first-in first-out by slab. Readers pin the slab they copy from; a slab that is
+ * pinned when its turn comes is skipped and stays unused until the next pass, so a reader never sees its bytes
+ * overwritten. Appends take a lock, reads do not.
+ *
+ * A hit is copied out of the slab into a reused buffer and written from there: as bytes to a stream, or decoded
+ * to chars and written raw to a JsonGenerator, which encodes them again. Either way no new array is made for the
+ * document. The reused buffers are kept per thread, like Jackson's own, and grow to the largest document written.
+ */
+public class OffHeapJsonCache {
+    private final Slab[] slabs;
+    private final int slabBytes;
+    private final ConcurrentHashMap<Integer, Location> index = new ConcurrentHashMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // slab that new documents are appended to, guarded by appendLock
+    private int current;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private static final ThreadLocal<byte[]> byteBuffer = ThreadLocal.withInitial(() -> new byte[1024]);
+    private static final ThreadLocal<char[]> charBuffer = ThreadLocal.withInitial(() -> new char[1024]);
+
+    /**
+     * Allocates the slabs. A capacity of 0 disables the cache: nothing is stored and every lookup misses.
+     * @param capacityBytes total off-heap memory to allocate.
+     * @param slabBytes size of each slab, which is also the largest document that can be cached.
+     */
+    public OffHeapJsonCache(long capacityBytes, int slabBytes) {
+        if (capacityBytes < 0 || slabBytes < 1) {
+            throw new IllegalArgumentException("invalid cache bounds capacity=" + capacityBytes + " slab=" + slabBytes);
+        }
+        this.slabBytes = (int) Math.min(slabBytes, capacityBytes);
+        int count = this.slabBytes == 0 ? 0 : (int) (capacityBytes / this.slabBytes);
+        this.slabs = new Slab[count];
+        for (int i = 0; i < count; i++) slabs[i] = new Slab(this.slabBytes);
+    }
+
+    /**
+     * Stores a document, replacing any older one for the id. A document larger than a slab is not stored.
+     * @param id the key.
+     * @param json the encoded document.
+     */
+    public void put(int id, byte[] json) {
+        if (json.length > slabBytes || slabs.length == 0) {
+            dropped.increment();
+            return;
+        }
+        appendLock.lock();
+        try {
+            Slab slab = slabs[current];
+            if (slab.used + json.length > slabBytes && (slab = nextFreeSlab()) == null) {
+                dropped.increment();
+                return;
+            }
+            int offset = slab.used;
+            slab.writer.position(offset);
+            slab.writer.put(json);
+            slab.used = offset + json.length;
+            slab.addKey(id);
+            // the bytes are written before the location is published, so a reader that finds it sees them
+            index.put(id, new Location(slab, slab.generation, offset, json.length));
+        }
+        finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the document for an id. Its bytes stay in the slab until the slab is recycled.
+     * @param id the key.
+     */
+    public void invalidate(int id) {
+        index.remove(id);
+    }
+
+    /**
+     * Writes the cached document for an id to a stream, copying it through the calling thread's reused buffer.
+     * @param id the key.
+     * @param out where to write the document.
+     * @return True if the document was cached and written, False on a miss.
+     */
+    public boolean writeTo(int id, OutputStream out) throws IOException {
+        Location location = index.get(id);
+        if (location == null) {
+            misses.increment();
+            return false;
+        }
+        Slab slab = location.slab;
+        slab.pins.incrementAndGet();
+        try {
+            if (slab.generation != location.generation) {
+                misses.increment();
+                return false;
+            }
+            ByteBuffer view = slab.buffer.duplicate();
+            view.limit(location.offset + location.length).position(location.offset);
+            byte[] copy = byteBuffer.get();
+            if (copy.length < location.length) byteBuffer.set(copy = new byte[Math.max(location.length, copy.length * 2)]);
+            view.get(copy, 0, location.length);
+            out.write(copy, 0, location.length);
+            hits.increment();
+            return true;
+        }
+        finally {
+            slab.pins.decrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the cached document for an id as the next value of a generator. The slab's UTF-8 is decoded into the
+     * calling thread's reused char buffer and written raw, so the generator adds any separator the value needs and
+     * encodes it into its own buffer however full that is.
+     * @param id the key.
+     * @param generator where to write the document.
+     * @return True if the document was cached and written, False on a miss.
+     */
+    public boolean writeTo(int id, JsonGenerator generator) throws IOException {
+        Location location = index.get(id);
+        if (location == null) {
+            misses.increment();
+            return false;
+        }
+        Slab slab = location.slab;
+        slab.pins.incrementAndGet();
+        try {
+            if (slab.generation != location.generation) {
+                misses.increment();
+                return false;
+            }
+            char[] chars = charBuffer.get();
+            // UTF-8 never takes fewer bytes than UTF-16 takes chars
+            if (chars.length < location.length) charBuffer.set(chars = new char[Math.max(location.length, chars.length * 2)]);
+            generator.writeRawValue(chars, 0, decode(slab.buffer, location.offset, location.length, chars));
+            hits.increment();
+            return true;
+        }
+        finally {
+            slab.pins.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return off-heap bytes allocated for the slabs.
+     */
+    public long getCapacityBytes() {
+        return (long) slabs.length * slabBytes;
+    }
+
+    /**
+     * @return off-heap bytes holding documents, including ones invalidated but not yet recycled.
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (Slab slab : slabs) used += slab.used;
+        return used;
+    }
+
+    public int getEntryCount() {
+        return index.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return documents dropped because the slab holding them was recycled.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return documents not stored because they were larger than a slab or every slab was pinned.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return bytes of direct buffer memory in use by the whole JVM, which includes these slabs and Jetty's buffers.
+     */
+    public static long jvmDirectMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+        }
+        return -1;
+    }
+
+    // the documents were encoded by Jackson, so they are well-formed UTF-8
+    private static int decode(ByteBuffer buffer, int offset, int length, char[] out) {
+        int count = 0;
+        for (int i = offset, end = offset + length; i < end; ) {
+            int b = buffer.get(i++);
+            if (b >= 0) out[count++] = (char) b;
+            else if ((b & 0xE0) == 0xC0) out[count++] = (char) ((b & 0x1F) << 6 | buffer.get(i++) & 0x3F);
+            else if ((b & 0xF0) == 0xE0) {
+                out[count++] = (char) ((b & 0x0F) << 12 | (buffer.get(i++) & 0x3F) << 6 | buffer.get(i++) & 0x3F);
+            }
+            else {
+                int codePoint = (b & 0x07) << 18 | (buffer.get(i++) & 0x3F) << 12 | (buffer.get(i++) & 0x3F) << 6 | buffer.get(i++) & 0x3F;
+                out[count++] = Character.highSurrogate(codePoint);
+                out[count++] = Character.lowSurrogate(codePoint);
+            }
+        }
+        return count;
+    }
+
+    // called with appendLock held
+    private Slab nextFreeSlab() {
+        for (int i = 1; i <= slabs.length; i++) {
+            int candidate = (current + i) % slabs.length;
+            if (recycle(slabs[candidate])) {
+                current = candidate;
+                return slabs[candidate];
+            }
+        }
+        return null;
+    }
+
+    // called with appendLock held
+    private boolean recycle(Slab slab) {
+        // moving the generation first means any reader that pins the slab from here on sees its location as stale,
+        // and a reader that pinned it earlier is seen in the pin count below
+        int retired = slab.generation++;
+        for (int i = 0; i < slab.keyCount; i++) {
+            if (index.computeIfPresent(slab.keys[i], (id, location) ->
+                    location.slab == slab && location.generation == retired ? null : location) == null) {
+                evictions.increment();
+            }
+        }
+        slab.keyCount = 0;
+        if (slab.pins.get() != 0) return false;
+        slab.used = 0;
+        return true;
+    }
+
+    private static final class Slab {
+        final ByteBuffer buffer;
+        // only used under appendLock, so the buffer's own position is never moved under a reader
+        final ByteBuffer writer;
+        final AtomicInteger pins = new AtomicInteger();
+        volatile int generation;
+        volatile int used;
+        // ids appended since the slab was last recycled, guarded by appendLock
+        int[] keys = new int[64];
+        int keyCount;
+
+        Slab(int bytes) {
+            buffer = ByteBuffer.allocateDirect(bytes);
+            writer = buffer.duplicate();
+        }
+
+        void addKey(int id) {
+            if (keyCount == keys.length) keys = Arrays.copyOf(keys, keyCount * 2);
+            keys[keyCount++] = id;
+        }
+    }
+
+    /**
+     * Where a document lives.
+     */
+    private static final class Location {
+        final Slab slab;
+        final int generation;
+        final int offset;
+        final int length;
+
+        Location(Slab slab, int generation, int offset, int length) {
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package Util;
+
+/**
+ * Thrown while a request body is being parsed when a field, or an array of messages, is longer than the API allows,
+ * so the rest of the body is never read. The controller answers it with 400.
+ */
+public class OversizeFieldException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public OversizeFieldException(String field, int maxLength) {
+        super(field + " is longer than " + maxLength + " characters");
+    }
+
+    /**
+     * @param message what was too long.
+     */
+    public OversizeFieldException(String message) {
+        super(message);
+    }
+}
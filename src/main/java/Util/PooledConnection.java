@@ -0,0 +1,324 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A physical connection owned by a ConnectionPool. Borrowers only ever see the proxy, whose close()
+ * returns the physical connection to the pool and makes the proxy unusable.
+ *
+ * Statements prepared through prepareStatement(sql) or prepareStatement(sql, autoGeneratedKeys) are kept
+ * in an LRU cache keyed by their SQL text for the life of the physical connection. Closing one only clears
+ * its parameters so the next borrower that prepares the same SQL reuses it without a re-parse.
+ */
+class PooledConnection {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final ConnectionPool pool;
+    private final Connection physical;
+    private volatile Connection proxy;
+    private volatile long borrowedAtMillis;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+    private volatile Throwable borrowStack;
+    private volatile boolean leakReported;
+    // only touched by the thread currently borrowing this connection, so it needs no locking
+    private final StatementCache statements;
+
+    PooledConnection(ConnectionPool pool, Connection physical, int statementCacheSize) {
+        this.pool = pool;
+        this.physical = physical;
+        this.statements = new StatementCache(statementCacheSize);
+    }
+
+    /**
+     * Each borrow gets a fresh proxy so a stale reference kept by a previous borrower can not close the
+     * connection out from under the current one.
+     */
+    void markBorrowed(Throwable borrowStack) {
+        this.borrowStack = borrowStack;
+        this.leakReported = false;
+        this.borrowedAtMillis = System.currentTimeMillis();
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class }, new BorrowHandle());
+    }
+
+    void markIdle() {
+        lastUsedMillis = System.currentTimeMillis();
+        borrowStack = null;
+    }
+
+    /**
+     * Marks this connection as reported so each leak is only logged once.
+     * @return True if this is the first report for the current borrow.
+     */
+    boolean markLeakReported() {
+        if (leakReported) return false;
+        leakReported = true;
+        return true;
+    }
+
+    Connection getProxy() {
+        return proxy;
+    }
+
+    long getBorrowedAtMillis() {
+        return borrowedAtMillis;
+    }
+
+    long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    Throwable getBorrowStack() {
+        return borrowStack;
+    }
+
+    boolean isValid() {
+        try {
+            return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Puts the session back into the state a new borrower expects: autocommit on and no open transaction.
+     * @return True/False indicating whether the connection can be reused.
+     */
+    boolean reset() {
+        try {
+            if (physical.isClosed()) return false;
+            statements.releaseAll();
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            return true;
+        }
+        catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closePhysical() {
+        try {
+            physical.close();
+        }
+        catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns a cached statement for the SQL text, preparing and caching it on a miss. A statement that is
+     * still open for this borrower is never handed out twice; the second caller gets an uncached statement.
+     */
+    private PreparedStatement prepareCached(String sql, int autoGeneratedKeys) throws SQLException {
+        StatementKey key = new StatementKey(sql, autoGeneratedKeys);
+        CachedStatement cached = statements.get(key);
+        if (cached != null && !cached.inUse) {
+            pool.statementCacheHit();
+            return cached.lend();
+        }
+        pool.statementCacheMiss();
+        PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+        if (cached != null || statements.maxSize == 0) return statement;
+
+        cached = new CachedStatement(statement);
+        statements.put(key, cached);
+        return cached.lend();
+    }
+
+    private Object delegate(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(physical, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The view of the connection handed to a single borrower.
+     */
+    private class BorrowHandle implements InvocationHandler {
+        private boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + (closed ? ", closed]" : "]");
+                case "prepareStatement":
+                    if (closed) throw new SQLException("Connection has already been returned to the pool");
+                    if (args.length == 1) return prepareCached((String) args[0], Statement.NO_GENERATED_KEYS);
+                    if (args.length == 2 && args[1] instanceof Integer) return prepareCached((String) args[0], (Integer) args[1]);
+                    return delegate(method, args);
+                default:
+                    if (closed) throw new SQLException("Connection has already been returned to the pool");
+                    return delegate(method, args);
+            }
+        }
+    }
+
+    /**
+     * Identifies a cached statement by its SQL text and whether it returns generated keys.
+     */
+    private static final class StatementKey {
+        private final String sql;
+        private final int autoGeneratedKeys;
+
+        StatementKey(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof StatementKey)) return false;
+            StatementKey other = (StatementKey) o;
+            return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+
+    /**
+     * Access-ordered map that closes the least recently used statement once maxSize is exceeded.
+     */
+    private static final class StatementCache extends LinkedHashMap<StatementKey, CachedStatement> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        StatementCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StatementKey, CachedStatement> eldest) {
+            if (size() <= maxSize) return false;
+            eldest.getValue().evict();
+            return true;
+        }
+
+        // over a copy, since a statement that fails to reset removes itself from the cache
+        void releaseAll() {
+            for (CachedStatement cached : new ArrayList<>(values())) {
+                if (cached.inUse) cached.release();
+            }
+        }
+    }
+
+    /**
+     * A physical statement kept open across borrows. Its proxy turns close() into a reset.
+     */
+    private final class CachedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        PreparedStatement lend() {
+            inUse = true;
+            return proxy;
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) closeQuietly();
+        }
+
+        void release() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                ResultSet rs = statement.getResultSet();
+                if (rs != null) rs.close();
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+            }
+            catch (SQLException e) {
+                // a statement that can not be reset is dropped from the cache rather than reused dirty
+                statements.values().remove(this);
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            }
+            catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) release();
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "getConnection":
+                    return PooledConnection.this.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + statement + "]";
+                default:
+                    if (!inUse) throw new SQLException("Statement has already been closed");
+                    try {
+                        return method.invoke(statement, args);
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the slowest finished traces seen since startup, reported by GET /admin/traces. Once full, a trace only
+ * replaces the fastest one held if it was slower, and a trace faster than all of them is turned away without
+ * taking the lock.
+ */
+public class SlowestTraces {
+    private final Trace[] traces;
+    private int size;
+    // the duration a trace must beat to be kept, once full
+    private volatile long threshold;
+
+    /**
+     * @param capacity how many traces to keep.
+     */
+    public SlowestTraces(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        this.traces = new Trace[capacity];
+    }
+
+    /**
+     * @param trace a finished trace.
+     * @return True if it is one of the slowest and was kept.
+     */
+    public boolean offer(Trace trace) {
+        if (trace.getDurationNanos() <= threshold) return false;
+        synchronized (this) {
+            if (size < traces.length) {
+                traces[size++] = trace;
+                if (size == traces.length) threshold = traces[fastest()].getDurationNanos();
+                return true;
+            }
+            int fastest = fastest();
+            if (trace.getDurationNanos() <= traces[fastest].getDurationNanos()) return false;
+            traces[fastest] = trace;
+            threshold = traces[fastest()].getDurationNanos();
+            return true;
+        }
+    }
+
+    /**
+     * @return the traces kept, slowest first.
+     */
+    public synchronized List<Trace> snapshot() {
+        List<Trace> slowest = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) slowest.add(traces[i]);
+        slowest.sort(Comparator.comparingLong(Trace::getDurationNanos).reversed());
+        return slowest;
+    }
+
+    private int fastest() {
+        int fastest = 0;
+        for (int i = 1; i < size; i++) {
+            if (traces[i].getDurationNanos() < traces[fastest].getDurationNanos()) fastest = i;
+        }
+        return fastest;
+    }
+}
@@ -0,0 +1,263 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The spans of one sampled request: a tree of named, timed phases such as parsing the body, a service call or a
+ * DAO query, rooted at the request itself. The trace follows the request from thread to thread. BoundedExecutor
+ * carries it onto the handler pool, so code anywhere below the controller can open a span without being passed
+ * anything.
+ *
+ * Only a trace.sampleRate fraction of requests (default 0.01) is traced, plus any request the controller forces.
+ * For the rest there is no current trace: span returns the shared Span.NONE and leaf returns at once, so an
+ * unsampled request allocates nothing here. A trace is touched by one thread at a time, as the request moves
+ * between threads, and is only read by others once finished.
+ */
+public final class Trace {
+    public static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("trace.sampleRate", "0.01"));
+    // spans past this many are dropped, so a large batch can not grow a trace without bound
+    static final int MAX_SPANS = Integer.getInteger("trace.maxSpans", 256);
+
+    private static final ThreadLocal<Trace> current = new ThreadLocal<>();
+
+    private final String method;
+    private final String path;
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final Span root;
+    private Span open;
+    private int spanCount;
+    private int droppedSpans;
+    private String route;
+    private int status;
+
+    private Trace(String method, String path) {
+        this.method = method;
+        this.path = path;
+        this.root = new Span(this, "request", null, System.nanoTime());
+        this.open = root;
+    }
+
+    /**
+     * @param force True to trace the request whatever the sample rate.
+     * @return True if the request about to start should be traced.
+     */
+    public static boolean sample(boolean force) {
+        return force || (SAMPLE_RATE > 0 && ThreadLocalRandom.current().nextDouble() < SAMPLE_RATE);
+    }
+
+    /**
+     * Starts tracing a request, making it the calling thread's current trace.
+     * @param method the HTTP method.
+     * @param path the path requested.
+     * @return the new trace.
+     */
+    public static Trace begin(String method, String path) {
+        Trace trace = new Trace(method, path);
+        current.set(trace);
+        return trace;
+    }
+
+    /**
+     * @return the calling thread's current trace, or null if the request it is working on is not traced.
+     */
+    public static Trace current() {
+        return current.get();
+    }
+
+    /**
+     * Makes trace the calling thread's current trace, for a thread taking over a request.
+     * @param trace the trace, or null for none.
+     * @return the thread's previous trace, to attach again when it is done.
+     */
+    public static Trace attach(Trace trace) {
+        Trace previous = current.get();
+        current.set(trace);
+        return previous;
+    }
+
+    /**
+     * Opens a span under the innermost open span of the current trace; close it in a finally block when the phase
+     * ends.
+     * @param name the phase, e.g. parse or MessageService.updateMessage.
+     * @return the open span, or Span.NONE if the request is not traced or its trace is full.
+     */
+    public static Span span(String name) {
+        Trace trace = current.get();
+        if (trace == null || !trace.reserve()) return Span.NONE;
+        Span span = new Span(trace, name, trace.open, System.nanoTime());
+        trace.open.add(span);
+        trace.open = span;
+        return span;
+    }
+
+    /**
+     * Adds a span that has already ended, e.g. one timed by a Metrics.Timer, under the innermost open span of the
+     * current trace.
+     * @param name the phase.
+     * @param startNanos System.nanoTime() when it started.
+     * @param endNanos System.nanoTime() when it ended.
+     */
+    public static void leaf(String name, long startNanos, long endNanos) {
+        Trace trace = current.get();
+        if (trace == null || !trace.reserve()) return;
+        Span span = new Span(trace, name, trace.open, startNanos);
+        span.endNanos = endNanos;
+        trace.open.add(span);
+    }
+
+    /**
+     * Ends the request.
+     * @param route the path pattern of the route that handled it.
+     * @param status the response status.
+     */
+    public void finish(String route, int status) {
+        this.route = route;
+        this.status = status;
+        root.endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the time of each phase so far as a Server-Timing header value: spans with the same name are added up,
+     * in the order they first started, followed by the total.
+     */
+    public String serverTiming() {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        addTimings(root, totals);
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            timing(out, entry.getKey(), entry.getValue()[0]);
+        }
+        timing(out, "total", System.nanoTime() - root.startNanos);
+        return out.toString();
+    }
+
+    private static void addTimings(Span span, Map<String, long[]> totals) {
+        for (Span child : span.getChildren()) {
+            if (child.endNanos != 0) totals.computeIfAbsent(child.name, name -> new long[1])[0] += child.getDurationNanos();
+            addTimings(child, totals);
+        }
+    }
+
+    private static void timing(StringBuilder out, String name, long nanos) {
+        if (out.length() > 0) out.append(", ");
+        out.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6));
+    }
+
+    private boolean reserve() {
+        if (spanCount < MAX_SPANS) {
+            spanCount++;
+            return true;
+        }
+        droppedSpans++;
+        return false;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the path pattern of the route, or null until the request is finished.
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * @return how long the request took, or 0 until it is finished.
+     */
+    public long getDurationNanos() {
+        return root.getDurationNanos();
+    }
+
+    /**
+     * @return the request's span, whose children are its phases.
+     */
+    public Span getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the spans not recorded because the trace already held trace.maxSpans.
+     */
+    public int getDroppedSpans() {
+        return droppedSpans;
+    }
+
+    /**
+     * One timed phase of a traced request.
+     */
+    public static final class Span implements AutoCloseable {
+        // handed out when the request is not traced; closing it does nothing
+        public static final Span NONE = new Span(null, "none", null, 0);
+
+        private final Trace trace;
+        private final String name;
+        private final Span parent;
+        private final long startNanos;
+        private long endNanos;
+        private List<Span> children;
+
+        private Span(Trace trace, String name, Span parent, long startNanos) {
+            this.trace = trace;
+            this.name = name;
+            this.parent = parent;
+            this.startNanos = startNanos;
+        }
+
+        private void add(Span child) {
+            if (children == null) children = new ArrayList<>(4);
+            children.add(child);
+        }
+
+        /**
+         * Ends the span, making its parent the innermost open span again.
+         */
+        @Override
+        public void close() {
+            if (trace == null || endNanos != 0) return;
+            endNanos = System.nanoTime();
+            if (trace.open == this) trace.open = parent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return nanoseconds from the start of the request to the start of this span.
+         */
+        public long getOffsetNanos() {
+            return startNanos - trace.root.startNanos;
+        }
+
+        /**
+         * @return how long the span took, or 0 if it was never closed.
+         */
+        public long getDurationNanos() {
+            return endNanos == 0 ? 0 : endNanos - startNanos;
+        }
+
+        public List<Span> getChildren() {
+            return children == null ? Collections.emptyList() : children;
+        }
+    }
+}
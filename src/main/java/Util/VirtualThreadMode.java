@@ -0,0 +1,62 @@
+package Util;
+
+import java.util.concurrent.Executor;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in mode, enabled with -Dserver.virtualThreads=true on a Java 21 runtime, in which Jetty runs every request
+ * on its own virtual thread instead of a thread from its bounded pool. Blocking JDBC calls then park a cheap
+ * virtual thread rather than tying up a platform thread and its stack.
+ *
+ * Code on the request path must not block while holding a monitor, or the virtual thread pins its carrier. The
+ * connection pool and the other DAO-path locks therefore use java.util.concurrent locks instead of synchronized.
+ */
+public final class VirtualThreadMode {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadMode.class);
+
+    /**
+     * True when the mode was requested and the runtime supports virtual threads.
+     */
+    public static final boolean ENABLED = resolve();
+
+    // same bounds Javalin gives its default Jetty pool; with virtual threads they only apply to Jetty's own threads
+    private static final int MAX_THREADS = 250;
+    private static final int MIN_THREADS = 8;
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private VirtualThreadMode() {
+    }
+
+    /**
+     * @return a Jetty server whose thread pool dispatches requests on virtual threads.
+     */
+    public static Server newServer() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(MAX_THREADS, MIN_THREADS, IDLE_TIMEOUT_MILLIS);
+        threadPool.setName("JettyServerThreadPool");
+        threadPool.setUseVirtualThreads(true);
+        return new Server(threadPool);
+    }
+
+    /**
+     * An executor for blocking work that must not run while a monitor is held, such as a cache load that would
+     * otherwise run inside ConcurrentHashMap.compute. In virtual thread mode each task gets a virtual thread;
+     * otherwise the task simply runs on the calling thread.
+     * @return the executor to run blocking loads on.
+     */
+    public static Executor blockingExecutor() {
+        return ENABLED ? VirtualThreads::executeOnVirtualThread : Runnable::run;
+    }
+
+    private static boolean resolve() {
+        if (!Boolean.getBoolean("server.virtualThreads")) return false;
+        if (VirtualThreads.areSupported()) return true;
+        logger.warn("server.virtualThreads was requested but this runtime ({}) has no virtual threads; using platform threads",
+            System.getProperty("java.version"));
+        return false;
+    }
+}
@@ -0,0 +1,3 @@
+-- GET /accounts/{account_id}/messages filters on posted_by and will order by time_posted_epoch,
+-- so one composite index serves both without scanning the message table.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch);
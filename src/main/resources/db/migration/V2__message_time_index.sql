@@ -0,0 +1,6 @@
+-- GET /messages?since=&until= reads a time_posted_epoch range in time order, with message_id breaking ties, so
+-- the range is read straight off this index, already sorted, whatever the size of the table.
+create index if not exists message_time_idx on message (time_posted_epoch, message_id);
+-- the per-account range needs the same tie-break to come back sorted, which makes the V1 index a prefix of this one.
+create index if not exists message_posted_by_time_id_idx on message (posted_by, time_posted_epoch, message_id);
+drop index if exists message_posted_by_time_idx;
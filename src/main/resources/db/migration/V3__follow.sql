@@ -0,0 +1,8 @@
+-- who follows whom, behind POST/DELETE /accounts/{account_id}/follow and GET /accounts/{account_id}/timeline.
+-- There are no foreign keys to account: with -Dstorage.engine=columnar new accounts only exist in the columnar
+-- store, so FollowService checks that both accounts exist instead.
+create table if not exists follow (
+    follower_id int not null,
+    followee_id int not null,
+    primary key (follower_id, followee_id)
+);
@@ -0,0 +1,45 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.AccountIdIndex;
+
+public class AccountIdIndexTest {
+
+    /**
+     * Only ids that were added should be reported as present, including ids past the initial capacity.
+     */
+    @Test
+    public void containsOnlyAddedIds() {
+        AccountIdIndex index = new AccountIdIndex();
+        index.add(1);
+        index.add(100_000);
+
+        Assert.assertTrue(index.contains(1));
+        Assert.assertTrue(index.contains(100_000));
+        Assert.assertFalse(index.contains(2));
+        Assert.assertFalse(index.contains(100_001));
+        Assert.assertFalse(index.contains(-1));
+    }
+
+    /**
+     * Ids added concurrently while the bitset grows should all be kept.
+     */
+    @Test
+    public void concurrentAddsSurviveGrowth() throws InterruptedException {
+        AccountIdIndex index = new AccountIdIndex();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int id = offset; id < 200_000; id += 4) index.add(id);
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        for (int id = 0; id < 200_000; id++) Assert.assertTrue("missing " + id, index.contains(id));
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.AccountMessageIndex;
+import Service.MessageService;
+
+public class AccountMessageIndexTest {
+
+    /**
+     * Ids should come back ordered by time_posted_epoch whatever order the messages were added in, and a deleted
+     * message should drop out.
+     */
+    @Test
+    public void idsAreTimeOrdered() {
+        AccountMessageIndex index = new AccountMessageIndex();
+        index.add(new Message(1, 1, "a", 300));
+        index.add(new Message(2, 2, "b", 100));
+        index.add(new Message(3, 1, "c", 100));
+        index.add(new Message(4, 1, "d", 200));
+        index.add(new Message(5, 1, "e", 400));
+        Assert.assertArrayEquals(new int[] { 3, 4, 1, 5 }, index.messageIds(1));
+
+        index.remove(new Message(1, 1, "a", 300));
+        Assert.assertArrayEquals(new int[] { 3, 4, 5 }, index.messageIds(1));
+        index.remove(new Message(2, 2, "b", 100));
+        Assert.assertArrayEquals(new int[0], index.messageIds(2));
+        Assert.assertEquals(1, index.accountCount());
+    }
+
+    /**
+     * An account's messages should be resolved through the index and the message cache, oldest first, with the
+     * misses read by id in one query and the table never filtered by posted_by.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void accountReadsUseIndexAndCache() {
+        MessageDAO messageDAO = Mockito.mock(MessageDAO.class);
+        Mockito.when(messageDAO.openAllMessagesCursor()).thenReturn(new MessageCursor() {
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        Mockito.when(messageDAO.insertNewMessages(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            int id = 1;
+            for (Message message : (List<Message>) invocation.getArgument(0)) message.setMessage_id(id++);
+            return true;
+        });
+        Mockito.when(messageDAO.selectMessagesByIds(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            List<Message> found = new ArrayList<>();
+            for (int id : (Collection<Integer>) invocation.getArgument(0)) found.add(new Message(id, 1, "first", 20));
+            return found;
+        });
+        MessageService messageService = new MessageService(messageDAO, null);
+        messageService.createNewMessages(List.of(new Message(1, "first", 20), new Message(1, "second", 10)), id -> true);
+        messageService.getMessageCache().invalidate(1);
+
+        List<Message> messages = new ArrayList<>();
+        try (MessageCursor cursor = messageService.streamMessagesByAccountId(1)) {
+            cursor.forEachRemaining(messages::add);
+        }
+        Assert.assertEquals(List.of(new Message(2, 1, "second", 10), new Message(1, 1, "first", 20)), messages);
+        Mockito.verify(messageDAO, Mockito.times(1)).selectMessagesByIds(List.of(1));
+        Mockito.verify(messageDAO, Mockito.never()).openUserMessagesCursor(ArgumentMatchers.anyInt());
+    }
+
+    /**
+     * A long list should be read through the cache DEFAULT_PAGE_SIZE ids at a time, as the cursor reaches them.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void accountReadsAreChunked() {
+        MessageDAO messageDAO = Mockito.mock(MessageDAO.class);
+        Mockito.when(messageDAO.openAllMessagesCursor()).thenReturn(new MessageCursor() {
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        Mockito.when(messageDAO.insertNewMessages(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            int id = 1;
+            for (Message message : (List<Message>) invocation.getArgument(0)) message.setMessage_id(id++);
+            return true;
+        });
+        Mockito.when(messageDAO.selectMessagesByIds(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            List<Message> found = new ArrayList<>();
+            for (int id : (Collection<Integer>) invocation.getArgument(0)) found.add(new Message(id, 1, "message", id));
+            return found;
+        });
+        MessageService messageService = new MessageService(messageDAO, null);
+        int count = MessageService.DEFAULT_PAGE_SIZE * 2 + 1;
+        List<Message> batch = new ArrayList<>();
+        for (int i = 1; i <= count; i++) batch.add(new Message(1, "message", i));
+        messageService.createNewMessages(batch, id -> true);
+        for (int id = 1; id <= count; id++) messageService.getMessageCache().invalidate(id);
+
+        try (MessageCursor cursor = messageService.streamMessagesByAccountId(1)) {
+            Assert.assertEquals(1, cursor.next().getMessage_id());
+            Mockito.verify(messageDAO, Mockito.times(1)).selectMessagesByIds(ArgumentMatchers.any());
+            int read = 1;
+            while (cursor.hasNext()) Assert.assertEquals(++read, cursor.next().getMessage_id());
+            Assert.assertEquals(count, read);
+        }
+        Mockito.verify(messageDAO, Mockito.times(3)).selectMessagesByIds(ArgumentMatchers.any());
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.BoundedExecutor;
+
+public class BoundedExecutorTest {
+    BoundedExecutor pool;
+    CountDownLatch release;
+
+    /**
+     * Before every test, create a pool with one worker and room for one waiting task.
+     */
+    @Before
+    public void setUp() {
+        pool = new BoundedExecutor("test", 1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        pool.shutdown();
+    }
+
+    /**
+     * With the worker busy and the queue full, the next task should be rejected straight away and counted.
+     */
+    @Test
+    public void saturatedPoolRejects() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        pool.supply(() -> {
+            started.countDown();
+            awaitRelease();
+            return 1;
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        pool.supply(() -> 2);
+        Assert.assertEquals(1, pool.getQueueDepth());
+
+        CompletableFuture<Integer> rejected = pool.supply(() -> 3);
+        try {
+            rejected.get();
+            Assert.fail("expected the third task to be rejected");
+        }
+        catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Assert.assertEquals(1, pool.getRejectedCount());
+        Assert.assertEquals(1, pool.getActiveCount());
+    }
+
+    /**
+     * Once the worker is free again, queued and new tasks should run.
+     */
+    @Test
+    public void queuedTasksRunAfterRelease() throws Exception {
+        pool.supply(() -> {
+            awaitRelease();
+            return 1;
+        });
+        CompletableFuture<Integer> queued = pool.supply(() -> 2);
+        release.countDown();
+
+        Assert.assertEquals(Integer.valueOf(2), queued.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(3), pool.supply(() -> 3).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, pool.getRejectedCount());
+    }
+
+    /**
+     * With a thread per task the same bounds should hold: one task running, one waiting, the next rejected.
+     */
+    @Test
+    public void threadPerTaskPoolKeepsBounds() throws Exception {
+        pool.shutdown();
+        pool = new BoundedExecutor("test", 1, 1, runnable -> new Thread(runnable).start());
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Integer> first = pool.supply(() -> {
+            started.countDown();
+            awaitRelease();
+            return 1;
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Integer> queued = pool.supply(() -> 2);
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getQueueDepth());
+
+        CompletableFuture<Integer> rejected = pool.supply(() -> 3);
+        Assert.assertTrue(rejected.isCompletedExceptionally());
+        Assert.assertEquals(1, pool.getRejectedCount());
+
+        release.countDown();
+        Assert.assertEquals(Integer.valueOf(1), first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(2), queued.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(4), pool.supply(() -> 4).get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, pool.getActiveCount());
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
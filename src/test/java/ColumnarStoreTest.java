@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ColumnarAccountDAO;
+import DAO.ColumnarMessageDAO;
+import DAO.ColumnarStore;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class ColumnarStoreTest {
+    Path dir;
+    ColumnarStore store;
+    ColumnarMessageDAO messageDAO;
+
+    /**
+     * Before every test, reset the database and open a store in an empty directory, which imports the seed rows.
+     */
+    @Before
+    public void setUp() throws IOException {
+        ConnectionUtil.resetTestDatabase();
+        dir = Files.createTempDirectory("columnar");
+        open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * The seed rows should be imported from H2, and writes should be replayed from the log after a restart.
+     */
+    @Test
+    public void logIsReplayedOnRestart() throws IOException {
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messageDAO.selectMessageById(1));
+        messageDAO.insertNewMessage(new Message(1, "second \u00e9", 1669947793));
+        messageDAO.insertNewMessages(List.of(new Message(1, "third", 1669947794), new Message(1, "fourth", 1669947795)));
+        messageDAO.updateMessage(2, new Message(1, "second, edited", 0));
+        messageDAO.deleteMessageById(1);
+        new ColumnarAccountDAO(store).insertNewAccount(new Account("testuser2", "password"));
+        new ColumnarAccountDAO(store).updatePassword(1, "rehashed");
+
+        reopen();
+        Assert.assertEquals(List.of(new Message(2, 1, "second, edited", 1669947793),
+            new Message(3, 1, "third", 1669947794), new Message(4, 1, "fourth", 1669947795)),
+            messageDAO.selectAllMessages());
+        Assert.assertEquals(new Account(2, "testuser2", "password"), new ColumnarAccountDAO(store).selectAccountByUsername("testuser2"));
+        Assert.assertEquals(new Account(1, "testuser1", "rehashed"), new ColumnarAccountDAO(store).selectAccountByUsername("testuser1"));
+        Assert.assertEquals(5, messageDAO.insertNewMessage(new Message(1, "fifth", 0)).getMessage_id());
+    }
+
+    /**
+     * A snapshot should empty the log and keep only the live rows, and a restart should load it.
+     */
+    @Test
+    public void snapshotCompactsAndEmptiesLog() throws IOException {
+        for (int i = 0; i < 10; i++) messageDAO.insertNewMessage(new Message(1, "message " + i, i));
+        for (int id = 2; id <= 10; id += 2) messageDAO.deleteMessageById(id);
+        store.snapshot();
+        Assert.assertEquals(0, store.getLogBytes());
+
+        reopen();
+        Assert.assertEquals(6, messageDAO.selectAllMessages().size());
+        Assert.assertEquals(List.of(new Message(9, 1, "message 7", 7), new Message(11, 1, "message 9", 9)),
+            messageDAO.selectMessagesAfter(7, 2));
+        Assert.assertEquals(12, messageDAO.insertNewMessage(new Message(1, "next", 0)).getMessage_id());
+    }
+
+    /**
+     * A record cut short by a crash should be dropped on restart, keeping every whole record before it.
+     */
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        messageDAO.insertNewMessage(new Message(1, "kept", 1));
+        store.close();
+        Files.write(dir.resolve("wal.log"), new byte[] { 0, 0, 0, 40, 2, 0 }, StandardOpenOption.APPEND);
+
+        open();
+        Assert.assertEquals("kept", messageDAO.selectMessageById(2).getMessage_text());
+        Assert.assertEquals(3, messageDAO.insertNewMessage(new Message(1, "after", 2)).getMessage_id());
+    }
+
+    /**
+     * Like the H2 table, the store should refuse an unknown posted_by or a message_text over 255 characters.
+     */
+    @Test
+    public void refusesWhatH2Refuses() {
+        Assert.assertNull(messageDAO.insertNewMessage(new Message(99, "no such account", 0)));
+        Assert.assertNull(messageDAO.insertNewMessage(new Message(1, "a".repeat(256), 0)));
+        Assert.assertFalse(messageDAO.insertNewMessages(List.of(new Message(1, "ok", 0), new Message(99, "bad", 0))));
+        Assert.assertEquals(1, messageDAO.selectAllMessages().size());
+    }
+
+    /**
+     * An import that fails should be reported and retried on the next call, instead of leaving the store empty.
+     */
+    @Test
+    public void failedImportIsRetried() throws Exception {
+        store.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        try (Connection connection = ConnectionUtil.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE message");
+        }
+        open();
+        try {
+            messageDAO.selectMessageById(1);
+            Assert.fail("expected the import to fail");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertFalse(Files.exists(dir.resolve("snapshot.bin")));
+
+        ConnectionUtil.resetTestDatabase();
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), messageDAO.selectMessageById(1));
+    }
+
+    /**
+     * An import whose snapshot cannot be written should stay pending, so writes made once it succeeds survive a
+     * restart instead of being dropped along with a log that has no snapshot under it.
+     */
+    @Test
+    public void failedImportSnapshotIsRetried() throws Exception {
+        store.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) Files.delete(file);
+        }
+        Path blocker = Files.createDirectory(dir.resolve("snapshot.bin.tmp"));
+        open();
+        try {
+            messageDAO.insertNewMessage(new Message(1, "lost", 1));
+            Assert.fail("expected the snapshot to fail");
+        }
+        catch (UncheckedIOException e) {
+            // expected
+        }
+
+        Files.delete(blocker);
+        Assert.assertEquals(2, messageDAO.insertNewMessage(new Message(1, "kept", 2)).getMessage_id());
+        reopen();
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792), new Message(2, 1, "kept", 2)),
+            messageDAO.selectAllMessages());
+    }
+
+    private void open() throws IOException {
+        store = new ColumnarStore(dir, false);
+        messageDAO = new ColumnarMessageDAO(store);
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        open();
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 again with the ETag of the first response
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body, answered from the version stamp alone: the row is deleted behind the
+     *  service's back first, and the database is never asked
+     */
+    @Test
+    public void getMessageByIdNotModified() throws IOException, InterruptedException, SQLException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement("DELETE FROM message WHERE message_id = 1")) {
+            preparedStatement.executeUpdate();
+        }
+        HttpResponse<String> second = get("/messages/1", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+    }
+
+    /**
+     * A PATCH through the API should change the ETag of the message, of its account's list and of the table.
+     *
+     * Expected Response:
+     *  Status Code: 200 for each old ETag, with a new ETag
+     */
+    @Test
+    public void updateChangesEtags() throws IOException, InterruptedException {
+        String[] paths = { "/messages/1", "/accounts/1/messages", "/messages?limit=10" };
+        String[] etags = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            etags[i] = get(paths[i], null).headers().firstValue("ETag").orElseThrow();
+            Assert.assertEquals(304, get(paths[i], etags[i]).statusCode());
+        }
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        for (int i = 0; i < paths.length; i++) {
+            HttpResponse<String> response = get(paths[i], etags[i]);
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertTrue(response.body().contains("updated message"));
+            Assert.assertNotEquals(etags[i], response.headers().firstValue("ETag").orElseThrow());
+        }
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
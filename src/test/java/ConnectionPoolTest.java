@@ -0,0 +1,172 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+    ConnectionPool pool;
+
+    /**
+     * Before every test, point a fresh data source at a private in-memory database.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    /**
+     * Closing a borrowed connection should hand it back to the pool rather than closing it.
+     */
+    @Test
+    public void closedConnectionReturnsToPool() throws SQLException {
+        pool = new ConnectionPool(dataSource, 1, 2, 1000, 60000, 0, 8);
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        Connection connection = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getTotalCount());
+    }
+
+    /**
+     * Borrowing past maxSize should time out instead of opening another physical connection.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 100, 60000, 0, 8);
+        Connection connection = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("expected the second borrow to time out");
+        }
+        catch (SQLException e) {
+            Assert.assertEquals(1, pool.getTotalCount());
+        }
+        connection.close();
+        pool.getConnection().close();
+    }
+
+    /**
+     * A connection returned with an open transaction should come back rolled back and in autocommit mode.
+     */
+    @Test
+    public void returnedConnectionIsReset() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 60000, 0, 8);
+        Connection connection = pool.getConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+
+        Connection reused = pool.getConnection();
+        Assert.assertTrue(reused.getAutoCommit());
+        reused.close();
+    }
+
+    /**
+     * Preparing the same SQL on a later borrow should reuse the cached statement with its parameters cleared.
+     */
+    @Test
+    public void preparedStatementsAreCachedAcrossBorrows() throws SQLException {
+        pool = new ConnectionPool(dataSource, 0, 1, 1000, 60000, 0, 8);
+        String sql = "SELECT ? + 1";
+
+        Connection connection = pool.getConnection();
+        PreparedStatement first = connection.prepareStatement(sql);
+        first.setInt(1, 41);
+        try (ResultSet rs = first.executeQuery()) {
+            rs.next();
+            Assert.assertEquals(42, rs.getInt(1));
+        }
+        first.close();
+        connection.close();
+        Assert.assertEquals(1, pool.getStatementCacheMisses());
+
+        connection = pool.getConnection();
+        PreparedStatement second = connection.prepareStatement(sql);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, pool.getStatementCacheHits());
+        try {
+            second.executeQuery();
+            Assert.fail("expected the cleared parameter to be reported as missing");
+        }
+        catch (SQLException e) {
+            // parameters from the previous borrower must not leak into this one
+        }
+        second.close();
+        connection.close();
+    }
+
+    /**
+     * A closed pool should refuse new borrowers and close a connection returned to it rather than lend it again.
+     */
+    @Test
+    public void closedPoolClosesReturnedConnections() throws SQLException {
+        pool = new ConnectionPool(dataSource, 1, 2, 1000, 60000, 0, 8);
+        Connection connection = pool.getConnection();
+        pool.close();
+        try {
+            pool.getConnection();
+            Assert.fail("expected a closed pool to refuse the borrow");
+        }
+        catch (SQLException e) {
+            Assert.assertEquals(1, pool.getTotalCount());
+        }
+        connection.close();
+        Assert.assertEquals(0, pool.getTotalCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+    }
+
+    /**
+     * Returning a connection whose cached statements can not be reset should drop them from the cache, however
+     * many there are, and keep the connection.
+     */
+    @Test
+    public void statementsThatFailToResetAreDropped() throws SQLException {
+        Connection physical = Mockito.mock(Connection.class);
+        Mockito.when(physical.getAutoCommit()).thenReturn(true);
+        Mockito.when(physical.prepareStatement(Mockito.anyString(), Mockito.anyInt())).thenAnswer(invocation -> {
+            PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+            Mockito.doThrow(new SQLException("reset failed")).when(statement).clearParameters();
+            return statement;
+        });
+        DataSource failingDataSource = Mockito.mock(DataSource.class);
+        Mockito.when(failingDataSource.getConnection()).thenReturn(physical);
+        pool = new ConnectionPool(failingDataSource, 0, 1, 1000, 60000, 0, 8);
+
+        Connection connection = pool.getConnection();
+        connection.prepareStatement("SELECT 1");
+        connection.prepareStatement("SELECT 2");
+        connection.prepareStatement("SELECT 3");
+        connection.close();
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        connection = pool.getConnection();
+        connection.prepareStatement("SELECT 1");
+        Assert.assertEquals(4, pool.getStatementCacheMisses());
+        connection.close();
+    }
+}
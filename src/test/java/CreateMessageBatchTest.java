@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Service.MessageService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with two valid messages, one blank message
+     * and one from a user that does not exist
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, with generated ids for the valid ones and errors for the rest
+     */
+    @Test
+    public void createMessageBatchPartialFailure() throws IOException, InterruptedException {
+        HttpResponse<String> response = post("[" +
+                "{\"posted_by\":1,\"message_text\":\"batch message 1\",\"time_posted_epoch\":1669947793}," +
+                "{\"posted_by\":1,\"message_text\":\"\",\"time_posted_epoch\":1669947794}," +
+                "{\"posted_by\":2,\"message_text\":\"no such user\",\"time_posted_epoch\":1669947795}," +
+                "{\"posted_by\":1,\"message_text\":\"batch message 2\",\"time_posted_epoch\":1669947796}]");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(), new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(new Message(2, 1, "batch message 1", 1669947793), results.get(0).getMessage());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertNotNull(results.get(2).getError());
+        Assert.assertEquals(new Message(3, 1, "batch message 2", 1669947796), results.get(3).getMessage());
+
+        HttpResponse<String> all = webClient.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages")).build(), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(3, objectMapper.readValue(all.body(), new TypeReference<List<Message>>(){}).size());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with an empty array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessageBatchEmpty() throws IOException, InterruptedException {
+        Assert.assertEquals(400, post("[]").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with one message more than allowed
+     *
+     * Expected Response:
+     *  Status Code: 400, and none of the messages created
+     */
+    @Test
+    public void createMessageBatchTooLarge() throws IOException, InterruptedException {
+        String message = "{\"posted_by\":1,\"message_text\":\"batch\",\"time_posted_epoch\":1669947792}";
+        String body = "[" + String.join(",", Collections.nCopies(MessageService.MAX_BATCH_SIZE + 1, message)) + "]";
+        Assert.assertEquals(400, post(body).statusCode());
+
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages")).build();
+        Assert.assertFalse(webClient.send(request, HttpResponse.BodyHandlers.ofString()).body().contains("\"batch\""));
+    }
+
+    private HttpResponse<String> post(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
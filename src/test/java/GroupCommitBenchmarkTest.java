@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitMessageWriter;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * Compares concurrent single-message inserts through the direct autocommit path and the group-commit path.
+ * Only runs when asked for with -Dbench=true, e.g. mvn test -Dtest=GroupCommitBenchmarkTest -Dbench=true
+ */
+public class GroupCommitBenchmarkTest {
+    static final int THREADS = Integer.getInteger("bench.threads", 32);
+    static final int INSERTS_PER_THREAD = Integer.getInteger("bench.inserts", 500);
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void compareInsertPaths() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        run("direct", new MessageService(new MessageDAO(), null));
+
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        try (GroupCommitMessageWriter writer = new GroupCommitMessageWriter(messageDAO)) {
+            run("group-commit", new MessageService(messageDAO, writer));
+        }
+    }
+
+    private void run(String name, MessageService messageService) throws InterruptedException {
+        long[] latencies = new long[THREADS * INSERTS_PER_THREAD];
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * INSERTS_PER_THREAD;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < INSERTS_PER_THREAD; i++) {
+                    long start = System.nanoTime();
+                    if (messageService.createNewMessage(new Message(1, "benchmark message " + i, 1669947792)) == null) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[offset + i] = System.nanoTime() - start;
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-13s %d threads x %d inserts: %.0f inserts/s, p50 %.1f us, p99 %.1f us, failures %d%n",
+            name, THREADS, INSERTS_PER_THREAD, latencies.length / seconds,
+            latencies[latencies.length / 2] / 1e3, latencies[(int) (latencies.length * 0.99)] / 1e3, failures.get());
+    }
+}
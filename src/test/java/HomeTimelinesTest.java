@@ -0,0 +1,94 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Follow;
+import Model.Message;
+import Service.AccountMessageIndex;
+import Service.FollowGraph;
+import Service.HomeTimelines;
+
+public class HomeTimelinesTest {
+
+    /**
+     * A ring should keep only the newest capacity messages, in time order whatever order they arrive in, and fill
+     * itself from the per-account index on the first read.
+     */
+    @Test
+    public void ringKeepsNewestMessages() {
+        AccountMessageIndex index = new AccountMessageIndex();
+        FollowGraph graph = new FollowGraph();
+        HomeTimelines timelines = new HomeTimelines(index, graph, 3, 10, 10);
+        graph.add(new Follow(1, 2));
+        created(index, timelines, new Message(1, 2, "a", 100));
+        created(index, timelines, new Message(2, 2, "b", 200));
+        Assert.assertArrayEquals(new int[] { 2, 1 }, timelines.messageIds(1, 10));
+
+        created(index, timelines, new Message(3, 2, "c", 400));
+        created(index, timelines, new Message(4, 2, "d", 300));
+        created(index, timelines, new Message(5, 2, "e", 50));
+        Assert.assertArrayEquals(new int[] { 3, 4, 2 }, timelines.messageIds(1, 10));
+        Assert.assertArrayEquals(new int[] { 3, 4 }, timelines.messageIds(1, 2));
+
+        Message removed = new Message(4, 2, "d", 300);
+        index.remove(removed);
+        timelines.removed(removed);
+        Assert.assertArrayEquals(new int[] { 3, 2 }, timelines.messageIds(1, 10));
+        Assert.assertEquals(1, timelines.ringCount());
+    }
+
+    /**
+     * An account with more followers than the fan-out threshold should not be written into rings, but its
+     * messages should still be merged into its followers' timelines when they read.
+     */
+    @Test
+    public void popularAccountsArePulledOnRead() {
+        AccountMessageIndex index = new AccountMessageIndex();
+        FollowGraph graph = new FollowGraph();
+        HomeTimelines timelines = new HomeTimelines(index, graph, 10, 10, 2);
+        for (int follower_id = 1; follower_id <= 3; follower_id++) graph.add(new Follow(follower_id, 9));
+        graph.add(new Follow(1, 2));
+        Assert.assertArrayEquals(new int[0], timelines.messageIds(1, 10));
+
+        created(index, timelines, new Message(1, 9, "popular", 100));
+        created(index, timelines, new Message(2, 2, "fanned out", 200));
+        created(index, timelines, new Message(3, 9, "popular again", 300));
+        Assert.assertArrayEquals(new int[] { 3, 2, 1 }, timelines.messageIds(1, 10));
+        Assert.assertArrayEquals(new int[] { 3, 1 }, timelines.messageIds(3, 10));
+
+        Follow unfollow = new Follow(1, 9);
+        graph.remove(unfollow);
+        timelines.unfollowed(unfollow);
+        Assert.assertArrayEquals(new int[] { 2 }, timelines.messageIds(1, 10));
+    }
+
+    /**
+     * A newly followed account's existing messages should be added to a ring that is already filled, and an
+     * unfollowed account's removed from it.
+     */
+    @Test
+    public void followChangesUpdateRing() {
+        AccountMessageIndex index = new AccountMessageIndex();
+        FollowGraph graph = new FollowGraph();
+        HomeTimelines timelines = new HomeTimelines(index, graph, 10, 10, 10);
+        graph.add(new Follow(1, 2));
+        created(index, timelines, new Message(1, 2, "a", 100));
+        created(index, timelines, new Message(2, 3, "b", 200));
+        Assert.assertArrayEquals(new int[] { 1 }, timelines.messageIds(1, 10));
+
+        Follow follow = new Follow(1, 3);
+        graph.add(follow);
+        timelines.followed(follow);
+        Assert.assertArrayEquals(new int[] { 2, 1 }, timelines.messageIds(1, 10));
+
+        Follow unfollow = new Follow(1, 2);
+        graph.remove(unfollow);
+        timelines.unfollowed(unfollow);
+        Assert.assertArrayEquals(new int[] { 2 }, timelines.messageIds(1, 10));
+    }
+
+    // what MessageService does once a message is stored
+    private static void created(AccountMessageIndex index, HomeTimelines timelines, Message message) {
+        index.add(message);
+        timelines.fanOut(message);
+    }
+}
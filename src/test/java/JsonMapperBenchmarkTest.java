@@ -0,0 +1,28 @@
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import Util.ModelJsonMapperBenchmark;
+
+/**
+ * Runs the JMH comparison of the hand-written JSON codecs against Javalin's reflective Jackson mapper.
+ * Only runs when asked for with -Dbench=true, e.g. mvn test -Dtest=JsonMapperBenchmarkTest -Dbench=true
+ */
+public class JsonMapperBenchmarkTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void compareMappers() throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(ModelJsonMapperBenchmark.class.getName())
+            .addProfiler("gc")
+            .build()).run();
+    }
+}
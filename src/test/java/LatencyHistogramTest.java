@@ -0,0 +1,43 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LatencyHistogram;
+
+public class LatencyHistogramTest {
+    /**
+     * Counts below a power of two should be exact, and percentiles should be no more than an eighth above the
+     * value they stand for.
+     */
+    @Test
+    public void bucketsAreExactAtPowersOfTwoAndCloseElsewhere() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) histogram.record(nanos);
+        Assert.assertEquals(100_000, histogram.count());
+        Assert.assertEquals(100_000L * 100_001 / 2, histogram.sumNanos());
+        Assert.assertEquals(1023, histogram.countBelow(1024));
+        Assert.assertEquals(65_535, histogram.countBelow(65_536));
+        Assert.assertEquals(100_000, histogram.countBelow(1L << 17));
+
+        for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+            long exact = (long) Math.ceil(quantile * 100_000);
+            long reported = histogram.percentile(quantile);
+            Assert.assertTrue(quantile + ": " + reported, reported > exact && reported <= exact + exact / 8 + 1);
+        }
+    }
+
+    /**
+     * An empty histogram should report 0, negative durations should be recorded as 0, and the largest durations
+     * should land in the last buckets rather than overflow.
+     */
+    @Test
+    public void extremesAreRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.percentile(0.99));
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(2, histogram.count());
+        Assert.assertEquals(1, histogram.countBelow(1));
+        Assert.assertEquals(1, histogram.percentile(0.5));
+        Assert.assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+    }
+}
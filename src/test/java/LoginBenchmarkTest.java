@@ -0,0 +1,65 @@
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Service.CredentialCache;
+import Service.PasswordHasher;
+import Util.ConnectionUtil;
+
+/**
+ * Measures logins per second on one thread (so per core) through AccountService at each PBKDF2 cost in
+ * bench.iterations, with the credential cache disabled and then enabled. Only runs when asked for with
+ * -Dbench=true, e.g. mvn test -Dtest=LoginBenchmarkTest -Dbench=true
+ */
+public class LoginBenchmarkTest {
+    static final String ITERATIONS = System.getProperty("bench.iterations", "10000,100000,310000,600000");
+    static final long MILLIS = Long.getLong("bench.millis", 3_000);
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void loginsPerSecondByCost() {
+        try {
+            for (String setting : ITERATIONS.split(",")) {
+                int iterations = Integer.parseInt(setting.trim());
+                ConnectionUtil.resetTestDatabase();
+                PasswordHasher passwordHasher = new PasswordHasher(iterations);
+                AccountService uncached = new AccountService(new AccountDAO(), passwordHasher, new CredentialCache() {
+                    // every login derives the key
+                    @Override
+                    public boolean contains(String username, String stored, String password) {
+                        return false;
+                    }
+                });
+                Assert.assertNotNull(uncached.registerNewAccount(new Account("bench", "password")));
+                AccountService cached = new AccountService(new AccountDAO(), passwordHasher, new CredentialCache());
+
+                System.out.printf("%,9d iterations: %,10.1f logins/s uncached, %,10.1f logins/s cached%n",
+                    iterations, loginsPerSecond(uncached), loginsPerSecond(cached));
+            }
+        }
+        finally {
+            ConnectionUtil.resetTestDatabase();
+        }
+    }
+
+    private static double loginsPerSecond(AccountService accountService) {
+        // warm up the JIT and, for the cached service, the cache
+        for (int i = 0; i < 3; i++) Assert.assertNotNull(accountService.login(new Account("bench", "password")));
+        long logins = 0;
+        long start = System.nanoTime();
+        long end = start + MILLIS * 1_000_000;
+        while (System.nanoTime() < end) {
+            Assert.assertNotNull(accountService.login(new Account("bench", "password")));
+            logins++;
+        }
+        return logins / ((System.nanoTime() - start) / 1e9);
+    }
+}
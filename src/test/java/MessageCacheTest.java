@@ -0,0 +1,104 @@
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageCache;
+import Service.MessageService;
+import Util.Metrics;
+
+public class MessageCacheTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, put a MessageService in front of a mock MessageDAO so database reads can be counted.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = Mockito.mock(MessageDAO.class);
+        Mockito.when(messageDAO.selectMessageById(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+        messageService = new MessageService(messageDAO);
+    }
+
+    /**
+     * Repeated reads of the same message should only reach the database once.
+     */
+    @Test
+    public void repeatedReadsAreCached() {
+        Assert.assertEquals("test message 1", messageService.getMessageById(1).getMessage_text());
+        Assert.assertEquals("test message 1", messageService.getMessageById(1).getMessage_text());
+
+        Mockito.verify(messageDAO, Mockito.times(1)).selectMessageById(1);
+        Assert.assertEquals(1, messageService.getMessageCache().stats().hitCount());
+    }
+
+    /**
+     * Repeated reads of a missing message should be answered from the negative cache.
+     */
+    @Test
+    public void missingMessagesAreNegativelyCached() {
+        Assert.assertNull(messageService.getMessageById(2));
+        Assert.assertNull(messageService.getMessageById(2));
+
+        Mockito.verify(messageDAO, Mockito.times(1)).selectMessageById(2);
+    }
+
+    /**
+     * A delete should invalidate the cached message so the next read goes to the database.
+     */
+    @Test
+    public void deleteInvalidatesCachedMessage() {
+        messageService.getMessageById(1);
+        Mockito.when(messageDAO.deleteMessageById(1)).thenReturn(new Message(1, 1, "test message 1", 1669947792));
+        Mockito.when(messageDAO.selectMessageById(1)).thenReturn(null);
+
+        Assert.assertNotNull(messageService.deleteMessageById(1));
+        Assert.assertNull(messageService.getMessageById(1));
+    }
+
+    /**
+     * An update should replace the cached message so the next read sees the new text without a query.
+     */
+    @Test
+    public void updateReplacesCachedMessage() {
+        messageService.getMessageById(1);
+        Message update = new Message();
+        update.setMessage_text("updated message");
+        Mockito.when(messageDAO.updateMessage(1, update)).thenReturn(new Message(1, 1, "updated message", 1669947792));
+
+        Assert.assertNotNull(messageService.updateMessage(1, update));
+        Assert.assertEquals("updated message", messageService.getMessageById(1).getMessage_text());
+        Mockito.verify(messageDAO, Mockito.times(1)).selectMessageById(1);
+    }
+
+    /**
+     * A read whose query failed should not be cached as missing, so the next read goes back to the database.
+     */
+    @Test
+    public void failedLoadsAreNotCached() {
+        Message message = new Message(2, 1, "test message 2", 1669947793);
+        Mockito.when(messageDAO.selectMessageById(2)).then(invocation -> {
+            Metrics.queryFailed(new SQLException("connection lost"));
+            return null;
+        }).thenReturn(message);
+        Mockito.when(messageDAO.selectMessagesByIds(Mockito.anyCollection())).then(invocation -> {
+            Metrics.queryFailed(new SQLException("connection lost"));
+            return new ArrayList<Message>();
+        }).thenReturn(new ArrayList<>(List.of(message)));
+        MessageCache cache = messageService.getMessageCache();
+
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals(message, cache.get(2));
+        cache.invalidate(2);
+        Assert.assertEquals(List.of(), cache.getAll(new int[] { 2 }));
+        Assert.assertEquals(List.of(message), cache.getAll(new int[] { 2 }));
+    }
+}
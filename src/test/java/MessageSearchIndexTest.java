@@ -0,0 +1,94 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.stream.StreamSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.MessageCursor;
+import Model.Message;
+import Service.MessageSearchIndex;
+
+public class MessageSearchIndexTest {
+
+    /**
+     * Terms should be the lower-cased runs of letters and digits, whatever separates them.
+     */
+    @Test
+    public void tokenizeSplitsOnNonLetters() {
+        Assert.assertEquals(List.of("caf\u00e9", "is", "open", "24", "7"), MessageSearchIndex.tokenize("Caf\u00e9 is OPEN 24/7!"));
+        Assert.assertEquals(List.of(), MessageSearchIndex.tokenize(" -- "));
+        Assert.assertNull(MessageSearchIndex.parse(" ?! "));
+    }
+
+    /**
+     * Ids added out of order or far apart should come back in descending order, and removing one or changing its
+     * text should only touch the terms that changed.
+     */
+    @Test
+    public void postingsFollowAddUpdateAndRemove() {
+        MessageSearchIndex index = new MessageSearchIndex();
+        index.add(new Message(300000, 1, "red apple", 0));
+        index.add(new Message(7, 1, "green apple", 0));
+        index.add(new Message(129, 1, "red apple pie", 0));
+        index.add(new Message(5000000, 1, "apple", 0));
+        Assert.assertArrayEquals(new int[] { 5000000, 300000, 129, 7 }, candidates(index, "apple "));
+        Assert.assertArrayEquals(new int[] { 300000, 129 }, candidates(index, "red ap"));
+
+        index.update(new Message(129, 1, "red apple pie", 0), new Message(129, 1, "apple tart", 0));
+        Assert.assertArrayEquals(new int[] { 300000 }, candidates(index, "red "));
+        Assert.assertArrayEquals(new int[] { 5000000, 300000, 129, 7 }, candidates(index, "apple "));
+        Assert.assertArrayEquals(new int[0], candidates(index, "pie"));
+
+        index.remove(new Message(300000, 1, "red apple", 0));
+        Assert.assertArrayEquals(new int[0], candidates(index, "red "));
+        Assert.assertEquals(3, index.getTermCount());
+        Assert.assertEquals(5, index.getPostingCount());
+    }
+
+    /**
+     * A phrase should only match its words in order and side by side, with the last one as a prefix.
+     */
+    @Test
+    public void phraseNeedsAdjacentWords() {
+        MessageSearchIndex.Query phrase = MessageSearchIndex.parse("\"New Yo\"");
+        Assert.assertTrue(MessageSearchIndex.matches(phrase, "flying to new york"));
+        Assert.assertFalse(MessageSearchIndex.matches(phrase, "york is new"));
+        Assert.assertFalse(MessageSearchIndex.matches(phrase, "new and york"));
+        Assert.assertTrue(MessageSearchIndex.matches(MessageSearchIndex.parse("york new"), "new and york"));
+    }
+
+    /**
+     * Loading the table should keep what add() recorded before it, and the same id under a term only once.
+     */
+    @Test
+    public void loadMergesEarlierWrites() {
+        MessageSearchIndex index = new MessageSearchIndex();
+        index.add(new Message(9, 1, "late pear", 0));
+        Iterator<Message> rows = List.of(new Message(2, 1, "pear pear plum", 0), new Message(9, 1, "late pear", 0),
+            new Message(5, 1, "plum", 0)).iterator();
+        Assert.assertTrue(index.load(() -> new MessageCursor() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Message next() {
+                return rows.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+        Assert.assertArrayEquals(new int[] { 9, 2 }, candidates(index, "pear "));
+        Assert.assertArrayEquals(new int[] { 5, 2 }, candidates(index, "pl"));
+        Assert.assertEquals(5, index.getPostingCount());
+    }
+
+    private static int[] candidates(MessageSearchIndex index, String q) {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(index.candidates(MessageSearchIndex.parse(q)), 0), false).toArray();
+    }
+}
@@ -0,0 +1,59 @@
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InstrumentedMessageDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.Metrics;
+
+/**
+ * Measures what timing a call costs on one thread: a bare Timer.stop, and a call through InstrumentedMessageDAO
+ * against the same call on the DAO it wraps, with a DAO that answers from memory so only the timing differs. Only
+ * runs when asked for with -Dbench=true, e.g. mvn test -Dtest=MetricsBenchmarkTest -Dbench=true
+ */
+public class MetricsBenchmarkTest {
+    static final int CALLS = Integer.getInteger("bench.calls", 20_000_000);
+    static final int ROUNDS = 5;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void recordingOverhead() {
+        Metrics.Timer timer = Metrics.timer("metrics_benchmark", "case", "stop");
+        MessageDAO bare = new MessageDAO() {
+            private final Message message = new Message(1, 1, "bench", 0);
+
+            @Override
+            public Message selectMessageById(int message_id) {
+                return message;
+            }
+        };
+        MessageDAO instrumented = new InstrumentedMessageDAO(bare);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) timer.stop(System.nanoTime(), Metrics.queryFailures());
+            double stopNanos = (System.nanoTime() - start) / (double) CALLS;
+
+            double bareNanos = nanosPerCall(bare);
+            double instrumentedNanos = nanosPerCall(instrumented);
+            System.out.printf("round %d: Timer.stop %.1f ns, bare call %.1f ns, instrumented call %.1f ns, overhead %.1f ns%n",
+                round, stopNanos, bareNanos, instrumentedNanos, instrumentedNanos - bareNanos);
+            if (round == ROUNDS - 1) Assert.assertTrue(instrumentedNanos - bareNanos < 1_000);
+        }
+    }
+
+    private static double nanosPerCall(MessageDAO messageDAO) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) sum += messageDAO.selectMessageById(i).getMessage_id();
+        double nanos = (System.nanoTime() - start) / (double) CALLS;
+        Assert.assertEquals(CALLS, sum);
+        return nanos;
+    }
+}
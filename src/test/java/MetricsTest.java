@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Metrics;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics after GET localhost:8080/messages/1 and GET
+     * localhost:8080/no-such-route
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with the route timed under its path pattern, the query it ran, the 404 under
+     *  route="unmatched", and the pool and cache gauges
+     */
+    @Test
+    public void metricsCoverRoutesAndQueries() throws IOException, InterruptedException {
+        Assert.assertEquals(200, get("/messages/1").statusCode());
+        Assert.assertEquals(404, get("/no-such-route").statusCode());
+        HttpResponse<String> response = get("/metrics");
+        String body = response.body();
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("text/plain; version=0.0.4; charset=utf-8", response.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertTrue(body.contains("# TYPE http_request_duration_seconds histogram\n"));
+        Assert.assertTrue(body.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"messages/{message_id}\",le=\"+Inf\"} "));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"messages/{message_id}\",status=\"200\"} "));
+        Assert.assertTrue(body.contains("http_requests_total{method=\"GET\",route=\"unmatched\",status=\"404\"} "));
+        Assert.assertTrue(body.contains("# TYPE dao_query_duration_seconds histogram\n"));
+        Assert.assertTrue(body.contains(",method=\"selectMessageById\",quantile=\"0.99\"} "));
+        Assert.assertTrue(body.contains("dao_query_errors_total{dao="));
+        Assert.assertTrue(body.contains("executor_queue_depth{pool=\"read\"} 0\n"));
+        Assert.assertTrue(body.contains("# TYPE executor_rejected_total counter\n"));
+        Assert.assertTrue(body.contains("json_cache_used_bytes "));
+        Assert.assertTrue(body.contains("db_pool_active_connections "));
+        Assert.assertTrue(body.contains("# TYPE db_statement_cache_hits_total counter\n"));
+        Assert.assertTrue(body.contains("# TYPE message_cache_hit_ratio gauge\n"));
+        Assert.assertTrue(body.contains("message_cache_evictions_total "));
+        Assert.assertTrue(body.contains("message_cache_average_load_seconds "));
+    }
+
+    /**
+     * A timed call during which a DAO reported a failed query should count as an error, and one without should not.
+     */
+    @Test
+    public void failedQueriesCountAsErrors() {
+        Metrics.Timer timer = Metrics.timer("metrics_test", "case", "failedQueriesCountAsErrors");
+        long errors = timer.getErrors();
+        long count = timer.getHistogram().count();
+
+        long start = System.nanoTime();
+        int failures = Metrics.queryFailures();
+        timer.stop(start, failures);
+        start = System.nanoTime();
+        failures = Metrics.queryFailures();
+        Metrics.queryFailed(new SQLException("expected by MetricsTest"));
+        timer.stop(start, failures);
+
+        Assert.assertEquals(count + 2, timer.getHistogram().count());
+        Assert.assertEquals(errors + 1, timer.getErrors());
+        Assert.assertTrue(Metrics.render().contains("metrics_test_errors_total{case=\"failedQueriesCountAsErrors\"} " + (errors + 1) + "\n"));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
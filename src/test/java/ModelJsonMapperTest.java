@@ -0,0 +1,122 @@
+import java.io.ByteArrayInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ModelJsonMapper;
+import Util.OversizeFieldException;
+
+public class ModelJsonMapperTest {
+    ModelJsonMapper jsonMapper;
+    ObjectMapper objectMapper;
+
+    /**
+     * Before every test, create the mapper under test and a plain ObjectMapper to compare it with.
+     */
+    @Before
+    public void setUp() {
+        jsonMapper = new ModelJsonMapper();
+        objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Messages, accounts and batch results should be written exactly as databind writes them.
+     */
+    @Test
+    public void writesSameJsonAsDatabind() throws Exception {
+        Message message = new Message(1, 1, "say \"hi\" \u00e9", 1669947792);
+        Account account = new Account(1, "testuser1", "password");
+        List<Object> values = List.of(message, account, List.of(message, message),
+            List.of(MessageBatchResult.created(0, message), MessageBatchResult.failed(1, "invalid message_text")));
+        for (Object value : values) {
+            Assert.assertEquals(objectMapper.writeValueAsString(value), jsonMapper.toJsonString(value, value.getClass()));
+        }
+    }
+
+    /**
+     * Bodies should read into the same objects as with databind, including its scalar coercions.
+     */
+    @Test
+    public void readsSameObjectsAsDatabind() throws Exception {
+        String messageJson = "{\"posted_by\":\"1\",\"message_text\":5,\"time_posted_epoch\":null}";
+        Assert.assertEquals(objectMapper.readValue(messageJson, Message.class),
+            jsonMapper.fromJsonStream(new ByteArrayInputStream(messageJson.getBytes(StandardCharsets.UTF_8)), Message.class));
+
+        String accountJson = "{\"username\":\"testuser1\",\"password\":\"password\"}";
+        Assert.assertEquals(objectMapper.readValue(accountJson, Account.class), jsonMapper.fromJsonString(accountJson, Account.class));
+    }
+
+    /**
+     * A single message with text over 255 characters should be rejected while parsing, but inside a batch only
+     * that message should lose its text so it can be reported as invalid on its own.
+     */
+    @Test
+    public void oversizeMessageText() {
+        String text = "a".repeat(256);
+        try {
+            jsonMapper.fromJsonString("{\"posted_by\":1,\"message_text\":\"" + text + "\"}", Message.class);
+            Assert.fail("expected the oversize message_text to be rejected");
+        }
+        catch (OversizeFieldException e) {
+            Assert.assertTrue(e.getMessage().contains("message_text"));
+        }
+
+        Message[] batch = jsonMapper.fromJsonString("[{\"posted_by\":1,\"message_text\":\"" + text + "\"}," +
+            "{\"posted_by\":1,\"message_text\":\"" + text.substring(1) + "\"}]", Message[].class);
+        Assert.assertNull(batch[0].getMessage_text());
+        Assert.assertEquals(255, batch[1].getMessage_text().length());
+    }
+
+    /**
+     * An array longer than the mapper's limit should be rejected when the element past the limit starts, before
+     * the rest of the body is parsed.
+     */
+    @Test
+    public void oversizeArrayStopsParsing() {
+        ModelJsonMapper limited = new ModelJsonMapper(2);
+        Assert.assertEquals(2, limited.<Message[]>fromJsonString("[{\"posted_by\":1},{\"posted_by\":2}]", Message[].class).length);
+        try {
+            limited.fromJsonString("[{\"posted_by\":1},{\"posted_by\":2},{\"posted_by\":3}, not json", Message[].class);
+            Assert.fail("expected the third message to be rejected");
+        }
+        catch (OversizeFieldException e) {
+            Assert.assertTrue(e.getMessage().contains("2 messages"));
+        }
+    }
+
+    /**
+     * Like databind, an unknown field should fail the parse.
+     */
+    @Test(expected = UncheckedIOException.class)
+    public void unknownFieldFails() {
+        jsonMapper.fromJsonString("{\"posted_by\":1,\"extra\":2}", Message.class);
+    }
+
+    /**
+     * Like databind, a numeric field should accept a number held in a string but fail on any other string.
+     */
+    @Test
+    public void nonNumericStringFails() {
+        Message message = jsonMapper.fromJsonString("{\"posted_by\":\"12\",\"time_posted_epoch\":\"1669947792\"}", Message.class);
+        Assert.assertEquals(12, message.getPosted_by());
+        Assert.assertEquals(1669947792L, message.getTime_posted_epoch());
+        for (String json : List.of("{\"posted_by\":\"abc\"}", "{\"time_posted_epoch\":\"abc\"}", "{\"message_id\":true}")) {
+            try {
+                jsonMapper.fromJsonString(json, Message.class);
+                Assert.fail("expected " + json + " to fail");
+            }
+            catch (UncheckedIOException e) {
+                // expected
+            }
+        }
+    }
+}
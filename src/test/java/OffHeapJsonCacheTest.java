@@ -0,0 +1,97 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import Util.OffHeapJsonCache;
+
+public class OffHeapJsonCacheTest {
+
+    /**
+     * A stored document should be written back byte for byte until it is invalidated.
+     */
+    @Test
+    public void putWriteInvalidate() throws IOException {
+        OffHeapJsonCache cache = new OffHeapJsonCache(1024, 256);
+        cache.put(1, bytes("{\"message_id\":1}"));
+
+        Assert.assertEquals("{\"message_id\":1}", written(cache, 1));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.invalidate(1);
+        Assert.assertNull(written(cache, 1));
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Once every slab is full, the oldest slab should be recycled and only its documents dropped.
+     */
+    @Test
+    public void oldestSlabIsRecycled() throws IOException {
+        OffHeapJsonCache cache = new OffHeapJsonCache(64, 32);
+        for (int id = 1; id <= 5; id++) cache.put(id, bytes("{\"message_id\":" + id + "}"));
+
+        Assert.assertEquals(64, cache.getCapacityBytes());
+        Assert.assertTrue(cache.getUsedBytes() <= 64);
+        Assert.assertNull(written(cache, 1));
+        Assert.assertNull(written(cache, 2));
+        Assert.assertEquals("{\"message_id\":5}", written(cache, 5));
+        Assert.assertEquals(2, cache.getEvictionCount());
+    }
+
+    /**
+     * Cached documents copied into a generator should be separated like any other array element.
+     */
+    @Test
+    public void writesRawValueIntoGenerator() throws IOException {
+        OffHeapJsonCache cache = new OffHeapJsonCache(1024, 256);
+        cache.put(2, bytes("{\"message_id\":2}"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            generator.writeNumber(1);
+            Assert.assertTrue(cache.writeTo(2, generator));
+            Assert.assertFalse(cache.writeTo(3, generator));
+            generator.writeEndArray();
+        }
+        Assert.assertEquals("[1,{\"message_id\":2}]", out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Documents holding multi-byte characters should come out of a generator intact, also once the generator's
+     * buffer has filled and been flushed many times over.
+     */
+    @Test
+    public void writesMultiByteTextPastGeneratorBuffer() throws IOException {
+        OffHeapJsonCache cache = new OffHeapJsonCache(1 << 16, 1 << 16);
+        String text = "caf\u00e9 \u4e2d\u6587 \ud83d\ude00 ".repeat(10);
+        StringBuilder expected = new StringBuilder("[");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (int id = 1; id <= 100; id++) {
+                String json = "{\"message_id\":" + id + ",\"message_text\":\"" + text + "\"}";
+                cache.put(id, bytes(json));
+                Assert.assertTrue(cache.writeTo(id, generator));
+                expected.append(id == 1 ? "" : ",").append(json);
+            }
+            generator.writeEndArray();
+        }
+        Assert.assertEquals(expected.append("]").toString(), out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static String written(OffHeapJsonCache cache, int id) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return cache.writeTo(id, out) ? out.toString(StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Service.CredentialCache;
+import Service.PasswordHasher;
+
+public class PasswordHashingTest {
+    AccountDAO accountDAO;
+    PasswordHasher passwordHasher;
+    AccountService accountService;
+
+    /**
+     * Before every test, put an AccountService with a cheap hasher in front of a mock AccountDAO so key derivations
+     * and database writes can be counted.
+     */
+    @Before
+    public void setUp() {
+        accountDAO = Mockito.mock(AccountDAO.class);
+        passwordHasher = Mockito.spy(new PasswordHasher(1_000));
+        accountService = new AccountService(accountDAO, passwordHasher, new CredentialCache(100, Duration.ofMinutes(1)));
+    }
+
+    /**
+     * A hash should verify only its own password, and report itself for rehashing once the cost goes up.
+     */
+    @Test
+    public void hashesVerifyAndRecordTheirCost() {
+        String hash = passwordHasher.hash("password");
+        Assert.assertNotEquals(hash, passwordHasher.hash("password"));
+        Assert.assertTrue(passwordHasher.verify("password", hash));
+        Assert.assertFalse(passwordHasher.verify("Password", hash));
+        Assert.assertFalse(passwordHasher.needsRehash(hash));
+        Assert.assertTrue(new PasswordHasher(2_000).needsRehash(hash));
+        Assert.assertTrue(new PasswordHasher(2_000).verify("password", hash));
+    }
+
+    /**
+     * Registration should store a hash rather than the password, and answer with the password as sent.
+     */
+    @Test
+    public void registrationStoresHash() {
+        Mockito.when(accountDAO.insertNewAccount(ArgumentMatchers.any())).thenAnswer(invocation -> {
+            Account account = invocation.getArgument(0);
+            account.setAccount_id(2);
+            return account;
+        });
+        Assert.assertEquals(new Account(2, "user", "password"), accountService.registerNewAccount(new Account("user", "password")));
+
+        ArgumentCaptor<Account> stored = ArgumentCaptor.forClass(Account.class);
+        Mockito.verify(accountDAO).insertNewAccount(stored.capture());
+        Assert.assertTrue(stored.getValue().getPassword().startsWith("pbkdf2-sha256$1000$"));
+        Assert.assertTrue(passwordHasher.verify("password", stored.getValue().getPassword()));
+    }
+
+    /**
+     * A legacy plaintext password should still log in and be replaced with a hash, and a repeated login should be
+     * answered from the credential cache without deriving the key again.
+     */
+    @Test
+    public void legacyPasswordIsRehashedAndLoginsAreCached() {
+        Mockito.when(accountDAO.selectAccountByUsername("testuser1")).thenReturn(new Account(1, "testuser1", "password"));
+        Mockito.when(accountDAO.updatePassword(ArgumentMatchers.eq(1), ArgumentMatchers.anyString())).thenReturn(true);
+
+        Assert.assertEquals(new Account(1, "testuser1", "password"), accountService.login(new Account("testuser1", "password")));
+        ArgumentCaptor<String> rehashed = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(accountDAO).updatePassword(ArgumentMatchers.eq(1), rehashed.capture());
+        Assert.assertTrue(passwordHasher.verify("password", rehashed.getValue()));
+
+        Mockito.when(accountDAO.selectAccountByUsername("testuser1")).thenReturn(new Account(1, "testuser1", rehashed.getValue()));
+        Mockito.clearInvocations(passwordHasher);
+        for (int i = 0; i < 3; i++) Assert.assertNotNull(accountService.login(new Account("testuser1", "password")));
+        Mockito.verify(passwordHasher, Mockito.never()).verify(ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+
+        // a wrong password is not answered from the cache
+        Assert.assertNull(accountService.login(new Account("testuser1", "pass123")));
+        Mockito.verify(passwordHasher).verify("pass123", rehashed.getValue());
+        Assert.assertNull(accountService.login(new Account("nobody", "password")));
+    }
+}
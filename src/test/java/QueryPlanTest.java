@@ -0,0 +1,61 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.MigrationRunner;
+
+public class QueryPlanTest {
+
+    /**
+     * Before every test, reset the database, which re-applies every migration.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Every query on the request hot path should be planned with an index rather than a table scan.
+     */
+    @Test
+    public void hotQueriesUseAnIndex() {
+        List<String> scans = MigrationRunner.findTableScans(
+            MessageDAO.SELECT_BY_ID_SQL,
+            MessageDAO.SELECT_AFTER_SQL,
+            MessageDAO.SELECT_BY_ACCOUNT_SQL,
+            MessageDAO.SELECT_BY_IDS_SQL,
+            MessageDAO.SELECT_BY_TIME_SQL,
+            MessageDAO.SELECT_BY_ACCOUNT_TIME_SQL,
+            AccountDAO.SELECT_BY_ID_SQL,
+            AccountDAO.SELECT_BY_USERNAME_SQL,
+            AccountDAO.UPDATE_PASSWORD_SQL,
+            FollowDAO.DELETE_SQL);
+
+        Assert.assertTrue("queries planned as table scans:\n" + String.join("\n", scans), scans.isEmpty());
+    }
+
+    /**
+     * Time range queries should be range scans that read their rows already in time order, so the first row can be
+     * sent before the whole range is read.
+     */
+    @Test
+    public void timeRangesAreReadInOrder() {
+        List<String> sorts = MigrationRunner.findSorts(MessageDAO.SELECT_BY_TIME_SQL, MessageDAO.SELECT_BY_ACCOUNT_TIME_SQL);
+
+        Assert.assertTrue("queries sorted after reading:\n" + String.join("\n", sorts), sorts.isEmpty());
+    }
+
+    /**
+     * Migrations recorded in schema_history should not run a second time.
+     */
+    @Test
+    public void migrateIsIdempotent() {
+        Assert.assertEquals(0, MigrationRunner.migrate());
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+
+/**
+ * Measures sign-up throughput through AccountService when every thread registers fresh names, and when every
+ * thread races for the same names. Only runs when asked for with -Dbench=true, e.g.
+ * mvn test -Dtest=RegistrationBenchmarkTest -Dbench=true
+ */
+public class RegistrationBenchmarkTest {
+    static final int THREADS = Integer.getInteger("bench.threads", 16);
+    static final int NAMES = Integer.getInteger("bench.names", 1000);
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void signUpThroughput() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        int created = run("unique names", new AccountService(), true);
+        Assert.assertEquals(THREADS * NAMES, created);
+
+        ConnectionUtil.resetTestDatabase();
+        created = run("contended names", new AccountService(), false);
+        // the unique constraint lets exactly one racer win each name
+        Assert.assertEquals(NAMES, created);
+    }
+
+    private int run(String name, AccountService accountService, boolean unique) throws InterruptedException {
+        AtomicInteger created = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String prefix = unique ? "user" + t + "-" : "user-";
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < NAMES; i++) {
+                    if (accountService.registerNewAccount(new Account(prefix + i, "password")) != null) created.incrementAndGet();
+                }
+            }));
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-16s %d threads x %d sign-ups: %.0f sign-ups/s, %d accounts created%n",
+            name, THREADS, NAMES, THREADS * NAMES / seconds, created.get());
+        return created.get();
+    }
+}
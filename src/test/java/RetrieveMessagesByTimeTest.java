@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesByTimeTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a second account and five messages posted out of time order,
+     * restart the Javalin app, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement("insert into account (username, password) values ('testuser2', 'password')")) {
+            ps.executeUpdate();
+        }
+        insertMessage(1, "message 2", 100);
+        insertMessage(2, "message 3", 300);
+        insertMessage(1, "message 4", 200);
+        insertMessage(1, "message 5", 200);
+        insertMessage(2, "message 6", 400);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?since=200&until=400
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages posted from 200 up to but not including 400, by time and then message_id
+     */
+    @Test
+    public void getMessagesInRange() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?since=200&until=400");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(4, 1, "message 4", 200));
+        expected.add(new Message(5, 1, "message 5", 200));
+        expected.add(new Message(3, 2, "message 3", 300));
+        Assert.assertEquals(expected, objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with only one bound
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the range is open on the other side
+     */
+    @Test
+    public void getMessagesWithOneBound() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(2, 4, 5), ids(get("http://localhost:8080/messages?until=300")));
+        Assert.assertEquals(List.of(6, 1), ids(get("http://localhost:8080/messages?since=400")));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/{account_id}/messages?since=&until=
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only that account's messages in the range, in time order
+     */
+    @Test
+    public void getAccountMessagesInRange() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4, 5, 1), ids(get("http://localhost:8080/accounts/1/messages?since=150")));
+        Assert.assertEquals(List.of(3), ids(get("http://localhost:8080/accounts/2/messages?since=300&until=400")));
+        Assert.assertEquals(List.of(), ids(get("http://localhost:8080/accounts/2/messages?since=500&until=500")));
+    }
+
+    /**
+     * Sending an http request with a bound that is not a number, or with since after until
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesInvalidRange() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=yesterday").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages?since=300&until=200").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/accounts/1/messages?since=300&until=200").statusCode());
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void insertMessage(int posted_by, String text, long epoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement(
+                "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)")) {
+            ps.setInt(1, posted_by);
+            ps.setString(2, text);
+            ps.setLong(3, epoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesPageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        insertMessage("test message 2", 1669947793);
+        insertMessage("test message 3", 1669947794);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=2 and then following X-Next-Cursor
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the first two messages, then the last message with no further cursor
+     */
+    @Test
+    public void getMessagesFollowingCursor() throws IOException, InterruptedException {
+        HttpResponse<String> firstPage = get("http://localhost:8080/messages?limit=2");
+        Assert.assertEquals(200, firstPage.statusCode());
+
+        List<Message> expectedFirst = new ArrayList<>();
+        expectedFirst.add(new Message(1, 1, "test message 1", 1669947792));
+        expectedFirst.add(new Message(2, 1, "test message 2", 1669947793));
+        Assert.assertEquals(expectedFirst, objectMapper.readValue(firstPage.body(), new TypeReference<List<Message>>(){}));
+
+        String cursor = firstPage.headers().firstValue("X-Next-Cursor").orElse(null);
+        Assert.assertNotNull(cursor);
+
+        HttpResponse<String> secondPage = get("http://localhost:8080/messages?limit=2&after=" + cursor);
+        Assert.assertEquals(200, secondPage.statusCode());
+
+        List<Message> expectedSecond = new ArrayList<>();
+        expectedSecond.add(new Message(3, 1, "test message 3", 1669947794));
+        Assert.assertEquals(expectedSecond, objectMapper.readValue(secondPage.body(), new TypeReference<List<Message>>(){}));
+        Assert.assertFalse(secondPage.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?all=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message in the table
+     */
+    @Test
+    public void getAllMessagesUnpaged() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?all=true&limit=1");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, messages.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages with a cursor the server did not issue
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getMessagesMalformedCursor() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?after=not-a-cursor");
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void insertMessage(String text, long epoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement(
+                "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, text);
+            ps.setLong(2, epoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
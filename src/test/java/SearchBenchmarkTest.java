@@ -0,0 +1,99 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageSearchIndex;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * Measures the build time and memory of the message search index over a table of generated messages, and the
+ * latency of searches through it against a LIKE scan of the table. Only runs when asked for with -Dbench=true, e.g.
+ * mvn test -Dtest=SearchBenchmarkTest -Dbench=true
+ */
+public class SearchBenchmarkTest {
+    static final int MESSAGES = Integer.getInteger("bench.messages", 100_000);
+    static final int VOCABULARY = Integer.getInteger("bench.vocabulary", 20_000);
+    static final int ROUNDS = Integer.getInteger("bench.rounds", 2_000);
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void searchLatency() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        Random random = new Random(42);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            batch.add(new Message(1, text(random), i));
+            if (batch.size() == 1000) {
+                Assert.assertTrue(messageDAO.insertNewMessages(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) Assert.assertTrue(messageDAO.insertNewMessages(batch));
+
+        MessageService messageService = new MessageService(messageDAO, null);
+        long heapBefore = usedHeap();
+        messageService.searchMessages("w0", 1);
+        long heapAfter = usedHeap();
+        MessageSearchIndex index = messageService.getMessageSearchIndex();
+        System.out.printf("index of %d messages: built in %d ms, %d terms, %d postings, %.1f posting bytes/message, ~%.0f heap bytes/message%n",
+            MESSAGES, index.getLoadMillis(), index.getTermCount(), index.getPostingCount(),
+            (double) index.getPostingBytes() / MESSAGES, (double) (heapAfter - heapBefore) / MESSAGES);
+
+        for (String q : new String[] { "w1 ", "w1 w2 ", "w3 w1", "\"w1 w2\"", "w17 w4 w999 " }) {
+            for (int i = 0; i < ROUNDS / 4; i++) messageService.searchMessages(q, 20);
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < ROUNDS; i++) found = messageService.searchMessages(q, 20).size();
+            System.out.printf("search %-14s %3d results: %8.1f us%n", q, found, (System.nanoTime() - start) / 1e3 / ROUNDS);
+        }
+
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = connection.prepareStatement(
+                "SELECT * FROM message WHERE message_text LIKE ? AND message_text LIKE ? ORDER BY message_id DESC LIMIT 20")) {
+            ps.setString(1, "%w1 %");
+            ps.setString(2, "%w2 %");
+            long start = System.nanoTime();
+            int rounds = Math.max(1, ROUNDS / 100);
+            for (int i = 0; i < rounds; i++) {
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) rs.getInt("message_id");
+                }
+            }
+            System.out.printf("LIKE scan %-11s          : %8.1f us%n", "w1 w2", (System.nanoTime() - start) / 1e3 / rounds);
+        }
+    }
+
+    // eight to twenty words drawn from a skewed vocabulary, so a few words are common and most are rare
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 8 + random.nextInt(13);
+        for (int i = 0; i < words; i++) {
+            int word = (int) Math.floor(Math.pow(VOCABULARY, random.nextDouble())) - 1;
+            text.append('w').append(word).append(' ');
+        }
+        return text.toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
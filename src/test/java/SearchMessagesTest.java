@@ -0,0 +1,177 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add four more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        insertMessage("the quick brown fox", 1669947793);
+        insertMessage("Quick, brown dogs run", 1669947794);
+        insertMessage("a brown and quick fox", 1669947795);
+        insertMessage("quickly done", 1669947796);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=brown qu
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every message with "brown" and a word starting with "qu", newest first
+     */
+    @Test
+    public void searchAllTermsWithPrefix() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4, 3, 2), searchIds("brown qu"));
+        Assert.assertEquals(List.of(5, 4, 3, 2), searchIds("QUICK"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=quick  (ending in a space)
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages with the whole word "quick" only
+     */
+    @Test
+    public void searchFinishedWordIsNotPrefix() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4, 3, 2), searchIds("quick "));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q="quick brown"
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the messages with "quick" directly followed by "brown"
+     */
+    @Test
+    public void searchPhrase() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 2), searchIds("\"quick brown\""));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=brown&limit=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the two newest matches
+     */
+    @Test
+    public void searchWithLimit() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages/search?limit=2&q=brown");
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expected = new ArrayList<>();
+        expected.add(new Message(4, 1, "a brown and quick fox", 1669947795));
+        expected.add(new Message(3, 1, "Quick, brown dogs run", 1669947794));
+        Assert.assertEquals(expected, objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Searching, then updating and deleting messages through the API, then searching again.
+     *
+     * Expected Response:
+     *  Response Body: the edited text is found by its new words and not its old ones, and the deleted message is gone
+     */
+    @Test
+    public void searchFollowsUpdateAndDelete() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(4, 2), searchIds("fox"));
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"the lazy cat\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/4"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(delete, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(List.of(), searchIds("fox"));
+        Assert.assertEquals(List.of(2), searchIds("lazy cat"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search with no words in q
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutTerms() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search?q=%20!%20").statusCode());
+        Assert.assertEquals(400, get("http://localhost:8080/messages/search").statusCode());
+    }
+
+    private List<Integer> searchIds(String q) throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages/search?q=" + URLEncoder.encode(q, StandardCharsets.UTF_8));
+        Assert.assertEquals(200, response.statusCode());
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            ids.add(message.getMessage_id());
+        }
+        return ids;
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void insertMessage(String text, long epoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement(
+                "insert into message (posted_by, message_text, time_posted_epoch) values (1, ?, ?)")) {
+            ps.setString(1, text);
+            ps.setLong(2, epoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
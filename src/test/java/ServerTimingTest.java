@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.RequestTrace;
+import Model.TraceSpan;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ServerTimingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with X-Trace allowed, and create a new webClient
+     * and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("trace.allowHeader", "true");
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("trace.allowHeader");
+    }
+
+    /**
+     * Sending an http request to PATCH localhost:8080/messages/1 with the header X-Trace: true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Server-Timing: the queue wait, the handler, parsing, the service call, its validation and DAO call, the cache
+     *  updates, writing the JSON and the total
+     */
+    @Test
+    public void tracedPatchReportsItsPhases() throws IOException, InterruptedException {
+        HttpResponse<String> response = patchMessage(true);
+        String serverTiming = response.headers().firstValue("Server-Timing").orElse("");
+
+        Assert.assertEquals(200, response.statusCode());
+        for (String phase : new String[] { "write-queue", "handler", "parse", "MessageService.updateMessage", "validate",
+            "MessageDAO.updateMessage", "caches", "json", "total" }) {
+            Assert.assertTrue(serverTiming, serverTiming.contains(phase + ";dur="));
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/traces after a traced PATCH localhost:8080/messages/1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the PATCH among the slowest traces, with its route, status and span tree
+     */
+    @Test
+    public void slowestTracesHoldSpanTrees() throws IOException, InterruptedException {
+        Assert.assertEquals(200, patchMessage(true).statusCode());
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/admin/traces")).build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        RequestTrace patch = null;
+        for (RequestTrace trace : objectMapper.readValue(response.body(), new TypeReference<java.util.List<RequestTrace>>() {})) {
+            if ("PATCH".equals(trace.method)) patch = trace;
+        }
+        Assert.assertNotNull(response.body(), patch);
+        Assert.assertEquals("/messages/1", patch.path);
+        Assert.assertEquals("messages/{message_id}", patch.route);
+        Assert.assertEquals(200, patch.status);
+        TraceSpan handler = patch.spans.get(1);
+        Assert.assertEquals("handler", handler.name);
+        Assert.assertTrue(patch.duration_micros >= handler.duration_micros);
+        TraceSpan service = handler.children.get(1);
+        Assert.assertEquals("MessageService.updateMessage", service.name);
+        Assert.assertTrue(service.children.get(1).name.endsWith("MessageDAO.updateMessage"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 with the header X-Trace: true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Server-Timing: the queue wait and the total, although the handler writes the body itself
+     */
+    @Test
+    public void tracedMessageByIdReportsItsPhases() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages/1");
+        String serverTiming = response.headers().firstValue("Server-Timing").orElse("");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(serverTiming, serverTiming.contains("read-queue;dur="));
+        Assert.assertTrue(serverTiming, serverTiming.contains("total;dur="));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?all=true with the header X-Trace: true, for a table
+     * too large for one response buffer
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Server-Timing: present, although the body is streamed and committed before the handler is done
+     */
+    @Test
+    public void tracedStreamedArrayReportsItsPhases() throws IOException, InterruptedException, SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, 1669947792)")) {
+            for (int i = 0; i < 1000; i++) {
+                statement.setString(1, "a".repeat(200));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        HttpResponse<String> response = get("http://localhost:8080/messages?all=true");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.body().length() > 200_000);
+        Assert.assertTrue(response.headers().firstValue("Server-Timing").orElse("").contains("total;dur="));
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).header("X-Trace", "true").build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> patchMessage(boolean trace) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json");
+        if (trace) request.header("X-Trace", "true");
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
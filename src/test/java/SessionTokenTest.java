@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Follow;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a second account, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement("insert into account (username, password) values ('testuser2', 'password')")) {
+            ps.executeUpdate();
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with the token from POST localhost:8080/login
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the new message, posted by the token's account whatever posted_by the body holds
+     */
+    @Test
+    public void tokenDecidesPostedBy() throws IOException, InterruptedException {
+        String token = login("testuser2");
+        HttpResponse<String> response = send("POST", "http://localhost:8080/messages", token,
+            "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 100}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 2, "hello", 100), objectMapper.readValue(response.body(), Message.class));
+
+        response = send("POST", "http://localhost:8080/accounts/1/follow", token, null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Follow(2, 1), objectMapper.readValue(response.body(), Follow.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with a tampered token
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void tamperedTokenIsRejected() throws IOException, InterruptedException {
+        String token = login("testuser1");
+        String tampered = (token.charAt(0) == 'A' ? 'B' : 'A') + token.substring(1);
+        HttpResponse<String> response = send("POST", "http://localhost:8080/messages", tampered,
+            "{\"message_text\": \"hello\", \"time_posted_epoch\": 100}");
+        Assert.assertEquals(401, response.statusCode());
+        Assert.assertEquals(401, send("POST", "http://localhost:8080/messages", "not a token",
+            "{\"message_text\": \"hello\", \"time_posted_epoch\": 100}").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/logout, then using the same token
+     *
+     * Expected Response:
+     *  Status Code: 200 for the logout, then 401 for the token and for a second logout
+     */
+    @Test
+    public void logoutRevokesToken() throws IOException, InterruptedException {
+        String token = login("testuser1");
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/logout", token, null).statusCode());
+        Assert.assertEquals(401, send("POST", "http://localhost:8080/messages", token,
+            "{\"message_text\": \"hello\", \"time_posted_epoch\": 100}").statusCode());
+        Assert.assertEquals(401, send("POST", "http://localhost:8080/logout", token, null).statusCode());
+        Assert.assertEquals(401, send("POST", "http://localhost:8080/logout", null, null).statusCode());
+
+        // another login gets a new token
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/messages", login("testuser1"),
+            "{\"message_text\": \"hello\", \"time_posted_epoch\": 100}").statusCode());
+    }
+
+    private String login(String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "http://localhost:8080/login", null,
+            "{\"username\": \"" + username + "\", \"password\": \"password\"}");
+        Assert.assertEquals(200, response.statusCode());
+        String token = response.headers().firstValue("X-Session-Token").orElse(null);
+        Assert.assertNotNull(token);
+        return token;
+    }
+
+    private HttpResponse<String> send(String method, String uri, String token, String body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+            .uri(URI.create(uri))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json");
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
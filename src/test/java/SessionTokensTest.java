@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Service.SessionTokens;
+
+public class SessionTokensTest {
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes();
+
+    /**
+     * A token should verify to the account it was issued to, under the key that signed it only, until it expires.
+     */
+    @Test
+    public void tokensExpire() {
+        AtomicLong now = new AtomicLong(1_000);
+        SessionTokens tokens = new SessionTokens(KEY, 60, now::get);
+        String token = tokens.issue(7);
+        Assert.assertEquals(7, tokens.verify(token));
+        Assert.assertEquals(0, new SessionTokens("another key, just as long as it".getBytes(), 60, now::get).verify(token));
+
+        now.set(1_059);
+        Assert.assertEquals(7, tokens.verify(token));
+        now.set(1_060);
+        Assert.assertEquals(0, tokens.verify(token));
+    }
+
+    /**
+     * Malformed tokens should fail verification rather than throw.
+     */
+    @Test
+    public void malformedTokensFail() {
+        SessionTokens tokens = new SessionTokens(KEY, 60, () -> 1_000);
+        String token = tokens.issue(7);
+        Assert.assertEquals(0, tokens.verify(null));
+        Assert.assertEquals(0, tokens.verify(""));
+        Assert.assertEquals(0, tokens.verify("."));
+        Assert.assertEquals(0, tokens.verify(token.replace('.', '!')));
+        Assert.assertEquals(0, tokens.verify(token.substring(0, token.length() - 2)));
+        Assert.assertEquals(0, tokens.verify(token.substring(token.indexOf('.'))));
+    }
+
+    /**
+     * A revoked token should fail verification while other tokens of the same account still pass, and the
+     * revocation should be dropped once the token has expired.
+     */
+    @Test
+    public void revokedTokensFailUntilExpiry() {
+        AtomicLong now = new AtomicLong(1_000);
+        SessionTokens tokens = new SessionTokens(KEY, 60, now::get);
+        String first = tokens.issue(7);
+        String second = tokens.issue(7);
+        Assert.assertEquals(7, tokens.revoke(first));
+        Assert.assertEquals(0, tokens.verify(first));
+        Assert.assertEquals(7, tokens.verify(second));
+        Assert.assertEquals(0, tokens.revoke(first));
+
+        now.set(2_000);
+        for (int i = 0; i < 1023; i++) tokens.revoke(tokens.issue(i + 1));
+        Assert.assertEquals(1023, tokens.revokedCount());
+    }
+
+    /**
+     * A revoked token should stay revoked when its payload is sent padded or with unused trailing bits changed,
+     * both of which decode to the same bytes.
+     */
+    @Test
+    public void respelledRevokedTokensFail() {
+        SessionTokens tokens = new SessionTokens(KEY, 60, () -> 1_000);
+        String token = tokens.issue(7);
+        int dot = token.indexOf('.');
+        String payload = token.substring(0, dot);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        // 16 bytes leave the low 4 bits of the last of 22 characters unused, so the next character decodes the same
+        char last = payload.charAt(payload.length() - 1);
+        String padded = payload + "==" + token.substring(dot);
+        String respelled = payload.substring(0, payload.length() - 1) + alphabet.charAt(alphabet.indexOf(last) + 1) + token.substring(dot);
+        Assert.assertEquals(7, tokens.verify(padded));
+        Assert.assertEquals(7, tokens.verify(respelled));
+
+        Assert.assertEquals(7, tokens.revoke(token));
+        Assert.assertEquals(0, tokens.verify(token));
+        Assert.assertEquals(0, tokens.verify(padded));
+        Assert.assertEquals(0, tokens.verify(respelled));
+        Assert.assertEquals(0, tokens.revoke(padded));
+    }
+}
@@ -0,0 +1,107 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageCursor;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+
+/**
+ * Measures time range reads as the message table grows to bench.sizes rows (10M by default), each read returning
+ * about bench.rangeRows messages, against the same filter planned as a table scan. Messages are posted every
+ * TIME_STEP on average, a little out of order, as they would be by a live server. Only runs when asked for with
+ * -Dbench=true, e.g. mvn test -Dtest=TimeRangeBenchmarkTest -Dbench=true
+ */
+public class TimeRangeBenchmarkTest {
+    static final String SIZES = System.getProperty("bench.sizes", "100000,1000000,10000000");
+    static final int RANGE_ROWS = Integer.getInteger("bench.rangeRows", 100);
+    static final int ROUNDS = Integer.getInteger("bench.rounds", 2_000);
+    static final long TIME_STEP = 100;
+    static final int INSERT_CHUNK = 250_000;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void rangeLatencyByTableSize() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        Random random = new Random(42);
+        long rows = 1;
+        try {
+            for (String size : SIZES.split(",")) {
+                long target = Long.parseLong(size.trim());
+                long start = System.nanoTime();
+                grow(rows, target);
+                System.out.printf("%,d rows loaded in %.1f s%n", target, (System.nanoTime() - start) / 1e9);
+                rows = target;
+
+                long span = rows * TIME_STEP;
+                long width = RANGE_ROWS * TIME_STEP;
+                for (int i = 0; i < ROUNDS / 4; i++) readRange(messageDAO, random, span, width);
+                long found = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) found += readRange(messageDAO, random, span, width);
+                System.out.printf("%,12d rows: range of ~%d rows in %8.1f us (%.1f rows on average)%n",
+                    rows, RANGE_ROWS, (System.nanoTime() - start) / 1e3 / ROUNDS, (double) found / ROUNDS);
+
+                int scans = rows > 1_000_000 ? 2 : 10;
+                start = System.nanoTime();
+                for (int i = 0; i < scans; i++) scanRange(random, span, width);
+                System.out.printf("%,12d rows: same range as a table scan in %8.1f us%n", rows, (System.nanoTime() - start) / 1e3 / scans);
+            }
+        }
+        finally {
+            ConnectionUtil.resetTestDatabase();
+        }
+    }
+
+    // adds messages until the table holds to rows, from a few hundred posters
+    private static void grow(long from, long to) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO account (username, password) SELECT 'bench' || X, 'password' FROM SYSTEM_RANGE(1, 499) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM account WHERE username = 'bench' || X)");
+            // committed in chunks, since one transaction over millions of rows holds all of them in its undo log
+            for (long first = from; first < to; first += INSERT_CHUNK) {
+                long last = Math.min(to - 1, first + INSERT_CHUNK - 1);
+                statement.execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) SELECT 1 + MOD(X, 500), "
+                    + "'bench message ' || X, X * " + TIME_STEP + " + CAST(RAND() * " + (10 * TIME_STEP) + " AS BIGINT) "
+                    + "FROM SYSTEM_RANGE(" + first + ", " + last + ")");
+            }
+        }
+    }
+
+    private static int readRange(MessageDAO messageDAO, Random random, long span, long width) {
+        long since = (long) (random.nextDouble() * (span - width));
+        int count = 0;
+        try (MessageCursor cursor = messageDAO.openMessagesBetweenCursor(since, since + width)) {
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void scanRange(Random random, long span, long width) throws SQLException {
+        long since = (long) (random.nextDouble() * (span - width));
+        try (Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = connection.prepareStatement("SELECT * FROM message USE INDEX () "
+                + "WHERE time_posted_epoch >= ? AND time_posted_epoch < ? ORDER BY time_posted_epoch, message_id")) {
+            ps.setLong(1, since);
+            ps.setLong(2, since + width);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rs.getInt("message_id");
+            }
+        }
+    }
+}
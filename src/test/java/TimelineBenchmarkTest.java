@@ -0,0 +1,72 @@
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Model.Follow;
+import Model.Message;
+import Service.AccountMessageIndex;
+import Service.FollowGraph;
+import Service.HomeTimelines;
+
+/**
+ * Measures home timeline reads served from fanned-out rings against the same reads merged from every followee at
+ * read time, and the cost of fanning one message out, for bench.accounts accounts each following bench.following
+ * others. Only runs when asked for with -Dbench=true, e.g.
+ * mvn test -Dtest=TimelineBenchmarkTest -Dbench=true
+ */
+public class TimelineBenchmarkTest {
+    static final int ACCOUNTS = Integer.getInteger("bench.accounts", 10_000);
+    static final int FOLLOWING = Integer.getInteger("bench.following", 200);
+    static final int MESSAGES = Integer.getInteger("bench.messages", 500_000);
+    static final int READERS = Integer.getInteger("bench.readers", 2_000);
+    static final int LIMIT = 50;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+    }
+
+    @Test
+    public void fanOutOnWriteAgainstOnRead() {
+        AccountMessageIndex index = new AccountMessageIndex();
+        FollowGraph graph = new FollowGraph();
+        Random random = new Random(42);
+        for (int follower_id = 1; follower_id <= ACCOUNTS; follower_id++) {
+            for (int i = 0; i < FOLLOWING; i++) {
+                int followee_id = 1 + random.nextInt(ACCOUNTS);
+                if (followee_id != follower_id) graph.add(new Follow(follower_id, followee_id));
+            }
+        }
+        for (int message_id = 1; message_id <= MESSAGES; message_id++) {
+            index.add(new Message(message_id, 1 + random.nextInt(ACCOUNTS), "bench", message_id));
+        }
+
+        HomeTimelines pushed = new HomeTimelines(index, graph, HomeTimelines.CAPACITY, ACCOUNTS, Integer.MAX_VALUE);
+        HomeTimelines pulled = new HomeTimelines(index, graph, HomeTimelines.CAPACITY, ACCOUNTS, -1);
+
+        long start = System.nanoTime();
+        for (int follower_id = 1; follower_id <= READERS; follower_id++) pushed.messageIds(follower_id, LIMIT);
+        System.out.printf("first read, filling a ring from %d followees: %8.1f us%n", FOLLOWING, (System.nanoTime() - start) / 1e3 / READERS);
+
+        int rounds = READERS * 5;
+        for (int i = 0; i < rounds; i++) pushed.messageIds(1 + random.nextInt(READERS), LIMIT);
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) pushed.messageIds(1 + random.nextInt(READERS), LIMIT);
+        System.out.printf("read from a fanned-out ring:                %8.1f us%n", (System.nanoTime() - start) / 1e3 / rounds);
+
+        for (int i = 0; i < rounds / 10; i++) pulled.messageIds(1 + random.nextInt(READERS), LIMIT);
+        start = System.nanoTime();
+        for (int i = 0; i < rounds / 10; i++) pulled.messageIds(1 + random.nextInt(READERS), LIMIT);
+        System.out.printf("read merged from every followee on read:    %8.1f us%n", (System.nanoTime() - start) / 1e3 / (rounds / 10));
+
+        int posts = 100_000;
+        start = System.nanoTime();
+        for (int message_id = MESSAGES + 1; message_id <= MESSAGES + posts; message_id++) {
+            pushed.fanOut(new Message(message_id, 1 + random.nextInt(ACCOUNTS), "bench", message_id));
+        }
+        System.out.printf("fan-out of one message to ~%d followers (%d rings): %8.1f us%n",
+            graph.followerCount(1), pushed.ringCount(), (System.nanoTime() - start) / 1e3 / posts);
+    }
+}
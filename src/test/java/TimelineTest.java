@@ -0,0 +1,188 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Follow;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class TimelineTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more accounts, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection conn = ConnectionUtil.getConnection();
+            PreparedStatement ps = conn.prepareStatement("insert into account (username, password) values ('testuser2', 'password'), ('testuser3', 'password')")) {
+            ps.executeUpdate();
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/accounts/2/follow with body {"follower_id":1}
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the follow
+     */
+    @Test
+    public void followAccountSuccessful() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "http://localhost:8080/accounts/2/follow", "{\"follower_id\":1}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Follow(1, 2), objectMapper.readValue(response.body(), Follow.class));
+
+        // following twice is not an error
+        Assert.assertEquals(200, send("POST", "http://localhost:8080/accounts/2/follow", "{\"follower_id\":1}").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/accounts/{account_id}/follow for a missing account or oneself
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followAccountInvalid() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "http://localhost:8080/accounts/9/follow", "{\"follower_id\":1}").statusCode());
+        Assert.assertEquals(400, send("POST", "http://localhost:8080/accounts/2/follow", "{\"follower_id\":9}").statusCode());
+        Assert.assertEquals(400, send("POST", "http://localhost:8080/accounts/1/follow", "{\"follower_id\":1}").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/accounts/{account_id}/follow without a session token or a
+     * follower_id
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followAccountWithoutFollower() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send("POST", "http://localhost:8080/accounts/2/follow", "{}").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/timeline after following two accounts, with messages
+     * posted both before the follow and after the timeline was first read
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the followed accounts' messages, newest first, without the account's own messages
+     */
+    @Test
+    public void timelineHoldsFollowedMessages() throws IOException, InterruptedException {
+        postMessage(2, "before the follow", 100);
+        postMessage(1, "my own message", 150);
+        follow(1, 2);
+        follow(1, 3);
+        Assert.assertEquals(List.of("before the follow"), texts(get("http://localhost:8080/accounts/1/timeline")));
+
+        postMessage(3, "after the first read", 300);
+        postMessage(2, "posted earlier", 200);
+        Assert.assertEquals(List.of("after the first read", "posted earlier", "before the follow"),
+            texts(get("http://localhost:8080/accounts/1/timeline")));
+        Assert.assertEquals(List.of("after the first read"), texts(get("http://localhost:8080/accounts/1/timeline?limit=1")));
+        Assert.assertEquals(List.of(), texts(get("http://localhost:8080/accounts/2/timeline")));
+    }
+
+    /**
+     * Sending an http request to DELETE localhost:8080/accounts/2/follow, and deleting a message, after the timeline
+     * was read
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the removed follow, then an empty body once it is gone; the timeline drops the account and the
+     *  deleted message
+     */
+    @Test
+    public void unfollowAndDeleteLeaveTimeline() throws IOException, InterruptedException {
+        follow(1, 2);
+        follow(1, 3);
+        postMessage(2, "from two", 100);
+        Message deleted = postMessage(3, "deleted", 200);
+        postMessage(3, "from three", 300);
+        Assert.assertEquals(3, texts(get("http://localhost:8080/accounts/1/timeline")).size());
+
+        send("DELETE", "http://localhost:8080/messages/" + deleted.getMessage_id(), null);
+        HttpResponse<String> response = send("DELETE", "http://localhost:8080/accounts/2/follow", "{\"follower_id\":1}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Follow(1, 2), objectMapper.readValue(response.body(), Follow.class));
+        response = send("DELETE", "http://localhost:8080/accounts/2/follow", "{\"follower_id\":1}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+
+        Assert.assertEquals(List.of("from three"), texts(get("http://localhost:8080/accounts/1/timeline")));
+        follow(1, 2);
+        Assert.assertEquals(List.of("from three", "from two"), texts(get("http://localhost:8080/accounts/1/timeline")));
+    }
+
+    private void follow(int follower_id, int followee_id) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "http://localhost:8080/accounts/" + followee_id + "/follow",
+            "{\"follower_id\":" + follower_id + "}");
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private Message postMessage(int posted_by, String text, long epoch) throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "http://localhost:8080/messages",
+            objectMapper.writeValueAsString(new Message(posted_by, text, epoch)));
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), Message.class);
+    }
+
+    private List<String> texts(HttpResponse<String> response) throws IOException {
+        Assert.assertEquals(200, response.statusCode());
+        List<String> texts = new ArrayList<>();
+        for (Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            texts.add(message.getMessage_text());
+        }
+        return texts;
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        return send("GET", uri, null);
+    }
+
+    private HttpResponse<String> send(String method, String uri, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(uri))
+            .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+            .header("Content-Type", "application/json")
+            .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,127 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import Util.BoundedExecutor;
+import Util.Metrics;
+import Util.SlowestTraces;
+import Util.Trace;
+
+public class TraceTest {
+    @After
+    public void tearDown() {
+        Trace.attach(null);
+    }
+
+    /**
+     * Spans should nest under the innermost open span, timer calls should land as leaves, and the Server-Timing
+     * value should add up spans of the same name.
+     */
+    @Test
+    public void spansFormATree() {
+        Metrics.Timer timer = Metrics.timer("trace_test", "case", "spansFormATree").traced("TraceTestDAO.query");
+        Trace trace = Trace.begin("PATCH", "/messages/1");
+        Trace.Span handler = Trace.span("handler");
+        try {
+            try (Trace.Span parse = Trace.span("parse")) {
+                Assert.assertNotSame(Trace.Span.NONE, parse);
+            }
+            for (int i = 0; i < 2; i++) timer.stop(System.nanoTime(), Metrics.queryFailures());
+        }
+        finally {
+            handler.close();
+        }
+        trace.finish("messages/{message_id}", 200);
+
+        List<Trace.Span> spans = trace.getRoot().getChildren();
+        Assert.assertEquals(1, spans.size());
+        Assert.assertEquals("handler", spans.get(0).getName());
+        Assert.assertEquals(3, spans.get(0).getChildren().size());
+        Assert.assertEquals("parse", spans.get(0).getChildren().get(0).getName());
+        Assert.assertEquals("TraceTestDAO.query", spans.get(0).getChildren().get(2).getName());
+        Assert.assertTrue(trace.getDurationNanos() >= spans.get(0).getDurationNanos());
+
+        String serverTiming = trace.serverTiming();
+        Assert.assertTrue(serverTiming, serverTiming.matches(
+            "handler;dur=[0-9.]+, parse;dur=[0-9.]+, TraceTestDAO\\.query;dur=[0-9.]+, total;dur=[0-9.]+"));
+    }
+
+    /**
+     * A task run on a BoundedExecutor should see the submitting thread's trace, with the time it spent queued,
+     * and leave the worker without one.
+     */
+    @Test
+    public void tracesFollowTasksOntoThePool() {
+        BoundedExecutor pool = new BoundedExecutor("trace", 1, 4);
+        try {
+            Trace trace = Trace.begin("GET", "/messages");
+            pool.supply(() -> {
+                Trace.span("handler").close();
+                return null;
+            }).join();
+            Trace.attach(null);
+            Assert.assertNull(pool.supply(Trace::current).join());
+
+            List<Trace.Span> spans = trace.getRoot().getChildren();
+            Assert.assertEquals(2, spans.size());
+            Assert.assertEquals("trace-queue", spans.get(0).getName());
+            Assert.assertEquals("handler", spans.get(1).getName());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Once full, the ring should keep only the slowest traces, slowest first.
+     */
+    @Test
+    public void slowestTracesAreKept() throws InterruptedException {
+        SlowestTraces slowest = new SlowestTraces(2);
+        for (int millis : new int[] { 30, 10, 50, 20 }) {
+            Trace trace = Trace.begin("GET", "/" + millis);
+            Thread.sleep(millis);
+            trace.finish("{millis}", 200);
+            slowest.offer(trace);
+        }
+        List<Trace> traces = slowest.snapshot();
+        Assert.assertEquals(2, traces.size());
+        Assert.assertEquals("/50", traces.get(0).getPath());
+        Assert.assertEquals("/30", traces.get(1).getPath());
+    }
+
+    /**
+     * With no trace current, opening and closing spans and stopping a traced timer should allocate nothing.
+     */
+    @Test
+    public void untracedRequestsDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        Metrics.Timer timer = Metrics.timer("trace_test", "case", "untracedRequestsDoNotAllocate").traced("TraceTestDAO.query");
+        Trace.attach(null);
+        long thread = Thread.currentThread().getId();
+
+        untracedCalls(timer, 100_000);
+        long before = threads.getThreadAllocatedBytes(thread);
+        untracedCalls(timer, 100_000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        Assert.assertTrue(allocated + " bytes", allocated < 1_024);
+    }
+
+    private static void untracedCalls(Metrics.Timer timer, int calls) {
+        for (int i = 0; i < calls; i++) {
+            Trace.Span span = Trace.span("handler");
+            try {
+                Trace.leaf("queue", 0, 1);
+                timer.stop(System.nanoTime(), Metrics.queryFailures());
+            }
+            finally {
+                span.close();
+            }
+        }
+    }
+}
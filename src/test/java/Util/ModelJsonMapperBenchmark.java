@@ -0,0 +1,91 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.javalin.json.JavalinJackson;
+import io.javalin.json.JsonMapper;
+import Model.Account;
+import Model.Message;
+
+/**
+ * JMH comparison of the hand-written codecs in ModelJsonMapper against Javalin's reflective Jackson mapper, which
+ * the app used before. JMH can not generate runners for the default package, so unlike the other tests this one
+ * lives in a package. Run it through JsonMapperBenchmarkTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelJsonMapperBenchmark {
+    static final String MESSAGE_JSON = "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}";
+    static final String ACCOUNT_JSON = "{\"username\":\"testuser1\",\"password\":\"password\"}";
+
+    JsonMapper reflective;
+    JsonMapper handWritten;
+    Message message;
+    List<Message> page;
+
+    @Setup
+    public void setUp() {
+        reflective = new JavalinJackson();
+        handWritten = new ModelJsonMapper();
+        message = new Message(1, 1, "hello message", 1669947792);
+        page = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) page.add(new Message(i, 1, "message number " + i, 1669947792 + i));
+    }
+
+    @Benchmark
+    public Object readMessageReflective() {
+        return reflective.fromJsonString(MESSAGE_JSON, Message.class);
+    }
+
+    @Benchmark
+    public Object readMessageHandWritten() {
+        return handWritten.fromJsonString(MESSAGE_JSON, Message.class);
+    }
+
+    @Benchmark
+    public Object readAccountReflective() {
+        return reflective.fromJsonString(ACCOUNT_JSON, Account.class);
+    }
+
+    @Benchmark
+    public Object readAccountHandWritten() {
+        return handWritten.fromJsonString(ACCOUNT_JSON, Account.class);
+    }
+
+    @Benchmark
+    public String writeMessageReflective() {
+        return reflective.toJsonString(message, Message.class);
+    }
+
+    @Benchmark
+    public String writeMessageHandWritten() {
+        return handWritten.toJsonString(message, Message.class);
+    }
+
+    @Benchmark
+    public String writePageReflective() {
+        return reflective.toJsonString(page, ArrayList.class);
+    }
+
+    @Benchmark
+    public String writePageHandWritten() {
+        return handWritten.toJsonString(page, ArrayList.class);
+    }
+}
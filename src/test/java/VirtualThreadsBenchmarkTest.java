@@ -0,0 +1,78 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.VirtualThreadMode;
+import io.javalin.Javalin;
+
+/**
+ * Fires a burst of concurrent requests, each on its own connection, and reports latency percentiles for the
+ * thread mode the JVM was started in. Run it once per mode and compare, e.g.
+ * mvn -Pjava21 test -Dtest=VirtualThreadsBenchmarkTest -Dbench=true
+ * mvn -Pjava21 test -Dtest=VirtualThreadsBenchmarkTest -Dbench=true -Dserver.virtualThreads=true
+ */
+public class VirtualThreadsBenchmarkTest {
+    static final int CONNECTIONS = Integer.getInteger("bench.connections", 10_000);
+    Javalin app;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        Assume.assumeTrue(Boolean.getBoolean("bench"));
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        if (app != null) app.stop();
+    }
+
+    @Test
+    public void concurrentConnectionLatency() {
+        // the JDK client opens a new HTTP/1.1 connection for every exchange that finds no idle one, so a burst of
+        // concurrent sends holds that many connections open at once
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .timeout(Duration.ofSeconds(120))
+                .build();
+        long[] latencies = new long[CONNECTIONS];
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<?>> inFlight = new ArrayList<>(CONNECTIONS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            int slot = i;
+            long sent = System.nanoTime();
+            inFlight.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    latencies[slot] = System.nanoTime() - sent;
+                    if (error != null || response.statusCode() != 200) failures.incrementAndGet();
+                }));
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).handle((v, e) -> null).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%s threads, %d connections: %.0f req/s, p50 %.1f ms, p99 %.1f ms, max %.1f ms, failures %d%n",
+            VirtualThreadMode.ENABLED ? "virtual" : "platform", CONNECTIONS, CONNECTIONS / seconds,
+            latencies[CONNECTIONS / 2] / 1e6, latencies[(int) (CONNECTIONS * 0.99)] / 1e6,
+            latencies[CONNECTIONS - 1] / 1e6, failures.get());
+    }
+}